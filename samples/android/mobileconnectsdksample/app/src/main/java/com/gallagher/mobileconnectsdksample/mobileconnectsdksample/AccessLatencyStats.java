@@ -0,0 +1,249 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.gallagher.security.mobileaccess.AccessListener;
+import com.gallagher.security.mobileaccess.AccessResult;
+import com.gallagher.security.mobileaccess.AutomaticAccessListener;
+import com.gallagher.security.mobileaccess.Reader;
+import com.gallagher.security.mobileaccess.ReaderConnectionError;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+
+// *********************************************************************************
+// Measures how long it takes a door to open: the time from onAccessStarted to
+// onAccessCompleted, for both automatic access and manual requestAccess calls.
+//
+// Latencies go into a LatencyHistogram per (reader, transport, outcome), where the
+// outcome is the AccessDecision or the type of ReaderConnectionError. Memory is fixed:
+// once MAX_HISTOGRAMS combinations exist, further new ones are folded into a single
+// "other readers" histogram for that transport and outcome.
+// Callbacks may arrive on any thread.
+// *********************************************************************************
+final class AccessLatencyStats {
+
+    enum Transport { AUTOMATIC, MANUAL }
+
+    static final String OTHER_READERS = "*other*";
+
+    private static final int MAX_HISTOGRAMS = 256;
+
+    // A manual request normally starts well within this. After that we stop assuming
+    // that automatic callbacks for the same reader belong to it
+    private static final long MANUAL_REQUEST_WINDOW_MILLIS = 30_000;
+
+    private static final class Key {
+        final String ReaderId;
+        final Transport Transport;
+        final String Outcome;
+
+        Key(String readerId, Transport transport, String outcome) {
+            ReaderId = readerId;
+            Transport = transport;
+            Outcome = outcome;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return ReaderId.equals(other.ReaderId) && Transport == other.Transport && Outcome.equals(other.Outcome);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(ReaderId, Transport, Outcome);
+        }
+    }
+
+    // A read-only copy of one histogram's figures, all in milliseconds
+    static final class Summary {
+        final String ReaderId;
+        @Nullable final String ReaderName;
+        final Transport Transport;
+        final String Outcome;
+        final long Count;
+        final long P50;
+        final long P95;
+        final long P99;
+        final long Max;
+
+        Summary(String readerId, @Nullable String readerName, Transport transport, String outcome, LatencyHistogram histogram) {
+            ReaderId = readerId;
+            ReaderName = readerName;
+            Transport = transport;
+            Outcome = outcome;
+            Count = histogram.getTotalCount();
+            P50 = histogram.getValueAtPercentile(50);
+            P95 = histogram.getValueAtPercentile(95);
+            P99 = histogram.getValueAtPercentile(99);
+            Max = histogram.getMax();
+        }
+    }
+
+    private static AccessLatencyStats sInstance;
+
+    @NonNull private final HashMap<Key, LatencyHistogram> mHistograms = new HashMap<>();
+    @NonNull private final HashMap<String, String> mReaderNames = new HashMap<>();
+
+    // start times of attempts in progress, keyed by reader ID
+    @NonNull private final HashMap<String, Long> mAutomaticStarts = new HashMap<>();
+    @NonNull private final HashMap<String, Long> mManualStarts = new HashMap<>();
+    // when requestAccess was last called for each reader, see MANUAL_REQUEST_WINDOW_MILLIS
+    @NonNull private final HashMap<String, Long> mManualRequests = new HashMap<>();
+
+    @NonNull
+    static synchronized AccessLatencyStats getInstance() {
+        if (sInstance == null) {
+            sInstance = new AccessLatencyStats();
+        }
+        return sInstance;
+    }
+
+    private AccessLatencyStats() { }
+
+    @NonNull
+    private final AutomaticAccessListener mAutomaticAccessListener = new AutomaticAccessListener() {
+        @Override
+        public void onReturnToReaderRequired(Reader reader) { }
+
+        @Override
+        public void onReturnedToReader(Reader reader) { }
+
+        @Override
+        public void onAccessStarted(@NonNull Reader reader) {
+            accessStarted(Transport.AUTOMATIC, reader);
+        }
+
+        @Override
+        public void onAccessCompleted(@NonNull Reader reader, @Nullable AccessResult accessResult, @Nullable ReaderConnectionError error) {
+            accessCompleted(Transport.AUTOMATIC, reader, accessResult, error);
+        }
+    };
+
+    // *********************************************************************************
+    // Register this with MobileAccess.addAutomaticAccessListener to measure automatic access
+    // *********************************************************************************
+    @NonNull
+    AutomaticAccessListener getAutomaticAccessListener() {
+        return mAutomaticAccessListener;
+    }
+
+    // *********************************************************************************
+    // Wrap the listener passed to MobileAccess.requestAccess to measure manual access
+    // *********************************************************************************
+    @NonNull
+    AccessListener wrapManualRequest(@NonNull Reader reader, @NonNull AccessListener delegate) {
+        synchronized (this) {
+            mManualRequests.put(reader.getId(), SystemClock.elapsedRealtime());
+        }
+        return new AccessListener() {
+            @Override
+            public void onAccessStarted(@NonNull Reader reader) {
+                accessStarted(Transport.MANUAL, reader);
+                delegate.onAccessStarted(reader);
+            }
+
+            @Override
+            public void onAccessCompleted(@NonNull Reader reader, @Nullable AccessResult accessResult, @Nullable ReaderConnectionError error) {
+                accessCompleted(Transport.MANUAL, reader, accessResult, error);
+                delegate.onAccessCompleted(reader, accessResult, error);
+            }
+        };
+    }
+
+    @NonNull
+    synchronized List<Summary> getSummaries() {
+        ArrayList<Summary> result = new ArrayList<>(mHistograms.size());
+        for (Map.Entry<Key, LatencyHistogram> entry : mHistograms.entrySet()) {
+            Key key = entry.getKey();
+            result.add(new Summary(key.ReaderId, mReaderNames.get(key.ReaderId), key.Transport, key.Outcome, entry.getValue()));
+        }
+        // busiest first
+        Collections.sort(result, (a, b) -> Long.compare(b.Count, a.Count));
+        return result;
+    }
+
+    // One line per histogram, with a header row
+    @NonNull
+    String exportCsv() {
+        StringBuilder sb = new StringBuilder("reader_id,reader_name,transport,outcome,count,p50_ms,p95_ms,p99_ms,max_ms\n");
+        for (Summary s : getSummaries()) {
+            sb.append(String.format(Locale.US, "%s,\"%s\",%s,%s,%d,%d,%d,%d,%d%n",
+                    s.ReaderId, s.ReaderName != null ? s.ReaderName.replace("\"", "\"\"") : "",
+                    s.Transport, s.Outcome, s.Count, s.P50, s.P95, s.P99, s.Max));
+        }
+        return sb.toString();
+    }
+
+    private synchronized void accessStarted(@NonNull Transport transport, @NonNull Reader reader) {
+        String readerId = reader.getId();
+        long now = SystemClock.elapsedRealtime();
+        if (transport == Transport.AUTOMATIC && isManualRequestPending(readerId, now)) {
+            return; // it's the manual request; the wrapped listener records that one
+        }
+        (transport == Transport.MANUAL ? mManualStarts : mAutomaticStarts).put(readerId, now);
+    }
+
+    private synchronized void accessCompleted(@NonNull Transport transport, @NonNull Reader reader,
+                                              @Nullable AccessResult accessResult, @Nullable ReaderConnectionError error) {
+        String readerId = reader.getId();
+        long now = SystemClock.elapsedRealtime();
+        if (transport == Transport.MANUAL) {
+            mManualRequests.remove(readerId);
+        }
+        Long start = (transport == Transport.MANUAL ? mManualStarts : mAutomaticStarts).remove(readerId);
+        if (start == null) {
+            return; // we never saw it start (or it was the manual request, see accessStarted)
+        }
+
+        mReaderNames.put(readerId, reader.getName());
+        histogramFor(new Key(readerId, transport, outcomeOf(accessResult, error))).record(now - start);
+    }
+
+    private boolean isManualRequestPending(@NonNull String readerId, long now) {
+        Long requested = mManualRequests.get(readerId);
+        return requested != null && now - requested < MANUAL_REQUEST_WINDOW_MILLIS;
+    }
+
+    @NonNull
+    private LatencyHistogram histogramFor(@NonNull Key key) {
+        LatencyHistogram histogram = mHistograms.get(key);
+        if (histogram == null) {
+            if (mHistograms.size() >= MAX_HISTOGRAMS) {
+                key = new Key(OTHER_READERS, key.Transport, key.Outcome);
+                histogram = mHistograms.get(key);
+            }
+            if (histogram == null) {
+                histogram = new LatencyHistogram();
+                mHistograms.put(key, histogram);
+            }
+        }
+        return histogram;
+    }
+
+    @NonNull
+    private static String outcomeOf(@Nullable AccessResult accessResult, @Nullable ReaderConnectionError error) {
+        if (error != null) {
+            return error.getClass().getSimpleName();
+        }
+        if (accessResult != null) {
+            return accessResult.getAccessDecision().name();
+        }
+        return "NO_RESULT";
+    }
+}
@@ -0,0 +1,224 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.gallagher.security.mobileaccess.AccessListener;
+import com.gallagher.security.mobileaccess.AccessResult;
+import com.gallagher.security.mobileaccess.Reader;
+import com.gallagher.security.mobileaccess.ReaderConnectionError;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+// *********************************************************************************
+// Sits in front of MobileAccess.requestAccess so that tapping a reader repeatedly
+// doesn't start a new bluetooth connection each time.
+//
+// - Requests for a reader that already has an attempt running (or queued) join that
+//   attempt, and every caller gets its callbacks.
+// - At most MAX_CONCURRENT attempts run at once across all readers; the rest queue in
+//   the order they were requested.
+// - For a short cooldown after an attempt completes, further requests for that reader
+//   are dropped; by then the user has already seen the result.
+// - An attempt the SDK hasn't completed within ATTEMPT_TIMEOUT_MILLIS (or that it threw
+//   on) is failed with ReaderConnectionError.Unexpected, so one lost callback can't hold
+//   the slot, and every later request, forever. A completion that turns up afterwards
+//   is ignored.
+//
+// May be called from any thread. The state lives on the SdkEventLoop, and listeners
+// are called from there.
+// *********************************************************************************
+final class AccessScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AccessScheduler.class);
+
+    private static final int MAX_CONCURRENT = 1;
+    private static final long COOLDOWN_MILLIS = 1500;
+    // well beyond a normal bluetooth connection, including the SDK's own retries
+    static final long ATTEMPT_TIMEOUT_MILLIS = 30 * 1000;
+
+    private static final class Attempt {
+        final Reader Reader;
+        final ArrayList<AccessListener> Waiters = new ArrayList<>();
+        boolean Started = false; // whether onAccessStarted has been passed on yet
+        boolean Finished = false; // completed, timed out or failed to start; nothing more is passed on
+        Runnable Watchdog;
+
+        Attempt(Reader reader) {
+            Reader = reader;
+        }
+    }
+
+    private static AccessScheduler sInstance;
+
+    @NonNull private final SdkStartup mSdk;
+    @NonNull private final SdkEventLoop mEventLoop = SdkEventLoop.getInstance();
+
+    // all keyed by reader ID
+    @NonNull private final HashMap<String, Attempt> mRunning = new HashMap<>();
+    @NonNull private final LinkedHashMap<String, Attempt> mQueued = new LinkedHashMap<>();
+    @NonNull private final HashMap<String, Long> mCompletedAt = new HashMap<>();
+
+    private volatile long mRequests = 0;
+    private volatile long mAttempts = 0;
+    private volatile long mDeduplicated = 0;
+    private volatile long mCooldownDropped = 0;
+    private volatile long mTimedOut = 0;
+    private volatile long mFailedToStart = 0;
+
+    @NonNull
+    static synchronized AccessScheduler getInstance() {
+        if (sInstance == null) {
+            sInstance = new AccessScheduler(SdkStartup.getInstance());
+        }
+        return sInstance;
+    }
+
+    private AccessScheduler(@NonNull SdkStartup sdk) {
+        mSdk = sdk;
+    }
+
+    long getRequests() { return mRequests; }
+    long getAttempts() { return mAttempts; } // calls actually made to MobileAccess.requestAccess
+    long getDeduplicated() { return mDeduplicated; } // joined an attempt that was already running or queued
+    long getCooldownDropped() { return mCooldownDropped; }
+    long getTimedOut() { return mTimedOut; }
+    long getFailedToStart() { return mFailedToStart; } // MobileAccess.requestAccess threw
+
+    void requestAccess(@NonNull Reader reader, @NonNull AccessListener listener) {
+        mEventLoop.run(() -> {
+            mRequests++;
+            String readerId = reader.getId();
+
+            Attempt attempt = mRunning.get(readerId);
+            if (attempt == null) {
+                attempt = mQueued.get(readerId);
+            }
+            if (attempt != null) {
+                mDeduplicated++;
+                join(attempt, listener);
+                return;
+            }
+
+            Long completedAt = mCompletedAt.get(readerId);
+            if (completedAt != null && SystemClock.elapsedRealtime() - completedAt < COOLDOWN_MILLIS) {
+                mCooldownDropped++;
+                LOG.debug("Dropping access request for {}; it has only just completed", reader.getName());
+                return;
+            }
+
+            attempt = new Attempt(reader);
+            attempt.Waiters.add(listener);
+            mQueued.put(readerId, attempt);
+            startQueued();
+        });
+    }
+
+    private void join(@NonNull Attempt attempt, @NonNull AccessListener listener) {
+        if (attempt.Waiters.contains(listener)) {
+            return; // the same caller tapping again; it'll already get the result
+        }
+        attempt.Waiters.add(listener);
+        if (attempt.Started) {
+            listener.onAccessStarted(attempt.Reader);
+        }
+    }
+
+    private void startQueued() {
+        Iterator<Attempt> it = mQueued.values().iterator();
+        while (mRunning.size() < MAX_CONCURRENT && it.hasNext()) {
+            Attempt attempt = it.next();
+            it.remove();
+            start(attempt);
+        }
+    }
+
+    private void start(@NonNull Attempt attempt) {
+        mRunning.put(attempt.Reader.getId(), attempt);
+        mAttempts++;
+
+        attempt.Watchdog = () -> {
+            if (!attempt.Finished) {
+                mTimedOut++;
+                LOG.warn("Access to {} didn't complete within {}ms; giving up on it", attempt.Reader.getName(), ATTEMPT_TIMEOUT_MILLIS);
+                finish(attempt, attempt.Reader, null, new ReaderConnectionError.Unexpected("No result from the reader within " + ATTEMPT_TIMEOUT_MILLIS + "ms"));
+            }
+        };
+        mEventLoop.getHandler().postDelayed(attempt.Watchdog, ATTEMPT_TIMEOUT_MILLIS);
+
+        AccessListener fanOut = new AccessListener() {
+            @Override
+            public void onAccessStarted(@NonNull Reader reader) {
+                FlightRecorder.getInstance().accessStarted(reader);
+                mEventLoop.run(() -> {
+                    if (attempt.Finished) {
+                        return;
+                    }
+                    attempt.Started = true;
+                    for (AccessListener waiter : attempt.Waiters) {
+                        waiter.onAccessStarted(reader);
+                    }
+                });
+            }
+
+            @Override
+            public void onAccessCompleted(@NonNull Reader reader, @Nullable AccessResult accessResult, @Nullable ReaderConnectionError error) {
+                FlightRecorder.getInstance().accessCompleted(reader, accessResult, error);
+                mEventLoop.run(() -> {
+                    if (attempt.Finished) {
+                        LOG.info("Access to {} completed after we'd given up on it", reader.getName());
+                        return;
+                    }
+                    finish(attempt, reader, accessResult, error);
+                });
+            }
+        };
+        mSdk.execute(mobileAccess -> {
+            try {
+                mobileAccess.requestAccess(attempt.Reader, AccessLatencyStats.getInstance().wrapManualRequest(attempt.Reader, fanOut));
+            } catch (RuntimeException e) {
+                LOG.error("Failed to request access to {}", attempt.Reader.getName(), e);
+                FlightRecorder.getInstance().caught("requestAccess", e);
+                mEventLoop.run(() -> {
+                    if (!attempt.Finished) {
+                        mFailedToStart++;
+                        finish(attempt, attempt.Reader, null, new ReaderConnectionError.Unexpected(e));
+                    }
+                });
+            }
+        });
+    }
+
+    // Frees the attempt's slot, tells its waiters and starts the next one. Call on the SdkEventLoop, once per attempt
+    private void finish(@NonNull Attempt attempt, @NonNull Reader reader, @Nullable AccessResult accessResult, @Nullable ReaderConnectionError error) {
+        attempt.Finished = true;
+        mEventLoop.getHandler().removeCallbacks(attempt.Watchdog);
+
+        String readerId = attempt.Reader.getId();
+        mRunning.remove(readerId);
+        pruneCooldowns();
+        mCompletedAt.put(readerId, SystemClock.elapsedRealtime());
+
+        for (AccessListener waiter : attempt.Waiters) {
+            waiter.onAccessCompleted(reader, accessResult, error);
+        }
+        startQueued();
+    }
+
+    // so mCompletedAt doesn't grow with every reader we've ever opened
+    private void pruneCooldowns() {
+        long now = SystemClock.elapsedRealtime();
+        mCompletedAt.values().removeIf(completedAt -> now - completedAt >= COOLDOWN_MILLIS);
+    }
+}
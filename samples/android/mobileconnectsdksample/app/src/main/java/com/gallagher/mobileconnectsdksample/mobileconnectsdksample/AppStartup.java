@@ -0,0 +1,260 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.gallagher.security.mobileaccess.BluetoothScanMode;
+import com.gallagher.security.mobileaccess.MobileAccess;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.android.LogcatAppender;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.rolling.RollingFileAppender;
+import ch.qos.logback.core.rolling.SizeBasedTriggeringPolicy;
+import ch.qos.logback.core.util.FileSize;
+import ch.qos.logback.core.util.StatusPrinter;
+
+// *********************************************************************************
+// The phases of app startup, in the order Application.onCreate runs them, each in its
+// own StartupTrace section.
+//
+// They're kept out of Application so that SdkStartupBenchmarkTest can run the same
+// sequence against a stub SDK and time it. Host is what only a real Application can
+// do: create notification channels and configure the SDK.
+// *********************************************************************************
+final class AppStartup {
+
+    static final String ASYNC_FILE_APPENDER_NAME = "Async File Appender";
+
+    interface Host {
+        // Creates the channels the SDK's notifications go in, on Android 8 and later
+        void configureNotificationChannels();
+
+        // MobileAccessProvider.configure
+        @NonNull
+        MobileAccess configureSdk();
+    }
+
+    @NonNull private final Host mHost;
+    @NonNull private final LoggerContext mLoggerContext;
+    @Nullable private final File mLogFilesDir;
+    @NonNull private final SdkStartup mSdk;
+    @NonNull private final SdkEventHub mHub;
+    @NonNull private final Supplier<SensitivityTuner> mSensitivityTuner; // asked once the SDK is set up; it reads a file
+    @NonNull private final ScanModeGovernor.Clock mClock;
+    @NonNull private final Scheduler mMainScheduler;
+
+    // main thread only
+    @Nullable private ScanModeGovernor mScanModeGovernor;
+    private boolean mForeground = false;
+
+    // mainScheduler must run things on the main thread
+    AppStartup(@NonNull Host host, @NonNull LoggerContext loggerContext, @Nullable File logFilesDir, @NonNull SdkStartup sdk,
+               @NonNull SdkEventHub hub, @NonNull Supplier<SensitivityTuner> sensitivityTuner, @NonNull ScanModeGovernor.Clock clock,
+               @NonNull Scheduler mainScheduler) {
+        mHost = host;
+        mLoggerContext = loggerContext;
+        mLogFilesDir = logFilesDir;
+        mSdk = sdk;
+        mHub = hub;
+        mSensitivityTuner = sensitivityTuner;
+        mClock = clock;
+        mMainScheduler = mainScheduler;
+    }
+
+    // *********************************************************************************
+    // Everything Application.onCreate does. The app's own SDK setup is queued on mSdk,
+    // and runs from the main thread's queue once this has returned
+    // *********************************************************************************
+    void run() {
+        // Set up logging and the notification channels first; the SDK may use both as soon as it's configured
+        StartupTrace.begin("configureNotificationChannels");
+        mHost.configureNotificationChannels();
+        StartupTrace.end();
+
+        StartupTrace.begin("configureLogging");
+        configureLogging(mLoggerContext, mLogFilesDir);
+        StartupTrace.end();
+
+        // Keep recent SDK events in memory, and save them alongside the logs when something goes wrong
+        FlightRecorder.getInstance().start(mLogFilesDir);
+
+        // configure() must be called here, in onCreate. The app uses background access, so the SDK's
+        // NFC and bluetooth background services can be started as soon as onCreate returns, even in a
+        // process with no activity, and they need the SDK configured by then.
+        // Everything else that needs the SDK goes through SdkStartup.execute, which holds calls until
+        // onCreate has returned, so the app's own setup doesn't delay the first frame
+        StartupTrace.begin("MobileAccessProvider.configure");
+        MobileAccess configured = mHost.configureSdk();
+        StartupTrace.end();
+        mSdk.start(configured);
+
+        // *********************************************************************************
+        // Once onCreate has returned, tell the SDK to start scanning for readers
+        mSdk.execute(this::startSdk);
+    }
+
+    // Call on the main thread whenever the app comes into or goes out of the foreground
+    void onForegroundChanged(boolean foreground) {
+        mForeground = foreground;
+        if (mScanModeGovernor != null) {
+            mScanModeGovernor.onForegroundChanged(foreground);
+        }
+    }
+
+    private void startSdk(@NonNull MobileAccess mobileAccess) {
+        // The default BluetoothBackgroundScanMode is FOREGROUND_ONLY.
+        // We enable background scanning for sample purposes, but you may not want that.
+        // We start out responsive, and ScanModeGovernor (below) backs off while there are no doors around
+        mobileAccess.setBluetoothBackgroundScanMode(BluetoothScanMode.BACKGROUND_LOW_LATENCY);
+
+        // The default IsNfcPreferred is true, so this does nothing. It is here for sample purposes
+        mobileAccess.setIsNfcPreferred(true);
+
+        // Automatic access is disabled by default. Call setAutomaticAccessEnabled(false) to turn it off later if you would like
+        mobileAccess.setAutomaticAccessEnabled(true);
+
+        // now start scanning for readers
+        mobileAccess.setScanning(true);
+
+        // The default bluetooth enabled setting is true, so this does nothing. It is here for sample purposes. This value
+        // can be set to false to only allow NFC connections
+        mobileAccess.setIsBluetoothEnabledInApp(true);
+
+        // Record how long automatic access takes for the whole life of the app, not just while the readers tab is open.
+        // See the "Access Latency" menu item
+        mobileAccess.addAutomaticAccessListener(AccessLatencyStats.getInstance().getAutomaticAccessListener());
+
+        // SdkEventHub is the only state, reader, Salto, Digital ID and feature state listener the SDK has;
+        // everything else in the app subscribes to it
+        mHub.start(mobileAccess);
+
+        FlightRecorder flightRecorder = FlightRecorder.getInstance();
+        mHub.getSdkStates().subscribe("FlightRecorder", flightRecorder.getSdkStateListener());
+        mHub.getReaderUpdates().subscribe("FlightRecorder", flightRecorder.getReaderUpdateListener());
+        mobileAccess.addAutomaticAccessListener(flightRecorder.getAutomaticAccessListener());
+
+        // Connect from further away or closer in, depending on how automatic access has gone on this phone
+        SensitivityTuner sensitivityTuner = mSensitivityTuner.get();
+        sensitivityTuner.apply(mobileAccess);
+        mobileAccess.addAutomaticAccessListener(sensitivityTuner.getAutomaticAccessListener());
+
+        // Back off syncing credential items while the cloud can't be reached
+        mHub.getSdkFeatureStates().subscribe("CredentialSync", CredentialSync.getInstance().getSdkFeatureStateListener());
+
+        // Adjust the background scan mode to whether we've seen readers lately, whether there are
+        // any credentials, and whether the app is in use
+        ScanModeGovernor scanModeGovernor = new ScanModeGovernor(mClock, mMainScheduler, mobileAccess);
+        mScanModeGovernor = scanModeGovernor;
+        mHub.getReaderUpdates().subscribe("ScanModeGovernor", (reader, updateType) -> scanModeGovernor.onReaderSeen());
+        mHub.getSdkStates().subscribe("ScanModeGovernor", (isScanning, states) -> scanModeGovernor.onStateChanged(states));
+        scanModeGovernor.onForegroundChanged(mForeground);
+        scanModeGovernor.start();
+    }
+
+    // logFilesDir is null if there's nowhere to write the log file; we still log to Logcat
+    static void configureLogging(@NonNull LoggerContext loggerContext, @Nullable File logFilesDir) {
+        loggerContext.reset();
+
+        BoundedAsyncAppender asyncFileAppender = null;
+
+        if (logFilesDir != null) {
+            loggerContext.putProperty("LOG_DIR", logFilesDir.getAbsolutePath());
+
+            // writes "%d{dd:MM:yy HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n", like a PatternLayoutEncoder would,
+            // but without building Strings for every message
+            FileLogEncoder encoder = new FileLogEncoder();
+            encoder.setContext(loggerContext);
+            encoder.start();
+
+            File logFile = new File(logFilesDir, "MobileConnectSampleApp.log");
+
+            // rolled files are gzipped in the background and kept while they fit in the budget and aren't too old
+            CompressingRollingPolicy rollingPolicy = new CompressingRollingPolicy();
+            rollingPolicy.setContext(loggerContext);
+            rollingPolicy.setMaxTotalBytes(FileSize.valueOf("9000 KB").getSize());
+            rollingPolicy.setMaxAgeMillis(TimeUnit.DAYS.toMillis(14));
+
+            SizeBasedTriggeringPolicy<ILoggingEvent> triggeringPolicy = new SizeBasedTriggeringPolicy<>();
+            triggeringPolicy.setContext(loggerContext);
+            triggeringPolicy.setMaxFileSize(FileSize.valueOf("3000 KB")); // logs rotate when they *exceed* this value, so set it at 4000KB which is not quite 4MB so we don't go over that limit
+
+            RollingFileAppender<ILoggingEvent> fileAppender = new RollingFileAppender<>();
+            fileAppender.setName("File Appender");
+            fileAppender.setAppend(true);
+            fileAppender.setContext(loggerContext);
+            fileAppender.setFile(logFile.getAbsolutePath());
+            fileAppender.setEncoder(encoder);
+            fileAppender.setRollingPolicy(rollingPolicy);
+            fileAppender.setTriggeringPolicy(triggeringPolicy);
+
+            rollingPolicy.setParent(fileAppender);
+
+            triggeringPolicy.start();
+            rollingPolicy.start();
+            fileAppender.start();
+
+            // write to the file on a background thread, so logging from the main thread never waits for the disk.
+            // Under heavy load DEBUG messages are sampled and then dropped; INFO and above always get through
+            asyncFileAppender = new BoundedAsyncAppender();
+            asyncFileAppender.setName(ASYNC_FILE_APPENDER_NAME);
+            asyncFileAppender.setContext(loggerContext);
+            asyncFileAppender.setDelegate(fileAppender);
+            asyncFileAppender.start();
+        }
+
+        // setup LogcatAppender to write to the standard Android Logcat
+        PatternLayoutEncoder encoder2 = new PatternLayoutEncoder();
+        encoder2.setContext(loggerContext);
+        encoder2.setPattern("[%thread] %msg%n");
+        encoder2.start();
+
+        PatternLayoutEncoder tagEncoder = new PatternLayoutEncoder();
+        tagEncoder.setContext(loggerContext);
+        tagEncoder.setPattern("%logger{0}");
+        tagEncoder.start();
+
+        LogcatAppender logcatAppender = new LogcatAppender();
+        logcatAppender.setContext(loggerContext);
+        logcatAppender.setTagEncoder(tagEncoder);
+        logcatAppender.setEncoder(encoder2);
+        logcatAppender.start();
+
+        // add the newly created appenders to the root logger;
+        // qualify Logger to disambiguate from org.slf4j.Logger
+        ch.qos.logback.classic.Logger root = loggerContext.getLogger(ch.qos.logback.classic.Logger.ROOT_LOGGER_NAME);
+        root.addAppender(logcatAppender);
+        if (asyncFileAppender != null) {
+            root.addAppender(asyncFileAppender);
+        }
+
+        loggerContext.getLogger("com.gallagher.security").setLevel(Level.DEBUG);
+
+        if (BuildConfig.DEBUG) {
+            root.setLevel(Level.DEBUG);
+        } else {
+            root.setLevel(Level.INFO);
+        }
+
+        root.info("----- Application onCreate -----");
+        root.info("App Version: {}, BuildType {}", BuildConfig.VERSION_NAME, BuildConfig.BUILD_TYPE);
+        root.info("OS Version: {} ({}) - API {}", System.getProperty("os.version"), Build.VERSION.INCREMENTAL, Build.VERSION.SDK_INT);
+        root.info("Device: {}, Model: {}, Product {}", Build.DEVICE, Build.MODEL, Build.PRODUCT);
+        root.info("GallagherMobileAccess SDK Version: {}", com.gallagher.security.mobileaccess.BuildConfig.MOBILECONNECT_SDK_VERSION_NAME);
+
+        StartupTrace.begin("StatusPrinter.print");
+        StatusPrinter.print(loggerContext);
+        StartupTrace.end();
+    }
+}
@@ -3,6 +3,7 @@
 //
 package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
 
+import android.app.Activity;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
@@ -11,11 +12,16 @@ import android.content.Context;
 import android.content.Intent;
 import android.media.AudioAttributes;
 import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.provider.Settings;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
-import com.gallagher.security.mobileaccess.BluetoothScanMode;
 import com.gallagher.security.mobileaccess.CloudTlsValidationMode;
 import com.gallagher.security.mobileaccess.MobileAccess;
 import com.gallagher.security.mobileaccess.MobileAccessProvider;
@@ -27,31 +33,47 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.util.EnumSet;
 
-import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.LoggerContext;
-import ch.qos.logback.classic.android.LogcatAppender;
-import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
-import ch.qos.logback.classic.spi.ILoggingEvent;
-import ch.qos.logback.core.rolling.FixedWindowRollingPolicy;
-import ch.qos.logback.core.rolling.RollingFileAppender;
-import ch.qos.logback.core.rolling.SizeBasedTriggeringPolicy;
-import ch.qos.logback.core.util.FileSize;
-import ch.qos.logback.core.util.StatusPrinter;
 
-public class Application extends android.app.Application {
+public class Application extends android.app.Application implements AppStartup.Host {
 
     // Notification channel IDs for android 8+
     String unlockNotificationChannelId = "com.gallagher.mobileconnectsdksample.UnlockNotificationChannelId";
     String foregroundNotificationChannelId = "com.gallagher.mobileconnectsdksample.ForegroundNotificationChannelId";
 
+    // main thread only
+    @Nullable private AppStartup mStartup;
+    private int mStartedActivities = 0;
+
+    private static final long LOG_FLUSH_TIMEOUT_MILLIS = 2000;
+
     @Override
     public void onCreate() {
         super.onCreate();
+        // Each phase of startup is timed; see the "Startup Trace" menu item
+        StartupTrace.begin("Application.onCreate");
+
+        StartupTrace.begin("getLogFilesDir");
+        File logFilesDir = getLogFilesDir(this);
+        StartupTrace.end();
 
-        // *********************************************************************************
-        // Configure the Mobile Connect SDK before we start
-        // *********************************************************************************
+        // The phases themselves are in AppStartup, so SdkStartupBenchmarkTest can time them
+        Scheduler mainScheduler = Scheduler.forHandler(new Handler(Looper.getMainLooper()));
+        mStartup = new AppStartup(this, (LoggerContext) LoggerFactory.getILoggerFactory(), logFilesDir, SdkStartup.getInstance(),
+                SdkEventHub.getInstance(), () -> SensitivityTuner.getInstance(this), SystemClock::elapsedRealtime, mainScheduler);
+        mStartup.run();
 
+        registerActivityLifecycleCallbacks(mForegroundTracker);
+
+        StartupTrace.end();
+    }
+
+    // *********************************************************************************
+    // Configure the Mobile Connect SDK. AppStartup calls this from onCreate
+    // *********************************************************************************
+    @NonNull
+    @Override
+    public MobileAccess configureSdk() {
         // Configure an intent which opens our app when the user taps on a notification.
         // You can specify the activity you'd like to launch and any other flags here,
         // or use different intents for the different kinds of notification that the SDK may show
@@ -67,43 +89,58 @@ public class Application extends android.app.Application {
                 foregroundNotificationChannelId,
                 notificationTappedIntent);
 
-        MobileAccess mobileAccess = MobileAccessProvider.configure(
+        return MobileAccessProvider.configure(
                 this, // reference to android Application
                 null, // databaseFilePath: supply null to use the default
                 notificationsConfiguration, // notifications config, as above
                 EnumSet.of(SdkFeature.SALTO, SdkFeature.APERIO, SdkFeature.DIGITAL_ID), // the sample app enables Salto, Aperio, and Digital ID. If you don't want those you can use EnumSet.noneOf(SdkFeature.class)
                 CloudTlsValidationMode.ANY_VALID_CERTIFICATE_REQUIRED,
                 null);
+    }
 
-        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            configureNotificationChannels();
+    // *********************************************************************************
+    // The app is in the foreground while any of its activities is started
+    // *********************************************************************************
+    private final ActivityLifecycleCallbacks mForegroundTracker = new ActivityLifecycleCallbacks() {
+        @Override
+        public void onActivityStarted(@NonNull Activity activity) {
+            if (mStartedActivities++ == 0 && mStartup != null) {
+                mStartup.onForegroundChanged(true);
+            }
         }
 
-        configureLogging((LoggerContext) LoggerFactory.getILoggerFactory());
+        @Override
+        public void onActivityStopped(@NonNull Activity activity) {
+            if (--mStartedActivities == 0 && mStartup != null) {
+                mStartup.onForegroundChanged(false);
+            }
+        }
 
-        // *********************************************************************************
-        // Now that the SDK is configured, tell it to start scanning for readers
+        @Override
+        public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState) { }
 
-        // The default BluetoothBackgroundScanMode is FOREGROUND_ONLY.
-        // We enable background scanning for sample purposes, but you may not want that
-        mobileAccess.setBluetoothBackgroundScanMode(BluetoothScanMode.BACKGROUND_LOW_LATENCY);
+        @Override
+        public void onActivityResumed(@NonNull Activity activity) { }
 
-        // The default IsNfcPreferred is true, so this does nothing. It is here for sample purposes
-        mobileAccess.setIsNfcPreferred(true);
+        @Override
+        public void onActivityPaused(@NonNull Activity activity) { }
 
-        // Automatic access is disabled by default. Call setAutomaticAccessEnabled(false) to turn it off later if you would like
-        mobileAccess.setAutomaticAccessEnabled(true);
+        @Override
+        public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) { }
 
-        // now start scanning for readers
-        mobileAccess.setScanning(true);
+        @Override
+        public void onActivityDestroyed(@NonNull Activity activity) { }
+    };
 
-        // The default bluetooth enabled setting is true, so this does nothing. It is here for sample purposes. This value
-        // can be set to false to only allow NFC connections
-        mobileAccess.setIsBluetoothEnabledInApp(true);
+    @Override
+    public void configureNotificationChannels() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            createNotificationChannels();
+        }
     }
 
     @RequiresApi(Build.VERSION_CODES.O)
-    private void configureNotificationChannels() {
+    private void createNotificationChannels() {
         NotificationChannel unlockNotificationChannel = new NotificationChannel(unlockNotificationChannelId,
                 "Unlock Notifications",
                 NotificationManager.IMPORTANCE_HIGH);
@@ -136,91 +173,24 @@ public class Application extends android.app.Application {
         notificationManager.createNotificationChannel(foregroundNotificationChannel);
     }
 
-    private void configureLogging(LoggerContext loggerContext) {
-        loggerContext.reset();
-
-        File logFilesDir = getLogFilesDir(this);
-
-        RollingFileAppender<ILoggingEvent> fileAppender = null;
-
-        if (logFilesDir != null) {
-            loggerContext.putProperty("LOG_DIR", logFilesDir.getAbsolutePath());
-
-            PatternLayoutEncoder encoder = new PatternLayoutEncoder();
-            encoder.setContext(loggerContext);
-            encoder.setPattern("%d{dd:MM:yy HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n");
-            encoder.start();
-
-            File logFile = new File(logFilesDir, "MobileConnectSampleApp.log");
-
-            FixedWindowRollingPolicy rollingPolicy = new FixedWindowRollingPolicy();
-            rollingPolicy.setContext(loggerContext);
-
-            // NOTE: we cannot put full stops in file names or else everything breaks
-            rollingPolicy.setFileNamePattern(loggerContext.getProperty("LOG_DIR") + "/MobileConnectSampleApp_%i.log");
-            rollingPolicy.setMinIndex(1);
-            rollingPolicy.setMaxIndex(4);
-
-            SizeBasedTriggeringPolicy<ILoggingEvent> triggeringPolicy = new SizeBasedTriggeringPolicy<>();
-            triggeringPolicy.setContext(loggerContext);
-            triggeringPolicy.setMaxFileSize(FileSize.valueOf("3000 KB")); // logs rotate when they *exceed* this value, so set it at 4000KB which is not quite 4MB so we don't go over that limit
-
-            fileAppender = new RollingFileAppender<>();
-            fileAppender.setName("File Appender");
-            fileAppender.setAppend(true);
-            fileAppender.setContext(loggerContext);
-            fileAppender.setFile(logFile.getAbsolutePath());
-            fileAppender.setEncoder(encoder);
-            fileAppender.setRollingPolicy(rollingPolicy);
-            fileAppender.setTriggeringPolicy(triggeringPolicy);
-
-            rollingPolicy.setParent(fileAppender);
-
-            triggeringPolicy.start();
-            rollingPolicy.start();
-            fileAppender.start();
+    // *********************************************************************************
+    // Writes out any log messages still queued for the log file. Call before reading the files.
+    // Waits up to LOG_FLUSH_TIMEOUT_MILLIS, so not on the main thread
+    // *********************************************************************************
+    public static void flushLogFiles() {
+        BoundedAsyncAppender appender = getAsyncFileAppender();
+        if (appender == null) {
+            return;
         }
+        LoggerFactory.getLogger(Application.class).info("Log file appender: queued {}, written {}, dropped {}, sampled out {}",
+                appender.getQueuedCount(), appender.getWrittenCount(), appender.getDroppedCount(), appender.getSampledOutCount());
+        appender.flush(LOG_FLUSH_TIMEOUT_MILLIS);
+    }
 
-        // setup LogcatAppender to write to the standard Android Logcat
-        PatternLayoutEncoder encoder2 = new PatternLayoutEncoder();
-        encoder2.setContext(loggerContext);
-        encoder2.setPattern("[%thread] %msg%n");
-        encoder2.start();
-
-        PatternLayoutEncoder tagEncoder = new PatternLayoutEncoder();
-        tagEncoder.setContext(loggerContext);
-        tagEncoder.setPattern("%logger{0}");
-        tagEncoder.start();
-
-        LogcatAppender logcatAppender = new LogcatAppender();
-        logcatAppender.setContext(loggerContext);
-        logcatAppender.setTagEncoder(tagEncoder);
-        logcatAppender.setEncoder(encoder2);
-        logcatAppender.start();
-
-        // add the newly created appenders to the root logger;
-        // qualify Logger to disambiguate from org.slf4j.Logger
+    @Nullable
+    static BoundedAsyncAppender getAsyncFileAppender() {
         ch.qos.logback.classic.Logger root = (ch.qos.logback.classic.Logger) LoggerFactory.getLogger(ch.qos.logback.classic.Logger.ROOT_LOGGER_NAME);
-        root.addAppender(logcatAppender);
-        if (fileAppender != null) {
-            root.addAppender(fileAppender);
-        }
-
-        ((ch.qos.logback.classic.Logger)LoggerFactory.getLogger("com.gallagher.security")).setLevel(Level.DEBUG);
-
-        if (BuildConfig.DEBUG) {
-            root.setLevel(Level.DEBUG);
-        } else {
-            root.setLevel(Level.INFO);
-        }
-
-        root.info("----- Application onCreate -----");
-        root.info("App Version: {}, BuildType {}", BuildConfig.VERSION_NAME, BuildConfig.BUILD_TYPE);
-        root.info("OS Version: {} ({}) - API {}", System.getProperty("os.version"), Build.VERSION.INCREMENTAL, Build.VERSION.SDK_INT);
-        root.info("Device: {}, Model: {}, Product {}", Build.DEVICE, Build.MODEL, Build.PRODUCT);
-        root.info("GallagherMobileAccess SDK Version: {}", com.gallagher.security.mobileaccess.BuildConfig.MOBILECONNECT_SDK_VERSION_NAME);
-
-        StatusPrinter.print(loggerContext);
+        return (BoundedAsyncAppender) root.getAppender(AppStartup.ASYNC_FILE_APPENDER_NAME);
     }
 
     public static File getLogFilesDir(Context context) {
@@ -0,0 +1,217 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.UnsynchronizedAppenderBase;
+
+// *********************************************************************************
+// Hands log events to another appender (normally the file appender) on a worker thread,
+// so the thread that logs - often the main thread or a bluetooth callback - never waits
+// for disk I/O.
+//
+// Events go through a bounded MpscRingBuffer. What happens when it fills up depends on
+// the level:
+// - WARN and ERROR are never dropped; the logging thread waits for space instead.
+// - Events at or below the droppable level (DEBUG by default) are sampled once the queue
+//   is under pressure: only every sampleInterval'th one is kept. If the queue is
+//   completely full they are dropped.
+// - Anything in between (INFO) waits for space, like WARN/ERROR.
+//
+// Counters for queued, dropped and sampled-out events are kept for diagnostics.
+// Everything still queued is written out by flush(), by stop(), and on process shutdown.
+// *********************************************************************************
+final class BoundedAsyncAppender extends UnsynchronizedAppenderBase<ILoggingEvent> {
+
+    private static final long FLUSH_TIMEOUT_MILLIS = 1000;
+
+    @Nullable private Appender<ILoggingEvent> mDelegate;
+    private int mCapacity = 1024;
+    @NonNull private Level mDroppableLevel = Level.DEBUG;
+    private int mPressurePercent = 75;
+    private int mSampleInterval = 10;
+
+    @Nullable private MpscRingBuffer<ILoggingEvent> mQueue;
+    @Nullable private Thread mWorker;
+    @Nullable private Thread mShutdownHook;
+    private volatile boolean mWorkerParked = false;
+    private volatile boolean mStopping = false;
+
+    @NonNull private final AtomicLong mQueued = new AtomicLong();
+    @NonNull private final AtomicLong mDropped = new AtomicLong();
+    @NonNull private final AtomicLong mSampledOut = new AtomicLong();
+    @NonNull private final AtomicLong mWritten = new AtomicLong();
+    @NonNull private final AtomicLong mDroppableSeen = new AtomicLong(); // drives sampling
+
+    // *********************************************************************************
+    // Configuration; set before start()
+    // *********************************************************************************
+
+    void setDelegate(@NonNull Appender<ILoggingEvent> delegate) { mDelegate = delegate; }
+
+    // rounded up to a power of two
+    void setCapacity(int capacity) { mCapacity = capacity; }
+
+    // events at or below this level may be sampled or dropped
+    void setDroppableLevel(@NonNull Level level) { mDroppableLevel = level; }
+
+    // how full (in percent) the queue must be before droppable events are sampled
+    void setPressurePercent(int percent) { mPressurePercent = percent; }
+
+    // under pressure, keep one in this many droppable events. 0 drops all of them
+    void setSampleInterval(int interval) { mSampleInterval = interval; }
+
+    // *********************************************************************************
+    // Counters
+    // *********************************************************************************
+
+    long getQueuedCount() { return mQueued.get(); }
+    long getDroppedCount() { return mDropped.get(); } // because the queue was full
+    long getSampledOutCount() { return mSampledOut.get(); } // skipped by sampling under pressure
+    long getWrittenCount() { return mWritten.get(); } // passed on to the delegate
+    int getQueueDepth() { return mQueue != null ? mQueue.size() : 0; }
+
+    @Override
+    public void start() {
+        if (mDelegate == null) {
+            addError("No delegate appender set for " + getName());
+            return;
+        }
+        mQueue = new MpscRingBuffer<>(mCapacity);
+        mStopping = false;
+
+        mWorker = new Thread(this::drain, "AsyncAppender-" + getName());
+        mWorker.setDaemon(true);
+        mWorker.start();
+
+        // the process can go at any time on Android, but when it does shut down cleanly don't lose what's queued
+        mShutdownHook = new Thread(this::stop, "AsyncAppender-shutdown");
+        Runtime.getRuntime().addShutdownHook(mShutdownHook);
+
+        super.start();
+    }
+
+    @Override
+    public void stop() {
+        if (!isStarted()) {
+            return;
+        }
+        super.stop();
+
+        mStopping = true;
+        Thread worker = mWorker;
+        if (worker != null) {
+            LockSupport.unpark(worker);
+            try {
+                worker.join(FLUSH_TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (mShutdownHook != null && Thread.currentThread() != mShutdownHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(mShutdownHook);
+            } catch (IllegalStateException e) {
+                // already shutting down
+            }
+        }
+        addInfo(String.format("%s stopped; queued %d, written %d, dropped %d, sampled out %d",
+                getName(), mQueued.get(), mWritten.get(), mDropped.get(), mSampledOut.get()));
+    }
+
+    // *********************************************************************************
+    // Waits (up to timeoutMillis) until everything queued so far has reached the delegate.
+    // Call before reading the log files, e.g. to send them
+    // *********************************************************************************
+    void flush(long timeoutMillis) {
+        MpscRingBuffer<ILoggingEvent> queue = mQueue;
+        Thread worker = mWorker;
+        if (queue == null || worker == null || Thread.currentThread() == worker) {
+            return;
+        }
+        long target = mQueued.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (mWritten.get() + mDropped.get() + mSampledOut.get() < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(worker);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        MpscRingBuffer<ILoggingEvent> queue = mQueue;
+        if (queue == null) {
+            return;
+        }
+        // capture the thread name, formatted message and MDC now, while we're still on the logging thread
+        event.prepareForDeferredProcessing();
+        mQueued.incrementAndGet();
+
+        int level = event.getLevel().toInt();
+        boolean droppable = level < Level.WARN_INT && level <= mDroppableLevel.toInt();
+        if (droppable && queue.size() * 100 >= queue.capacity() * mPressurePercent) {
+            long seen = mDroppableSeen.incrementAndGet();
+            if (mSampleInterval <= 0 || seen % mSampleInterval != 0) {
+                mSampledOut.incrementAndGet();
+                return;
+            }
+        }
+
+        while (!queue.offer(event)) {
+            if (droppable) {
+                mDropped.incrementAndGet();
+                return;
+            }
+            if (mStopping) {
+                mDropped.incrementAndGet(); // nothing is going to make space now
+                return;
+            }
+            // WARN/ERROR/INFO: wait for the worker to make room
+            wakeWorker();
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        wakeWorker();
+    }
+
+    private void wakeWorker() {
+        if (mWorkerParked) {
+            Thread worker = mWorker;
+            if (worker != null) {
+                LockSupport.unpark(worker);
+            }
+        }
+    }
+
+    private void drain() {
+        MpscRingBuffer<ILoggingEvent> queue = mQueue;
+        Appender<ILoggingEvent> delegate = mDelegate;
+        while (true) {
+            ILoggingEvent event = queue.poll();
+            if (event != null) {
+                delegate.doAppend(event);
+                mWritten.incrementAndGet();
+                continue;
+            }
+            if (mStopping) {
+                return; // and the queue is empty
+            }
+
+            mWorkerParked = true;
+            // re-check after publishing that we're parked, or we could sleep through an offer
+            if (queue.size() == 0 && !mStopping) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+            }
+            mWorkerParked = false;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import ch.qos.logback.core.FileAppender;
+import ch.qos.logback.core.rolling.RollingPolicy;
+import ch.qos.logback.core.rolling.RolloverFailure;
+import ch.qos.logback.core.rolling.helper.CompressionMode;
+import ch.qos.logback.core.spi.ContextAwareBase;
+
+// *********************************************************************************
+// Rolls the log file over into gzipped segments, replacing FixedWindowRollingPolicy.
+//
+// Rolling over only renames the active file (to <name>_<timestamp>.log), which is
+// quick; the thread that triggered it doesn't wait for anything else. A background
+// worker then compresses the segment to .log.gz and applies retention:
+// - segments older than the max age are deleted
+// - then the oldest segments are deleted until the rest fit in the byte budget
+//
+// Log text compresses very well, so the same storage holds far more history than a
+// fixed window of uncompressed files did.
+//
+// Segments that weren't compressed yet when the app last stopped (including the
+// numbered files the old policy left behind) are picked up when the policy starts.
+// *********************************************************************************
+final class CompressingRollingPolicy extends ContextAwareBase implements RollingPolicy {
+
+    private static final String LOG_EXTENSION = ".log";
+    private static final String GZIP_EXTENSION = ".log.gz";
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    private static final int COPY_BUFFER_SIZE = 8192;
+
+    @Nullable private FileAppender<?> mParent;
+    private long mMaxTotalBytes = 9 * 1024 * 1024;
+    private long mMaxAgeMillis = TimeUnit.DAYS.toMillis(14);
+
+    @Nullable private ExecutorService mWorker;
+    private boolean mStarted = false;
+
+    // *********************************************************************************
+    // Configuration; set before start()
+    // *********************************************************************************
+
+    // the most the rolled (and compressed) segments may take up, not counting the active file
+    void setMaxTotalBytes(long maxTotalBytes) { mMaxTotalBytes = maxTotalBytes; }
+
+    // segments last written longer ago than this are deleted
+    void setMaxAgeMillis(long maxAgeMillis) { mMaxAgeMillis = maxAgeMillis; }
+
+    @Override
+    public void setParent(FileAppender<?> appender) {
+        mParent = appender;
+    }
+
+    @Override
+    public String getActiveFileName() {
+        return mParent != null ? mParent.rawFileProperty() : null;
+    }
+
+    // compression happens behind logback's back, so as far as it's concerned there is none
+    @Override
+    public CompressionMode getCompressionMode() {
+        return CompressionMode.NONE;
+    }
+
+    @Override
+    public void start() {
+        if (getActiveFileName() == null) {
+            addError("CompressingRollingPolicy needs its parent appender's file to be set");
+            return;
+        }
+        mWorker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "LogCompressor");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        mStarted = true;
+
+        // finish off anything left over from last time
+        mWorker.execute(this::compressAndPrune);
+    }
+
+    @Override
+    public void stop() {
+        mStarted = false;
+        ExecutorService worker = mWorker;
+        if (worker != null) {
+            // let a compression that's already queued finish; it's only ever a few MB
+            worker.shutdown();
+        }
+    }
+
+    @Override
+    public boolean isStarted() {
+        return mStarted;
+    }
+
+    // *********************************************************************************
+    // Called by RollingFileAppender, with the active file closed
+    // *********************************************************************************
+    @Override
+    public void rollover() throws RolloverFailure {
+        File active = new File(getActiveFileName());
+        if (!active.exists()) {
+            return;
+        }
+        File segment = newSegmentFile(active);
+        if (!active.renameTo(segment)) {
+            throw new RolloverFailure("Failed to rename " + active + " to " + segment);
+        }
+
+        ExecutorService worker = mWorker;
+        if (worker != null && !worker.isShutdown()) {
+            worker.execute(this::compressAndPrune);
+        }
+    }
+
+    // *********************************************************************************
+    // Worker thread
+    // *********************************************************************************
+
+    private void compressAndPrune() {
+        File active = new File(getActiveFileName());
+        File dir = active.getParentFile();
+        if (dir == null) {
+            return;
+        }
+        String prefix = baseName(active) + "_";
+
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.startsWith(prefix)) {
+                continue;
+            }
+            if (name.endsWith(TEMP_EXTENSION)) {
+                deleteQuietly(file); // a compression that was interrupted
+            } else if (name.endsWith(LOG_EXTENSION)) {
+                compress(file);
+            }
+        }
+        prune(dir, prefix);
+    }
+
+    private void compress(@NonNull File segment) {
+        String name = segment.getName();
+        String gzipName = name.substring(0, name.length() - LOG_EXTENSION.length()) + GZIP_EXTENSION;
+        File gzip = new File(segment.getParentFile(), gzipName);
+        File temp = new File(segment.getParentFile(), gzipName + TEMP_EXTENSION);
+
+        long start = System.currentTimeMillis();
+        long length = segment.length();
+        try (InputStream in = new FileInputStream(segment);
+             OutputStream out = new GZIPOutputStream(new FileOutputStream(temp), COPY_BUFFER_SIZE)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            addError("Failed to compress " + segment, e);
+            deleteQuietly(temp);
+            return;
+        }
+
+        // keep the segment's age, so retention goes by when it was written rather than when it was compressed
+        temp.setLastModified(segment.lastModified());
+        if (!temp.renameTo(gzip)) {
+            addError("Failed to rename " + temp + " to " + gzip);
+            deleteQuietly(temp);
+            return;
+        }
+        deleteQuietly(segment);
+        addInfo(String.format(Locale.ROOT, "Compressed %s from %d to %d bytes in %dms",
+                segment.getName(), length, gzip.length(), System.currentTimeMillis() - start));
+    }
+
+    private void prune(@NonNull File dir, @NonNull String prefix) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(prefix) && name.endsWith(GZIP_EXTENSION));
+        if (files == null) {
+            return;
+        }
+        // newest first
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+
+        long cutoff = System.currentTimeMillis() - mMaxAgeMillis;
+        long total = 0;
+        ArrayList<File> expired = new ArrayList<>();
+        for (File file : files) {
+            total += file.length();
+            if (file.lastModified() < cutoff || total > mMaxTotalBytes) {
+                expired.add(file);
+            }
+        }
+        for (File file : expired) {
+            deleteQuietly(file);
+        }
+    }
+
+    // *********************************************************************************
+    // Helpers
+    // *********************************************************************************
+
+    @NonNull
+    private static File newSegmentFile(@NonNull File active) {
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS", Locale.ROOT).format(new Date());
+        String base = baseName(active) + "_" + stamp;
+        String unique = base;
+        for (int i = 1; new File(active.getParentFile(), unique + LOG_EXTENSION).exists() || new File(active.getParentFile(), unique + GZIP_EXTENSION).exists(); i++) {
+            unique = base + "-" + i;
+        }
+        return new File(active.getParentFile(), unique + LOG_EXTENSION);
+    }
+
+    // MobileConnectSampleApp.log -> MobileConnectSampleApp
+    @NonNull
+    private static String baseName(@NonNull File file) {
+        String name = file.getName();
+        return name.endsWith(LOG_EXTENSION) ? name.substring(0, name.length() - LOG_EXTENSION.length()) : name;
+    }
+
+    private void deleteQuietly(@NonNull File file) {
+        if (file.exists() && !file.delete()) {
+            addWarn("Failed to delete " + file);
+        }
+    }
+}
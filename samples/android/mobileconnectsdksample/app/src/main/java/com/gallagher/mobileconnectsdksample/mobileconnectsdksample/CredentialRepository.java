@@ -0,0 +1,153 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.gallagher.security.mobileaccess.MobileCredential;
+import com.gallagher.security.mobileaccess.MobileCredentialFilter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// *********************************************************************************
+// The registered mobile credentials, loaded from the SDK on the SdkEventLoop and kept
+// until something tells us they may have changed:
+// - we registered or deleted a credential (call invalidate())
+// - a credential sync with the cloud completed, which may have revoked or updated some
+//
+// A device can hold credentials for many facilities, so the list is never loaded on the
+// main thread, and several invalidations in a row only load it once. Listeners are given
+// the whole list, but it's keyed by credential ID (see KeyedListModel), so a credential
+// that didn't change keeps its place, and an AsyncListDiffer only touches the rows that did.
+// *********************************************************************************
+final class CredentialRepository {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CredentialRepository.class);
+
+    interface Listener {
+        // called on the main thread
+        void onCredentialsChanged(@NonNull List<MobileCredential> credentials);
+    }
+
+    private static CredentialRepository sInstance;
+
+    @NonNull private final SdkStartup mSdk;
+    @NonNull private final Executor mEventLoop;
+    @NonNull private final CopyOnWriteArrayList<Listener> mListeners = new CopyOnWriteArrayList<>();
+    @NonNull private final SnapshotPublisher<List<MobileCredential>> mPublisher;
+
+    // only touched on the SdkEventLoop
+    @NonNull private final KeyedListModel<String, MobileCredential> mCredentials = new KeyedListModel<>(MobileCredential::getId);
+
+    @NonNull private final AtomicBoolean mLoadQueued = new AtomicBoolean(false);
+    // the list we last delivered to listeners; main thread only. null until the first load
+    @Nullable private List<MobileCredential> mSnapshot;
+
+    // metrics
+    private volatile long mLoads = 0;
+    @NonNull private final AtomicLong mInvalidations = new AtomicLong(); // sync listeners may invalidate from any thread
+    private volatile long mLastLoadMillis = 0;
+    private volatile int mCount = 0;
+
+    @NonNull
+    static synchronized CredentialRepository getInstance() {
+        if (sInstance == null) {
+            sInstance = new CredentialRepository(SdkStartup.getInstance(), SdkEventLoop.getInstance(),
+                    Scheduler.forHandler(new Handler(Looper.getMainLooper())), CredentialSync.getInstance());
+        }
+        return sInstance;
+    }
+
+    // eventLoop runs things one at a time, off the main thread; mainScheduler runs them on it.
+    // Tests pass their own
+    CredentialRepository(@NonNull SdkStartup sdk, @NonNull Executor eventLoop, @NonNull Scheduler mainScheduler,
+                         @NonNull CredentialSync sync) {
+        mSdk = sdk;
+        mEventLoop = eventLoop;
+        mPublisher = new SnapshotPublisher<>(mainScheduler, this::deliver);
+        // a sync that didn't get through to the cloud hasn't changed anything
+        sync.addSyncListener(error -> {
+            if (error == null) {
+                invalidate();
+            }
+        });
+    }
+
+    // *********************************************************************************
+    // Calls listener with the credentials now if we have them (otherwise once they're
+    // loaded), and again whenever they change. Call on the main thread
+    // *********************************************************************************
+    void addListener(@NonNull Listener listener) {
+        mListeners.add(listener);
+        List<MobileCredential> snapshot = mSnapshot;
+        if (snapshot != null) {
+            listener.onCredentialsChanged(snapshot);
+        } else if (mLoads == 0) {
+            load();
+        }
+    }
+
+    void removeListener(@NonNull Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    // The credentials may have changed; load them again. May be called from any thread
+    void invalidate() {
+        mInvalidations.incrementAndGet();
+        load();
+    }
+
+    // One line for the log export
+    @NonNull
+    String describe() {
+        return String.format(Locale.US, "%d credentials; loads %d, invalidations %d, last load %dms",
+                mCount, mLoads, mInvalidations.get(), mLastLoadMillis);
+    }
+
+    private void load() {
+        if (mLoadQueued.getAndSet(true)) {
+            return; // the load that's queued will see this change too
+        }
+        mSdk.getReady().thenAcceptAsync(mobileAccess -> {
+            mLoadQueued.set(false); // anything that changes from here on needs another load
+            long start = SystemClock.elapsedRealtime();
+            ArrayList<MobileCredential> credentials = new ArrayList<>(mobileAccess.getMobileCredentials(MobileCredentialFilter.INCLUDE_REVOKED));
+            boolean changed = mCredentials.replace(credentials);
+            mLastLoadMillis = SystemClock.elapsedRealtime() - start;
+            mCount = credentials.size();
+            mLoads++;
+            LOG.debug("Loaded {} credentials in {}ms", credentials.size(), mLastLoadMillis);
+            if (changed || mLoads == 1) {
+                mPublisher.publish(mCredentials.snapshot());
+            }
+        }, mEventLoop).whenComplete((ignored, error) -> {
+            if (error != null) {
+                // the next invalidate() tries again
+                mLoadQueued.set(false);
+                LOG.error("Couldn't load the credentials", error);
+            }
+        });
+    }
+
+    private void deliver(@NonNull List<MobileCredential> snapshot) {
+        mSnapshot = snapshot;
+        for (Listener listener : mListeners) {
+            listener.onCredentialsChanged(snapshot);
+        }
+    }
+}
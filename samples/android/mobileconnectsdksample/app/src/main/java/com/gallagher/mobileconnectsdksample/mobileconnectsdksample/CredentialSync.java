@@ -0,0 +1,266 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.gallagher.security.mobileaccess.SdkFeatureState;
+import com.gallagher.security.mobileaccess.SdkFeatureStateListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+
+// *********************************************************************************
+// Sits in front of MobileAccess.syncCredentialItemUpdates, which the activity and
+// several tabs all ask for when they resume, so that one resume is one trip to the cloud.
+//
+// - A request made while a sync is running joins it, and every caller gets its result.
+// - After a sync succeeds, requests within MIN_INTERVAL_MILLIS are answered with that
+//   result straight away instead of syncing again.
+// - While the cloud can't be reached (the sync fails, or the SDK reports
+//   ERROR_CLOUD_CONNECTION_FAILED) that interval grows from INITIAL_BACKOFF_MILLIS,
+//   doubling each time, up to MAX_BACKOFF_MILLIS. It goes back to normal once a sync
+//   succeeds and the SDK no longer reports the error.
+// - requestNow is for the user tapping Retry: it skips the interval, but still joins a
+//   sync that's already running.
+// - A sync that hasn't called back within SYNC_TIMEOUT_MILLIS (or that throws) fails
+//   with an error like any other, so its callers aren't left waiting and later requests
+//   don't keep joining it. If it does call back later, that's ignored.
+//
+// Callbacks are called on the main thread. Call from the main thread too, so they come
+// back in the order they were asked for.
+// *********************************************************************************
+final class CredentialSync {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CredentialSync.class);
+
+    interface Callback {
+        // error is null if the sync succeeded
+        void onSyncCompleted(@Nullable Throwable error);
+    }
+
+    static final long MIN_INTERVAL_MILLIS = 30 * 1000;
+    static final long INITIAL_BACKOFF_MILLIS = 60 * 1000;
+    static final long MAX_BACKOFF_MILLIS = 15 * 60 * 1000;
+    static final long SYNC_TIMEOUT_MILLIS = 60 * 1000;
+
+    private static CredentialSync sInstance;
+
+    @NonNull private final SdkStartup mSdk;
+    @NonNull private final ScanModeGovernor.Clock mClock;
+    @NonNull private final Scheduler mMainScheduler;
+    @NonNull private final CopyOnWriteArrayList<Callback> mSyncListeners = new CopyOnWriteArrayList<>();
+
+    // everything below is guarded by this, so the log export can read the metrics from its own thread
+
+    // callers waiting for the sync in flight; null when there isn't one
+    @Nullable private ArrayList<Callback> mWaiters;
+    private long mSyncId = 0; // of the sync in flight, or the last one; completions for any other are late
+    @Nullable private Runnable mTimeout;
+    private long mStartedAt;
+    private int mJoined; // requests that joined the sync in flight
+
+    private long mNextSyncAt = 0; // mClock time; requests before this get the last result
+    @Nullable private Throwable mLastError;
+    private long mBackoffMillis = 0; // 0 unless the cloud can't be reached
+    private boolean mCloudConnectionFailed = false; // as last reported by the SDK
+
+    // metrics
+    @NonNull private final LatencyHistogram mDurations = new LatencyHistogram();
+    private long mRequests = 0;
+    private long mSyncs = 0;
+    private long mMerged = 0; // joined a sync in flight
+    private long mThrottled = 0; // answered with the last result
+    private long mFailures = 0;
+    private long mTimedOut = 0;
+
+    @NonNull
+    static synchronized CredentialSync getInstance() {
+        if (sInstance == null) {
+            sInstance = new CredentialSync(SdkStartup.getInstance(), SystemClock::elapsedRealtime,
+                    Scheduler.forHandler(new Handler(Looper.getMainLooper())));
+        }
+        return sInstance;
+    }
+
+    // mainScheduler must run things on the main thread; tests pass their own
+    CredentialSync(@NonNull SdkStartup sdk, @NonNull ScanModeGovernor.Clock clock, @NonNull Scheduler mainScheduler) {
+        mSdk = sdk;
+        mClock = clock;
+        mMainScheduler = mainScheduler;
+    }
+
+    // Syncs, unless one is running (join it) or one finished recently enough (reuse its result)
+    void request(@Nullable Callback callback) {
+        request(callback, false);
+    }
+
+    // Syncs even if one finished recently; for when the user asks
+    void requestNow(@Nullable Callback callback) {
+        request(callback, true);
+    }
+
+    // Calls listener after every sync that actually ran (not for requests answered with an earlier result)
+    void addSyncListener(@NonNull Callback listener) {
+        mSyncListeners.add(listener);
+    }
+
+    void removeSyncListener(@NonNull Callback listener) {
+        mSyncListeners.remove(listener);
+    }
+
+    // Subscribe this to feature states, so we back off while the SDK can't reach the cloud
+    @NonNull
+    SdkFeatureStateListener getSdkFeatureStateListener() {
+        return mSdkFeatureStateListener;
+    }
+
+    @NonNull
+    private final SdkFeatureStateListener mSdkFeatureStateListener = new SdkFeatureStateListener() {
+        @Override
+        public void onFeatureStatesChanged(@NonNull Collection<SdkFeatureState> featureStates) {
+            featureStatesChanged(featureStates);
+        }
+
+        @Override
+        public void onFeatureError(@NonNull Error error) { }
+    };
+
+    private void featureStatesChanged(@NonNull Collection<SdkFeatureState> featureStates) {
+        boolean failed = featureStates.contains(SdkFeatureState.ERROR_CLOUD_CONNECTION_FAILED);
+        synchronized (this) {
+            if (failed == mCloudConnectionFailed) {
+                return;
+            }
+            mCloudConnectionFailed = failed;
+            if (failed && mBackoffMillis == 0) {
+                backOff(); // a failed sync may already have started backing off
+            } else if (!failed && mLastError == null) {
+                mBackoffMillis = 0;
+            }
+        }
+    }
+
+    // One line for the log export. May be called from any thread
+    @NonNull
+    synchronized String describe() {
+        return String.format(Locale.US, "requests %d, syncs %d, merged %d, throttled %d, failed %d, timed out %d, backoff %ds; duration p50 %dms, p95 %dms, max %dms",
+                mRequests, mSyncs, mMerged, mThrottled, mFailures, mTimedOut, mBackoffMillis / 1000,
+                mDurations.getValueAtPercentile(50), mDurations.getValueAtPercentile(95), mDurations.getMax());
+    }
+
+    private void request(@Nullable Callback callback, boolean now) {
+        long syncId;
+        synchronized (this) {
+            mRequests++;
+            if (mWaiters != null) {
+                mMerged++;
+                mJoined++;
+                add(mWaiters, callback);
+                return;
+            }
+            if (!now && mClock.elapsedRealtime() < mNextSyncAt) {
+                mThrottled++;
+                if (callback != null) {
+                    Throwable lastError = mLastError;
+                    mMainScheduler.post(() -> callback.onSyncCompleted(lastError));
+                }
+                return;
+            }
+
+            mWaiters = new ArrayList<>();
+            add(mWaiters, callback);
+            mJoined = 0;
+            mSyncs++;
+            mStartedAt = mClock.elapsedRealtime();
+            syncId = ++mSyncId;
+            Runnable timeout = () -> timedOut(syncId);
+            mTimeout = timeout;
+            mMainScheduler.postDelayed(timeout, SYNC_TIMEOUT_MILLIS);
+        }
+        mSdk.execute(mobileAccess -> {
+            try {
+                // the SDK doesn't say which thread it completes on
+                mobileAccess.syncCredentialItemUpdates(error -> mMainScheduler.post(() -> completed(syncId, error)));
+            } catch (RuntimeException e) {
+                LOG.error("syncCredentialItemUpdates threw", e);
+                FlightRecorder.getInstance().caught("syncCredentialItemUpdates", e);
+                mMainScheduler.post(() -> completed(syncId, e));
+            }
+        });
+    }
+
+    private void timedOut(long syncId) {
+        synchronized (this) {
+            if (syncId != mSyncId || mWaiters == null) {
+                return;
+            }
+            mTimedOut++;
+        }
+        completed(syncId, new TimeoutException("No result from syncCredentialItemUpdates within " + SYNC_TIMEOUT_MILLIS / 1000 + "s"));
+    }
+
+    private void completed(long syncId, @Nullable Throwable error) {
+        ArrayList<Callback> waiters;
+        synchronized (this) {
+            if (syncId != mSyncId || mWaiters == null) {
+                LOG.info("Ignoring a credential sync result that came after it timed out", error);
+                return;
+            }
+            waiters = mWaiters;
+            mWaiters = null;
+            if (mTimeout != null) {
+                mMainScheduler.removeCallbacks(mTimeout);
+                mTimeout = null;
+            }
+            long now = mClock.elapsedRealtime();
+            long duration = now - mStartedAt;
+            mDurations.record(duration);
+            mLastError = error;
+
+            if (error != null) {
+                mFailures++;
+                backOff();
+                LOG.warn("Credential sync failed after {}ms ({} requests merged into it); next in {}s", duration, mJoined, mBackoffMillis / 1000, error);
+            } else {
+                if (!mCloudConnectionFailed) {
+                    mBackoffMillis = 0;
+                }
+                LOG.info("Credential sync took {}ms ({} requests merged into it)", duration, mJoined);
+            }
+            mNextSyncAt = now + Math.max(MIN_INTERVAL_MILLIS, mBackoffMillis);
+        }
+
+        for (Callback listener : mSyncListeners) {
+            listener.onSyncCompleted(error);
+        }
+        if (waiters != null) {
+            for (Callback waiter : waiters) {
+                waiter.onSyncCompleted(error);
+            }
+        }
+    }
+
+    private void backOff() {
+        mBackoffMillis = mBackoffMillis == 0 ? INITIAL_BACKOFF_MILLIS : Math.min(mBackoffMillis * 2, MAX_BACKOFF_MILLIS);
+        mNextSyncAt = Math.max(mNextSyncAt, mClock.elapsedRealtime() + mBackoffMillis);
+    }
+
+    private static void add(@NonNull ArrayList<Callback> waiters, @Nullable Callback callback) {
+        if (callback != null) {
+            waiters.add(callback);
+        }
+    }
+}
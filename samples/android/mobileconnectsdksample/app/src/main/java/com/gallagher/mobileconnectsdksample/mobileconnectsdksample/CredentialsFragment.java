@@ -16,12 +16,12 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.gallagher.security.mobileaccess.DeleteOption;
-import com.gallagher.security.mobileaccess.MobileAccess;
-import com.gallagher.security.mobileaccess.MobileAccessProvider;
 import com.gallagher.security.mobileaccess.MobileCredential;
 import com.gallagher.security.mobileaccess.RegistrationError;
 import com.gallagher.security.mobileaccess.RegistrationListener;
@@ -31,21 +31,22 @@ import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
 
-public class CredentialsFragment extends Fragment implements TabFragment, OnInvitationDetailsListener {
+public class CredentialsFragment extends Fragment implements OnInvitationDetailsListener {
 
     // *********************************************************************************
-    // Get a reference to the MobileAccess shared instance
+    // Get a reference to the MobileAccess shared instance.
+    // The app finishes setting up the SDK after Application.onCreate, so calls to it go through SdkStartup
     // *********************************************************************************
     @NonNull
-    private final MobileAccess mMobileAccess = MobileAccessProvider.getInstance();
+    private final SdkStartup mSdk = SdkStartup.getInstance();
 
-    private MobileCredentialRecyclerViewAdapter mAdapter;
+    @NonNull
+    private final CredentialRepository mCredentials = CredentialRepository.getInstance();
 
-    public String getTitle() { return "Credentials"; }
-    public int getActionId() { return R.id.action_credentials; }
+    private MobileCredentialRecyclerViewAdapter mAdapter;
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container, Bundle savedInstanceState) {
@@ -55,12 +56,8 @@ public class CredentialsFragment extends Fragment implements TabFragment, OnInvi
 
         Context context = view.getContext();
 
-        // Wire up the RecyclerView
+        // Wire up the RecyclerView. It's filled in by CredentialRepository once we resume
         mAdapter = new MobileCredentialRecyclerViewAdapter();
-        // *********************************************************************************
-        // Populate it with the current set of credentials
-        // *********************************************************************************
-        mAdapter.setCredentials(mMobileAccess.getMobileCredentials());
 
         RecyclerView recyclerView = view.findViewById(R.id.credential_list);
         recyclerView.setLayoutManager(new LinearLayoutManager(context));
@@ -79,16 +76,21 @@ public class CredentialsFragment extends Fragment implements TabFragment, OnInvi
         return view;
     }
 
+    // *********************************************************************************
+    // CredentialRepository only loads the credentials again after we register or delete one, or a
+    // sync completes, so coming back to the tab just shows what it already has. While the tab is
+    // hidden we don't listen, and the first callback when we come back brings the list up to date
+    // *********************************************************************************
     @Override
     public void onResume() {
         super.onResume();
+        mCredentials.addListener(mAdapter);
+    }
 
-        // In theory we only need to reload the credentials list after a successful add or remove of a credential.
-        // It's easier just to blindly reload the list onResume and we only usually have one or maybe two
-        // credentials so optimising isn't worth it.
-        if (mAdapter != null) {
-            mAdapter.setCredentials(mMobileAccess.getMobileCredentials());
-        }
+    @Override
+    public void onPause() {
+        super.onPause();
+        mCredentials.removeListener(mAdapter);
     }
 
     public void onMobileCredentialClicked(MobileCredential item) {
@@ -99,15 +101,15 @@ public class CredentialsFragment extends Fragment implements TabFragment, OnInvi
                     // *********************************************************************************
                     // Ask the Mobile Connect SDK to delete our credential
                     // *********************************************************************************
-                    mMobileAccess.deleteMobileCredential(item, DeleteOption.DEFAULT, (credential, error) -> {
+                    mSdk.execute(mobileAccess -> mobileAccess.deleteMobileCredential(item, DeleteOption.DEFAULT, (credential, error) -> {
                         if(error != null) {
                             Log.e("CredentialsFragment", "Error deleting credential", error);
                             Toast.makeText(getActivity(), "Error " + error.getLocalizedMessage(), Toast.LENGTH_LONG).show();
                         } else {
                             Toast.makeText(getActivity(), "Deleted!", Toast.LENGTH_SHORT).show();
-                            mAdapter.setCredentials(mMobileAccess.getMobileCredentials());
+                            mCredentials.invalidate();
                         }
-                    });
+                    }));
                 })
                 .setNegativeButton("No", null)
                 .show();
@@ -117,64 +119,78 @@ public class CredentialsFragment extends Fragment implements TabFragment, OnInvi
     @Override
     public void onInvitationDetails(boolean succeeded, @Nullable String invitationCode, @Nullable String serverHost) {
         if (succeeded && serverHost != null && invitationCode != null) {
-            try {
-                // *********************************************************************************
-                // When doing manual registration we build the URI ourselves.
-                // Normally we'd expect the full URI to be passed to us e.g. from an email hyperlink,
-                // or from some other custom code (perhaps you pass the URI through your own web-service
-                // *********************************************************************************
-                URI invitationUri = mMobileAccess.resolveInvitationUri(serverHost, invitationCode);
-
-                // *********************************************************************************
-                // Ask the Mobile Connect SDK to register our credential
-                // *********************************************************************************
-                mMobileAccess.registerCredential(invitationUri, new RegistrationListener() {
-
-                    @Override
-                    public void onRegistrationCompleted(@Nullable MobileCredential credential, @Nullable RegistrationError error) {
-                        if(error != null) {
-                            Log.e("CredentialsFragment", "Registration Error", error);
-                            Toast.makeText(getActivity(), "Registration Error " + error.stringValue(), Toast.LENGTH_LONG).show();
-                        } else if(credential != null) {
-                            Toast.makeText(getActivity(), "Registered!", Toast.LENGTH_SHORT).show();
-                            mAdapter.setCredentials(mMobileAccess.getMobileCredentials()); // reload the list
+            mSdk.execute(mobileAccess -> {
+                try {
+                    // *********************************************************************************
+                    // When doing manual registration we build the URI ourselves.
+                    // Normally we'd expect the full URI to be passed to us e.g. from an email hyperlink,
+                    // or from some other custom code (perhaps you pass the URI through your own web-service
+                    // *********************************************************************************
+                    URI invitationUri = mobileAccess.resolveInvitationUri(serverHost, invitationCode);
+
+                    // *********************************************************************************
+                    // Ask the Mobile Connect SDK to register our credential
+                    // *********************************************************************************
+                    mobileAccess.registerCredential(invitationUri, new RegistrationListener() {
+
+                        @Override
+                        public void onRegistrationCompleted(@Nullable MobileCredential credential, @Nullable RegistrationError error) {
+                            if(error != null) {
+                                Log.e("CredentialsFragment", "Registration Error", error);
+                                Toast.makeText(getActivity(), "Registration Error " + error.stringValue(), Toast.LENGTH_LONG).show();
+                            } else if(credential != null) {
+                                Toast.makeText(getActivity(), "Registered!", Toast.LENGTH_SHORT).show();
+                                mCredentials.invalidate(); // reload the list
+                            }
                         }
-                    }
-
-                    // If the credential allows for second-factor authentication, then we need to ask
-                    // the user which method they'd prefer; Fingerprint or PIN?
-                    @Override
-                    public void onAuthenticationTypeSelectionRequested(SecondFactorAuthenticationTypeSelector selector) {
-                        //noinspection ConstantConditions
-                        new AlertDialog.Builder(getActivity())
-                                .setMessage("Please select second factor authentication type")
-                                .setCancelable(false)
-                                .setPositiveButton("Biometric", (dlg, which) -> selector.select(true, SecondFactorAuthenticationType.BIOMETRIC))
-                                .setNegativeButton("Passcode", (dlg, which) -> selector.select(true, SecondFactorAuthenticationType.PIN))
-                                .setNeutralButton("Cancel", (dlg, which) -> selector.select(false, null))
-                                .show();
-                    }
-                });
-            } catch (URISyntaxException e) {
-                Log.e("CredentialsFragment", e.getMessage());
-            }
+
+                        // If the credential allows for second-factor authentication, then we need to ask
+                        // the user which method they'd prefer; Fingerprint or PIN?
+                        @Override
+                        public void onAuthenticationTypeSelectionRequested(SecondFactorAuthenticationTypeSelector selector) {
+                            //noinspection ConstantConditions
+                            new AlertDialog.Builder(getActivity())
+                                    .setMessage("Please select second factor authentication type")
+                                    .setCancelable(false)
+                                    .setPositiveButton("Biometric", (dlg, which) -> selector.select(true, SecondFactorAuthenticationType.BIOMETRIC))
+                                    .setNegativeButton("Passcode", (dlg, which) -> selector.select(true, SecondFactorAuthenticationType.PIN))
+                                    .setNeutralButton("Cancel", (dlg, which) -> selector.select(false, null))
+                                    .show();
+                        }
+                    });
+                } catch (URISyntaxException e) {
+                    Log.e("CredentialsFragment", e.getMessage());
+                }
+            });
         }
     }
 
-    class MobileCredentialRecyclerViewAdapter extends RecyclerView.Adapter<MobileCredentialRecyclerViewAdapter.ViewHolder> {
+    private static final DiffUtil.ItemCallback<MobileCredential> CREDENTIAL_DIFF_CALLBACK = new DiffUtil.ItemCallback<MobileCredential>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull MobileCredential oldItem, @NonNull MobileCredential newItem) {
+            return oldItem.getId().equals(newItem.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull MobileCredential oldItem, @NonNull MobileCredential newItem) {
+            return oldItem.getFacilityId() == newItem.getFacilityId()
+                    && Objects.equals(oldItem.getFacilityName(), newItem.getFacilityName());
+        }
+    };
+
+    class MobileCredentialRecyclerViewAdapter extends RecyclerView.Adapter<MobileCredentialRecyclerViewAdapter.ViewHolder>
+            implements CredentialRepository.Listener {
 
-        // we take a copy of the credentials array to avoid possible bugs where the
-        // recyclerview is in the middle of loading something while the SDK changes credentials
-        // out from under it.
+        // the repository hands us immutable snapshots, so the SDK can't change the list out from
+        // under the recyclerview; the differ works out which rows changed off the main thread
         @NonNull
-        private final ArrayList<MobileCredential> mCredentials = new ArrayList<>();
+        private final AsyncListDiffer<MobileCredential> mDiffer = new AsyncListDiffer<>(this, CREDENTIAL_DIFF_CALLBACK);
 
         MobileCredentialRecyclerViewAdapter() { }
 
-        void setCredentials(Collection<MobileCredential> credentials) {
-            mCredentials.clear();
-            mCredentials.addAll(credentials);
-            notifyDataSetChanged();
+        @Override
+        public void onCredentialsChanged(@NonNull List<MobileCredential> credentials) {
+            mDiffer.submitList(credentials);
         }
 
         @Override
@@ -186,16 +202,16 @@ public class CredentialsFragment extends Fragment implements TabFragment, OnInvi
 
         @Override
         public void onBindViewHolder(@NonNull final ViewHolder holder, int position) {
-            holder.mItem = mCredentials.get(position);
-            holder.mIdView.setText(String.valueOf(mCredentials.get(position).getFacilityId()));
-            holder.mContentView.setText(mCredentials.get(position).getFacilityName());
+            holder.mItem = mDiffer.getCurrentList().get(position);
+            holder.mIdView.setText(String.valueOf(holder.mItem.getFacilityId()));
+            holder.mContentView.setText(holder.mItem.getFacilityName());
 
             holder.mView.setOnClickListener(v -> CredentialsFragment.this.onMobileCredentialClicked(holder.mItem));
         }
 
         @Override
         public int getItemCount() {
-            return mCredentials.size();
+            return mDiffer.getCurrentList().size();
         }
 
         class ViewHolder extends RecyclerView.ViewHolder {
@@ -14,26 +14,22 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.gallagher.security.mobileaccess.DigitalId;
 import com.gallagher.security.mobileaccess.DigitalIdError;
 import com.gallagher.security.mobileaccess.DigitalIdListener;
-import com.gallagher.security.mobileaccess.MobileAccess;
-import com.gallagher.security.mobileaccess.MobileAccessProvider;
 import com.gallagher.security.mobileaccess.SdkFeatureState;
 import com.gallagher.security.mobileaccess.SdkFeatureStateListener;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
 import java.util.List;
+import java.util.Objects;
 
-public class DigitalIdFragment extends Fragment implements TabFragment, SdkFeatureStateListener {
-
-    @NonNull
-    private final MobileAccess mMobileAccess = MobileAccessProvider.getInstance();
+public class DigitalIdFragment extends Fragment implements SdkFeatureStateListener {
 
     @NonNull
     private final DigitalIdRecyclerViewAdapter mAdapter = new DigitalIdRecyclerViewAdapter();
@@ -44,9 +40,6 @@ public class DigitalIdFragment extends Fragment implements TabFragment, SdkFeatu
     private View mBannerView;
     private boolean mHasCloudConnectionError = false;
 
-    public String getTitle() { return "Digital IDs"; }
-    public int getActionId() { return R.id.action_digital_ids; }
-
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
@@ -58,26 +51,28 @@ public class DigitalIdFragment extends Fragment implements TabFragment, SdkFeatu
 
         mBannerView = view.findViewById(R.id.banner);
         Button bannerRetryButton = view.findViewById(R.id.bannerRetryButton);
-        bannerRetryButton.setOnClickListener(v -> mMobileAccess.syncCredentialItemUpdates());
-
-        mMobileAccess.addSdkFeatureStateListener(this);
-        mMobileAccess.addDigitalIdListener(mAdapter);
+        bannerRetryButton.setOnClickListener(v -> CredentialSync.getInstance().requestNow(null));
 
         return view;
     }
 
+    // *********************************************************************************
+    // SdkEventHub only passes on SDK events while the tab is on screen (the pager only resumes
+    // that one). Each time we come back it sends every Digital ID it has first, so the list is replaced
+    // with that rather than replaying what changed while it was hidden
+    // *********************************************************************************
     @Override
-    public void onDestroyView() {
-        super.onDestroyView();
-        mMobileAccess.removeSdkFeatureStateListener(this);
-        mMobileAccess.removeDigitalIdListener(mAdapter);
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        SdkEventHub hub = SdkEventHub.getInstance();
+        hub.getSdkFeatureStates().subscribe("DigitalIdFragment", this, () -> this);
+        hub.getDigitalIdUpdates().subscribe("DigitalIdFragment", this, mAdapter::newSubscription);
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        mMobileAccess.syncCredentialItemUpdates();
-        updateConnectionErrorBanner();
+        CredentialSync.getInstance().request(null);
     }
 
     @Override
@@ -124,10 +119,30 @@ public class DigitalIdFragment extends Fragment implements TabFragment, SdkFeatu
         public DigitalId getDigitalId() { return mDigitalId; }
     }
 
-    class DigitalIdRecyclerViewAdapter extends RecyclerView.Adapter<DigitalIdViewHolder> implements DigitalIdListener {
+    private static final DiffUtil.ItemCallback<DigitalId> DIGITAL_ID_DIFF_CALLBACK = new DiffUtil.ItemCallback<DigitalId>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull DigitalId oldItem, @NonNull DigitalId newItem) {
+            return oldItem.getId().equals(newItem.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull DigitalId oldItem, @NonNull DigitalId newItem) {
+            return Objects.equals(oldItem.getName(), newItem.getName())
+                    && Objects.equals(oldItem.getStatusValue(), newItem.getStatusValue());
+        }
+    };
+
+    class DigitalIdRecyclerViewAdapter extends RecyclerView.Adapter<DigitalIdViewHolder> {
 
+        // only touched on the SdkEventLoop
         @NonNull
-        private ArrayList<DigitalId> mDigitalIds = new ArrayList<>();
+        private final KeyedListModel<String, DigitalId> mDigitalIds = new KeyedListModel<>(DigitalId::getId);
+
+        @NonNull
+        private final AsyncListDiffer<DigitalId> mDiffer = new AsyncListDiffer<>(this, DIGITAL_ID_DIFF_CALLBACK);
+
+        @NonNull
+        private final SnapshotPublisher<List<DigitalId>> mPublisher = new SnapshotPublisher<>(mDiffer::submitList);
 
         @NonNull
         @Override
@@ -138,48 +153,33 @@ public class DigitalIdFragment extends Fragment implements TabFragment, SdkFeatu
 
         @Override
         public void onBindViewHolder(@NonNull DigitalIdViewHolder holder, int position) {
-            holder.setDigitalId(mDigitalIds.get(position));
+            holder.setDigitalId(mDiffer.getCurrentList().get(position));
             holder.itemView.setOnClickListener(v ->
                     DigitalIdFragment.this.onDigitalIdClicked(holder.getDigitalId()));
         }
 
         @Override
         public int getItemCount() {
-            return mDigitalIds.size();
+            return mDiffer.getCurrentList().size();
         }
 
-        @Override
-        public void onDigitalIdUpdated(@NonNull List<DigitalId> addedOrUpdatedDigitalIds, @NonNull List<DigitalId> removedDigitalIds, @Nullable Date lastUpdateTime) {
-            // update our list of DigitalIds
-            for (DigitalId digitalId : addedOrUpdatedDigitalIds) {
-                int updateIndex = -1;
-                for (int i = 0; i < mDigitalIds.size(); i++) {
-                    DigitalId id = mDigitalIds.get(i);
-                    if (id.getId().equals(digitalId.getId())) {
-                        updateIndex = i;
-                        break;
-                    }
-                }
-
-                if (updateIndex == -1) {
-                    mDigitalIds.add(digitalId);
-                    notifyItemInserted(mDigitalIds.size() - 1);
-                } else {
-                    mDigitalIds.set(updateIndex, digitalId);
-                    notifyItemChanged(updateIndex);
-                }
-            }
-
-            for (DigitalId removedDigitalId : removedDigitalIds) {
-                for (int i = 0; i < mDigitalIds.size(); i++) {
-                    DigitalId digitalId = mDigitalIds.get(i);
-                    if (digitalId.getId().equals(removedDigitalId.getId())) {
-                        mDigitalIds.remove(i);
-                        notifyItemRemoved(i);
-                        break;
+        // A listener for one add/remove pair. SdkEventHub delivers in order, with the replay first,
+        // so its first callback is every Digital ID the SDK has
+        @NonNull
+        DigitalIdListener newSubscription() {
+            boolean[] first = { true }; // only touched on the SdkEventLoop
+            return (addedOrUpdatedDigitalIds, removedDigitalIds, lastUpdateTime) -> {
+                // update our list of DigitalIds off the main thread, then hand the UI a snapshot
+                SdkEventLoop.getInstance().execute(() -> {
+                    boolean changed = first[0]
+                            ? mDigitalIds.replace(addedOrUpdatedDigitalIds)
+                            : mDigitalIds.apply(addedOrUpdatedDigitalIds, removedDigitalIds);
+                    first[0] = false;
+                    if (changed) {
+                        mPublisher.publish(mDigitalIds.snapshot());
                     }
-                }
-            }
+                });
+            };
         }
     }
 }
@@ -0,0 +1,219 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormatSymbols;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.pattern.ExtendedThrowableProxyConverter;
+import ch.qos.logback.classic.pattern.TargetLengthBasedClassNameAbbreviator;
+import ch.qos.logback.classic.pattern.ThrowableHandlingConverter;
+import ch.qos.logback.classic.pattern.ThrowableProxyConverter;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.CoreConstants;
+import ch.qos.logback.core.encoder.EncoderBase;
+
+// *********************************************************************************
+// Encodes log events for the log file. The output is byte-for-byte the same as a
+// PatternLayoutEncoder with the pattern
+//
+//     %d{dd:MM:yy HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n
+//
+// but it allocates far less per event:
+// - the date is only formatted when the second changes; the milliseconds are filled in by hand
+// - abbreviated logger names are worked out once per logger and kept as UTF-8 bytes
+// - everything is written into one reusable byte buffer, rather than building Strings
+//   and then encoding them
+//
+// Like PatternLayout, the stack trace of an attached exception follows the message.
+// *********************************************************************************
+final class FileLogEncoder extends EncoderBase<ILoggingEvent> {
+
+    private static final int LOGGER_NAME_LENGTH = 36;
+
+    // "%-5level", already padded
+    private static final byte[] TRACE = ascii("TRACE");
+    private static final byte[] DEBUG = ascii("DEBUG");
+    private static final byte[] INFO = ascii("INFO ");
+    private static final byte[] WARN = ascii("WARN ");
+    private static final byte[] ERROR = ascii("ERROR");
+
+    private static final byte[] LINE_SEPARATOR = ascii(CoreConstants.LINE_SEPARATOR);
+
+    // encode() may be called from several threads at once, so everything below is guarded by this
+
+    @NonNull private final SimpleDateFormat mSecondFormat = new SimpleDateFormat("dd:MM:yy HH:mm:ss.");
+    private final char mZeroDigit = DecimalFormatSymbols.getInstance().getZeroDigit(); // SimpleDateFormat uses the locale's digits
+    private long mCachedSecond = Long.MIN_VALUE;
+    @NonNull private byte[] mCachedSecondBytes = new byte[0];
+
+    @NonNull private final TargetLengthBasedClassNameAbbreviator mAbbreviator = new TargetLengthBasedClassNameAbbreviator(LOGGER_NAME_LENGTH);
+    @NonNull private final HashMap<String, byte[]> mLoggerNames = new HashMap<>();
+
+    private ThrowableHandlingConverter mThrowableConverter; // created on first use
+
+    @NonNull private byte[] mBuffer = new byte[512];
+    private int mLength;
+
+    @Override
+    public byte[] headerBytes() {
+        return null;
+    }
+
+    @Override
+    public byte[] footerBytes() {
+        return null;
+    }
+
+    @Override
+    public synchronized byte[] encode(ILoggingEvent event) {
+        mLength = 0;
+
+        writeTimestamp(event.getTimeStamp());
+        write((byte) ' ');
+        write((byte) '[');
+        writeUtf8(event.getThreadName());
+        write((byte) ']');
+        write((byte) ' ');
+        write(levelBytes(event.getLevel()));
+        write((byte) ' ');
+        write(loggerNameBytes(event.getLoggerName()));
+        write((byte) ' ');
+        write((byte) '-');
+        write((byte) ' ');
+        writeUtf8(event.getFormattedMessage());
+        write(LINE_SEPARATOR);
+        if (event.getThrowableProxy() != null) {
+            writeUtf8(throwableConverter().convert(event));
+        }
+
+        return Arrays.copyOf(mBuffer, mLength);
+    }
+
+    private void writeTimestamp(long timestamp) {
+        long second = Math.floorDiv(timestamp, 1000L);
+        if (second != mCachedSecond) {
+            // every zone offset is a whole number of seconds, so the formatted second can't change within one
+            mCachedSecondBytes = mSecondFormat.format(new Date(second * 1000)).getBytes(StandardCharsets.UTF_8);
+            mCachedSecond = second;
+        }
+        write(mCachedSecondBytes);
+
+        int millis = (int) Math.floorMod(timestamp, 1000L);
+        writeChar((char) (mZeroDigit + millis / 100));
+        writeChar((char) (mZeroDigit + millis / 10 % 10));
+        writeChar((char) (mZeroDigit + millis % 10));
+    }
+
+    @NonNull
+    private byte[] loggerNameBytes(String loggerName) {
+        byte[] bytes = mLoggerNames.get(loggerName);
+        if (bytes == null) {
+            bytes = mAbbreviator.abbreviate(loggerName).getBytes(StandardCharsets.UTF_8);
+            mLoggerNames.put(loggerName, bytes);
+        }
+        return bytes;
+    }
+
+    @NonNull
+    private static byte[] levelBytes(@NonNull Level level) {
+        switch (level.toInt()) {
+            case Level.TRACE_INT: return TRACE;
+            case Level.DEBUG_INT: return DEBUG;
+            case Level.INFO_INT: return INFO;
+            case Level.WARN_INT: return WARN;
+            case Level.ERROR_INT: return ERROR;
+            default: return ascii(String.format("%-5s", level.levelStr));
+        }
+    }
+
+    // the converter PatternLayout would have added for us
+    @NonNull
+    private ThrowableHandlingConverter throwableConverter() {
+        if (mThrowableConverter == null) {
+            boolean packagingData = getContext() instanceof LoggerContext && ((LoggerContext) getContext()).isPackagingDataEnabled();
+            mThrowableConverter = packagingData ? new ExtendedThrowableProxyConverter() : new ThrowableProxyConverter();
+            mThrowableConverter.setContext(getContext());
+            mThrowableConverter.start();
+        }
+        return mThrowableConverter;
+    }
+
+    // *********************************************************************************
+    // The byte buffer
+    // *********************************************************************************
+
+    private void ensureCapacity(int extra) {
+        if (mLength + extra > mBuffer.length) {
+            mBuffer = Arrays.copyOf(mBuffer, Math.max(mBuffer.length * 2, mLength + extra));
+        }
+    }
+
+    private void write(byte b) {
+        ensureCapacity(1);
+        mBuffer[mLength++] = b;
+    }
+
+    private void write(@NonNull byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, mBuffer, mLength, bytes.length);
+        mLength += bytes.length;
+    }
+
+    private void writeChar(char c) {
+        if (c < 0x80) {
+            write((byte) c);
+        } else {
+            writeUtf8(String.valueOf(c));
+        }
+    }
+
+    // The same bytes as s.getBytes(UTF-8), including '?' for unpaired surrogates, without the intermediate array
+    private void writeUtf8(String s) {
+        if (s == null) {
+            s = "null";
+        }
+        int length = s.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                ensureCapacity(1);
+                mBuffer[mLength++] = (byte) c;
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                mBuffer[mLength++] = (byte) (0xC0 | (c >> 6));
+                mBuffer[mLength++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                ensureCapacity(4);
+                mBuffer[mLength++] = (byte) (0xF0 | (codePoint >> 18));
+                mBuffer[mLength++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                mBuffer[mLength++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                mBuffer[mLength++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                ensureCapacity(1);
+                mBuffer[mLength++] = (byte) '?';
+            } else {
+                ensureCapacity(3);
+                mBuffer[mLength++] = (byte) (0xE0 | (c >> 12));
+                mBuffer[mLength++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                mBuffer[mLength++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    @NonNull
+    private static byte[] ascii(@NonNull String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
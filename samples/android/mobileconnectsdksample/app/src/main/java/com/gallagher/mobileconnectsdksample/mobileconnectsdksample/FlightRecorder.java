@@ -0,0 +1,425 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.gallagher.security.mobileaccess.AccessResult;
+import com.gallagher.security.mobileaccess.AutomaticAccessListener;
+import com.gallagher.security.mobileaccess.FatalError;
+import com.gallagher.security.mobileaccess.MobileAccessState;
+import com.gallagher.security.mobileaccess.Reader;
+import com.gallagher.security.mobileaccess.ReaderConnectionError;
+import com.gallagher.security.mobileaccess.ReaderUpdateListener;
+import com.gallagher.security.mobileaccess.ReaderUpdateType;
+import com.gallagher.security.mobileaccess.SdkStateListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// *********************************************************************************
+// Keeps the most recent SDK events - state changes, reader updates and access
+// callbacks - in a fixed-size ring in off-heap memory, and only writes them to disk
+// when something goes wrong. That gives full detail around an incident without
+// paying for DEBUG logging to the file all the time.
+//
+// A recording is saved (into the log files directory, so Send Logs includes it) when:
+// - an access attempt fails with a ReaderConnectionError
+// - the SDK reports a new ERROR_ state
+// - the SDK throws a FatalError (a bug, in the SDK or in how we call it), whether
+//   we catch it or it crashes the app; the recording is named after it
+// - the app crashes
+// - the user asks for one from the settings menu
+// Automatic recordings wait a few seconds so they include what happened next, and
+// are rate limited so a burst of failures doesn't produce a burst of files.
+//
+// record() may be called from any thread and doesn't allocate.
+// *********************************************************************************
+final class FlightRecorder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FlightRecorder.class);
+
+    enum Kind { STATE, READER, ACCESS, ERROR, NOTE }
+
+    private static final int CAPACITY = 1024 * 1024;
+    private static final int MAX_STRING_CHARS = 256;
+    private static final int MAX_RECORD_BYTES = 4 + 8 + 1 + 2 * (2 + 2 * MAX_STRING_CHARS) + 8;
+
+    private static final long TRIGGER_DELAY_MILLIS = 5_000;
+    private static final long MIN_TRIGGER_INTERVAL_MILLIS = 60_000;
+    private static final int MAX_RECORDINGS = 5;
+    private static final int MAX_CAUSE_DEPTH = 16; // cause chains can loop
+
+    private static final String FILE_PREFIX = "FlightRecording_";
+    private static final String FILE_EXTENSION = ".txt";
+
+    private static FlightRecorder sInstance;
+
+    // Records are [int length][long time][byte kind][string subject][string detail][double value],
+    // where a string is [short length, -1 for null][chars]. mHead and mTail are positions in the
+    // stream of everything ever written; the ring holds the bytes from mHead to mTail. Guarded by this
+    @NonNull private final ByteBuffer mRing = ByteBuffer.allocateDirect(CAPACITY);
+    @NonNull private final ByteBuffer mScratch = ByteBuffer.allocate(MAX_RECORD_BYTES);
+    private long mHead = 0;
+    private long mTail = 0;
+    private long mOverwritten = 0; // records lost off the back of the ring
+
+    @NonNull private final ScheduledExecutorService mWriter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "FlightRecorder");
+        thread.setDaemon(true);
+        return thread;
+    });
+    @NonNull private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    @Nullable private File mDirectory;
+    private boolean mStarted = false; // main thread only
+    private long mLastTriggered = -MIN_TRIGGER_INTERVAL_MILLIS; // guarded by this
+    @NonNull private EnumSet<MobileAccessState> mLastStates = EnumSet.noneOf(MobileAccessState.class); // only on the SDK's callback thread
+
+    @NonNull
+    static synchronized FlightRecorder getInstance() {
+        if (sInstance == null) {
+            sInstance = new FlightRecorder();
+        }
+        return sInstance;
+    }
+
+    private FlightRecorder() { }
+
+    // *********************************************************************************
+    // Call from Application.onCreate, with where to save recordings (null if there's
+    // nowhere). Also saves a recording if the app crashes
+    // *********************************************************************************
+    void start(@Nullable File directory) {
+        mDirectory = directory;
+        if (mStarted) {
+            return; // only install the crash handler once
+        }
+        mStarted = true;
+
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, throwable) -> {
+            record(Kind.ERROR, "crash on " + thread.getName(), String.valueOf(throwable), 0);
+            FatalError fatalError = findFatalError(throwable);
+            if (fatalError != null) {
+                record(Kind.ERROR, "FatalError", fatalError.getMessage(), 0);
+            }
+            // the process is about to die, so save it here and now rather than on the writer thread
+            write(snapshot(), fatalError != null ? "crash: SDK FatalError: " + fatalError.getMessage() : "crash");
+            if (previous != null) {
+                previous.uncaughtException(thread, throwable);
+            }
+        });
+    }
+
+    // *********************************************************************************
+    // Register these with MobileAccess to record SDK events
+    // *********************************************************************************
+
+    @NonNull
+    SdkStateListener getSdkStateListener() {
+        return mSdkStateListener;
+    }
+
+    @NonNull
+    ReaderUpdateListener getReaderUpdateListener() {
+        return mReaderUpdateListener;
+    }
+
+    @NonNull
+    AutomaticAccessListener getAutomaticAccessListener() {
+        return mAutomaticAccessListener;
+    }
+
+    // *********************************************************************************
+    // Manual access requests don't go through the AutomaticAccessListener; AccessScheduler calls these
+    // *********************************************************************************
+
+    void accessStarted(@NonNull Reader reader) {
+        record(Kind.ACCESS, reader.getId(), "started", 0);
+    }
+
+    void accessCompleted(@NonNull Reader reader, @Nullable AccessResult accessResult, @Nullable ReaderConnectionError error) {
+        if (error != null) {
+            record(Kind.ERROR, reader.getId(), error.toString(), 0);
+            trigger("access to " + reader.getName() + " failed: " + error.getClass().getSimpleName());
+        } else {
+            record(Kind.ACCESS, reader.getId(), accessResult != null ? accessResult.getAccessDecision().name() : "no result", 0);
+        }
+    }
+
+    // *********************************************************************************
+    // Call with an exception from the SDK that we caught rather than let crash the app.
+    // Saves a recording if it is, or was caused by, a FatalError
+    // *********************************************************************************
+    void caught(@NonNull String where, @NonNull Throwable throwable) {
+        record(Kind.ERROR, where, String.valueOf(throwable), 0);
+        FatalError fatalError = findFatalError(throwable);
+        if (fatalError != null) {
+            trigger("SDK FatalError in " + where + ": " + fatalError.getMessage());
+        }
+    }
+
+    // The SDK throws FatalError for bugs, its own or ours (configuring twice, say). It can reach us wrapped in other exceptions
+    @Nullable
+    static FatalError findFatalError(@Nullable Throwable throwable) {
+        for (int depth = 0; throwable != null && depth < MAX_CAUSE_DEPTH; depth++) {
+            if (throwable instanceof FatalError) {
+                return (FatalError) throwable;
+            }
+            throwable = throwable.getCause();
+        }
+        return null;
+    }
+
+    @NonNull
+    private final SdkStateListener mSdkStateListener = (isScanning, states) -> {
+        EnumSet<MobileAccessState> current = EnumSet.noneOf(MobileAccessState.class);
+        current.addAll(states);
+        if (current.equals(mLastStates)) {
+            return; // the SDK repeats itself a lot
+        }
+        EnumSet<MobileAccessState> added = EnumSet.copyOf(current);
+        added.removeAll(mLastStates);
+        mLastStates = current;
+
+        record(Kind.STATE, isScanning ? "scanning" : "not scanning", current.toString(), current.size());
+        for (MobileAccessState state : added) {
+            // having no credentials yet is normal, not an incident
+            if (state.name().startsWith("ERROR_") && state != MobileAccessState.ERROR_NO_CREDENTIALS) {
+                trigger("SDK state " + state);
+            }
+        }
+    };
+
+    @NonNull
+    private final ReaderUpdateListener mReaderUpdateListener = (reader, updateType) -> {
+        if (updateType == ReaderUpdateType.ATTRIBUTES_CHANGED) {
+            record(Kind.READER, reader.getId(), reader.getName(), reader.getMeasuredPathLoss());
+        } else {
+            record(Kind.READER, reader.getId(), updateType.name(), 0);
+        }
+    };
+
+    @NonNull
+    private final AutomaticAccessListener mAutomaticAccessListener = new AutomaticAccessListener() {
+        @Override
+        public void onReturnToReaderRequired(Reader reader) {
+            record(Kind.ACCESS, reader.getId(), "return to reader required", 0);
+        }
+
+        @Override
+        public void onReturnedToReader(Reader reader) {
+            record(Kind.ACCESS, reader.getId(), "returned to reader", 0);
+        }
+
+        @Override
+        public void onAccessStarted(@NonNull Reader reader) {
+            accessStarted(reader);
+        }
+
+        @Override
+        public void onAccessCompleted(@NonNull Reader reader, @Nullable AccessResult accessResult, @Nullable ReaderConnectionError error) {
+            accessCompleted(reader, accessResult, error);
+        }
+    };
+
+    // *********************************************************************************
+    // Recording
+    // *********************************************************************************
+
+    void record(@NonNull Kind kind, @Nullable String subject, @Nullable String detail, double value) {
+        synchronized (this) {
+            mScratch.clear();
+            mScratch.putInt(0); // length, filled in below
+            mScratch.putLong(System.currentTimeMillis());
+            mScratch.put((byte) kind.ordinal());
+            putString(mScratch, subject);
+            putString(mScratch, detail);
+            mScratch.putDouble(value);
+            int length = mScratch.position();
+            mScratch.putInt(0, length);
+
+            // make room by dropping the oldest records
+            while (mTail + length - mHead > CAPACITY) {
+                mHead += getIntAt(mHead);
+                mOverwritten++;
+            }
+
+            // copy it in, in two parts if it wraps around the end
+            int offset = (int) (mTail % CAPACITY);
+            int firstPart = Math.min(length, CAPACITY - offset);
+            mScratch.position(0).limit(firstPart);
+            mRing.position(offset);
+            mRing.put(mScratch);
+            if (firstPart < length) {
+                mScratch.limit(length);
+                mRing.position(0);
+                mRing.put(mScratch);
+            }
+            mTail += length;
+        }
+    }
+
+    // *********************************************************************************
+    // Saves a recording of what's in the ring a few seconds from now, unless we've saved one very recently
+    // *********************************************************************************
+    void trigger(@NonNull String reason) {
+        synchronized (this) {
+            long now = SystemClock.elapsedRealtime();
+            if (now - mLastTriggered < MIN_TRIGGER_INTERVAL_MILLIS) {
+                return;
+            }
+            mLastTriggered = now;
+        }
+        record(Kind.NOTE, "trigger", reason, 0);
+        mWriter.schedule(() -> write(snapshot(), reason), TRIGGER_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // *********************************************************************************
+    // Saves a recording straight away. The callback is called on the main thread with the
+    // file, or null if it couldn't be saved
+    // *********************************************************************************
+    void save(@NonNull String reason, @NonNull SaveCallback callback) {
+        record(Kind.NOTE, "save", reason, 0);
+        byte[] snapshot = snapshot();
+        mWriter.execute(() -> {
+            File file = write(snapshot, reason);
+            mMainHandler.post(() -> callback.onSaved(file));
+        });
+    }
+
+    interface SaveCallback {
+        void onSaved(@Nullable File file);
+    }
+
+    // the records currently in the ring, oldest first
+    @NonNull
+    private synchronized byte[] snapshot() {
+        int length = (int) (mTail - mHead);
+        byte[] bytes = new byte[length];
+        int offset = (int) (mHead % CAPACITY);
+        int firstPart = Math.min(length, CAPACITY - offset);
+        mRing.position(offset);
+        mRing.get(bytes, 0, firstPart);
+        mRing.position(0);
+        mRing.get(bytes, firstPart, length - firstPart);
+        return bytes;
+    }
+
+    @Nullable
+    private File write(@NonNull byte[] snapshot, @NonNull String reason) {
+        File directory = mDirectory;
+        if (directory == null) {
+            return null;
+        }
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date());
+        File file = new File(directory, FILE_PREFIX + stamp + FILE_EXTENSION);
+        SimpleDateFormat timeFormat = new SimpleDateFormat("dd:MM:yy HH:mm:ss.SSS", Locale.US);
+        long overwritten;
+        synchronized (this) {
+            overwritten = mOverwritten;
+        }
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write("Flight recording: " + reason + "\n");
+            writer.write("Saved: " + timeFormat.format(new Date()) + ", earlier records overwritten: " + overwritten + "\n\n");
+
+            ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+            Kind[] kinds = Kind.values();
+            while (buffer.remaining() >= 4) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                long time = buffer.getLong();
+                Kind kind = kinds[buffer.get()];
+                String subject = getString(buffer);
+                String detail = getString(buffer);
+                double value = buffer.getDouble();
+                buffer.position(start + length);
+
+                writer.write(String.format(Locale.US, "%s %-6s %s %s%s\n", timeFormat.format(new Date(time)), kind,
+                        subject, detail, value != 0 ? String.format(Locale.US, " (%.1f)", value) : ""));
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to save flight recording to {}", file, e);
+            return null;
+        }
+        LOG.info("Saved flight recording ({}) to {}", reason, file.getName());
+        deleteOldRecordings(directory);
+        return file;
+    }
+
+    private static void deleteOldRecordings(@NonNull File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_EXTENSION));
+        if (files == null || files.length <= MAX_RECORDINGS) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        for (int i = MAX_RECORDINGS; i < files.length; i++) {
+            if (!files[i].delete()) {
+                LOG.warn("Failed to delete old flight recording {}", files[i].getName());
+            }
+        }
+    }
+
+    // *********************************************************************************
+    // Helpers
+    // *********************************************************************************
+
+    // reads an int that may wrap around the end of the ring
+    private int getIntAt(long position) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (mRing.get((int) ((position + i) % CAPACITY)) & 0xFF);
+        }
+        return value;
+    }
+
+    private static void putString(@NonNull ByteBuffer buffer, @Nullable String s) {
+        if (s == null) {
+            buffer.putShort((short) -1);
+            return;
+        }
+        int length = Math.min(s.length(), MAX_STRING_CHARS);
+        buffer.putShort((short) length);
+        for (int i = 0; i < length; i++) {
+            buffer.putChar(s.charAt(i));
+        }
+    }
+
+    @Nullable
+    private static String getString(@NonNull ByteBuffer buffer) {
+        int length = buffer.getShort();
+        if (length < 0) {
+            return null;
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = buffer.getChar();
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,62 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+// *********************************************************************************
+// An ordered list of items indexed by key, for SDK callbacks that give us
+// "added or updated" and "removed" lists (Salto keys, Digital IDs, ...).
+// New items go on the end, updated items keep their place. replace() takes a full
+// list instead, for the SDK's first callback to a newly added listener. Not thread-safe;
+// it's meant to be owned by the SdkEventLoop.
+// *********************************************************************************
+class KeyedListModel<K, V> {
+
+    interface KeyFunction<K, V> {
+        @NonNull K keyOf(@NonNull V item);
+    }
+
+    @NonNull private final KeyFunction<K, V> mKeyFunction;
+    @NonNull private final LinkedHashMap<K, V> mItems = new LinkedHashMap<>();
+
+    KeyedListModel(@NonNull KeyFunction<K, V> keyFunction) {
+        mKeyFunction = keyFunction;
+    }
+
+    // returns true if anything changed
+    boolean apply(@NonNull List<V> addedOrUpdated, @NonNull List<V> removed) {
+        boolean changed = false;
+        for (V item : addedOrUpdated) {
+            mItems.put(mKeyFunction.keyOf(item), item); // put() keeps the position of an existing key
+            changed = true;
+        }
+        for (V item : removed) {
+            changed |= mItems.remove(mKeyFunction.keyOf(item)) != null;
+        }
+        return changed;
+    }
+
+    // Makes the list exactly items: anything not in it is removed, everything in it is added or updated.
+    // Returns true if anything changed
+    boolean replace(@NonNull List<V> items) {
+        HashSet<K> keys = new HashSet<>(items.size());
+        for (V item : items) {
+            keys.add(mKeyFunction.keyOf(item));
+        }
+        boolean changed = mItems.keySet().retainAll(keys);
+        return apply(items, Collections.emptyList()) || changed;
+    }
+
+    @NonNull
+    List<V> snapshot() {
+        return Collections.unmodifiableList(new ArrayList<>(mItems.values()));
+    }
+}
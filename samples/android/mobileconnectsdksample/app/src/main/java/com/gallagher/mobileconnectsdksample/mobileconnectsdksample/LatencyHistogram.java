@@ -0,0 +1,78 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+// *********************************************************************************
+// A fixed-size, log-linear histogram in the style of HdrHistogram.
+//
+// Values below 32 are counted exactly. Above that, each power-of-two range is split
+// into 16 equal buckets, so any recorded value is reported to within about 6%.
+// Values up to MAX_VALUE (about 17 minutes, in milliseconds) fit in 272 counters;
+// anything larger is clamped. Recording never allocates. Not thread-safe.
+// *********************************************************************************
+class LatencyHistogram {
+
+    static final long MAX_VALUE = (1L << 20) - 1;
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS; // 32
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2; // 16
+    private static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+    private final long[] mCounts = new long[BUCKET_COUNT];
+    private long mTotalCount = 0;
+    private long mMin = Long.MAX_VALUE;
+    private long mMax = 0;
+    private long mSum = 0;
+
+    void record(long value) {
+        long clamped = Math.max(0, Math.min(value, MAX_VALUE));
+        mCounts[indexOf(clamped)]++;
+        mTotalCount++;
+        mSum += clamped;
+        mMin = Math.min(mMin, clamped);
+        mMax = Math.max(mMax, clamped);
+    }
+
+    long getTotalCount() { return mTotalCount; }
+    long getMin() { return mTotalCount > 0 ? mMin : 0; }
+    long getMax() { return mMax; }
+    double getMean() { return mTotalCount > 0 ? (double) mSum / mTotalCount : 0; }
+
+    // percentile is 0..100. Returns the highest value that falls in the same bucket as the
+    // requested percentile, capped at the largest value actually recorded
+    long getValueAtPercentile(double percentile) {
+        if (mTotalCount == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(mTotalCount * Math.min(100, Math.max(0, percentile)) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            seen += mCounts[i];
+            if (seen >= target) {
+                return Math.min(highestValueAt(i), mMax);
+            }
+        }
+        return mMax;
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - (SUB_BUCKET_BITS - 1);
+        int subBucket = (int) (value >>> shift); // SUB_BUCKET_HALF..SUB_BUCKET_COUNT-1
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (subBucket - SUB_BUCKET_HALF);
+    }
+
+    private static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+        long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
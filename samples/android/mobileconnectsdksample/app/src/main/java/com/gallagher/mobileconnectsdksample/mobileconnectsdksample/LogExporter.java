@@ -0,0 +1,260 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// *********************************************************************************
+// Packs the log files into a single zip for sending, on a background thread.
+//
+// The zip holds a state.txt snapshot (build, device, diagnostics counters) followed by
+// the log files, newest first, until MAX_EXPORT_BYTES is used up. The log file that
+// doesn't fit is cut down to its newest part, and anything older is left out, so a big
+// backlog can't push the export past what mail clients will accept.
+// Files that are already gzipped are stored without compressing them again.
+//
+// Progress and the result are reported on the main thread.
+// *********************************************************************************
+final class LogExporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LogExporter.class);
+
+    interface Listener {
+        void onExportProgress(int percent);
+
+        // exactly one of zip and error is non-null
+        void onExportCompleted(@Nullable File zip, @Nullable Exception error);
+    }
+
+    // most mail clients refuse attachments much over 10 MB, and base64 makes them a third bigger again
+    static final long MAX_EXPORT_BYTES = 7 * 1024 * 1024;
+
+    static final String EXPORT_DIRECTORY = "exports"; // in the cache dir; see res/xml/filepaths.xml
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static LogExporter sInstance;
+
+    @NonNull private final ExecutorService mWorker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "LogExporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    @NonNull private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    @NonNull
+    static synchronized LogExporter getInstance() {
+        if (sInstance == null) {
+            sInstance = new LogExporter();
+        }
+        return sInstance;
+    }
+
+    private LogExporter() { }
+
+    // Exports run one at a time, in the order they were asked for
+    void export(@NonNull Context context, @NonNull Listener listener) {
+        Context appContext = context.getApplicationContext();
+        mWorker.execute(() -> {
+            File zip;
+            try {
+                zip = writeZip(appContext, percent -> mMainHandler.post(() -> listener.onExportProgress(percent)));
+            } catch (IOException e) {
+                LOG.error("Failed to export log files", e);
+                mMainHandler.post(() -> listener.onExportCompleted(null, e));
+                return;
+            }
+            mMainHandler.post(() -> listener.onExportCompleted(zip, null));
+        });
+    }
+
+    private interface Progress {
+        void report(int percent);
+    }
+
+    // A log file and how much of it (from the end) goes in the zip
+    private static final class Part {
+        final File File;
+        final long Length;
+
+        Part(File file, long length) {
+            File = file;
+            Length = length;
+        }
+    }
+
+    @NonNull
+    private static File writeZip(@NonNull Context context, @NonNull Progress progress) throws IOException {
+        // the file appender writes in the background; make sure the files have everything logged so far
+        Application.flushLogFiles();
+
+        File logDir = Application.getLogFilesDir(context);
+        if (logDir == null) {
+            throw new IOException("The log files directory is not available");
+        }
+        File exportDir = new File(context.getCacheDir(), EXPORT_DIRECTORY);
+        if (!exportDir.exists() && !exportDir.mkdirs()) {
+            throw new IOException("Failed to create " + exportDir);
+        }
+
+        // newest first, so the budget goes to the most recent logs
+        File[] files = logDir.listFiles(File::isFile);
+        if (files == null) {
+            files = new File[0];
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+
+        byte[] state = describeState(context, files).getBytes(StandardCharsets.UTF_8);
+        long budget = MAX_EXPORT_BYTES - state.length;
+        ArrayList<Part> parts = new ArrayList<>();
+        ArrayList<String> omitted = new ArrayList<>();
+        for (File file : files) {
+            long length = file.length();
+            if (length <= budget) {
+                parts.add(new Part(file, length));
+                budget -= length;
+            } else if (budget > 0 && !isCompressed(file)) {
+                parts.add(new Part(file, budget)); // the newest part of it
+                budget = 0;
+            } else {
+                omitted.add(file.getName());
+            }
+        }
+        if (!omitted.isEmpty()) {
+            LOG.info("Log export is over {} bytes; leaving out {}", MAX_EXPORT_BYTES, omitted);
+        }
+
+        long total = state.length;
+        for (Part part : parts) {
+            total += part.Length;
+        }
+
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.ROOT).format(new Date());
+        File zip = new File(exportDir, "MobileConnectSampleAppLogs_" + stamp + ".zip");
+        deleteOldExports(exportDir);
+
+        long written = 0;
+        int lastPercent = -1;
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+            out.putNextEntry(new ZipEntry("state.txt"));
+            out.write(state);
+            out.closeEntry();
+            written += state.length;
+
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+            for (Part part : parts) {
+                // no point spending time deflating what's already compressed
+                out.setLevel(isCompressed(part.File) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION);
+
+                long skipped = part.File.length() - part.Length;
+                out.putNextEntry(new ZipEntry(skipped > 0 ? "truncated_" + part.File.getName() : part.File.getName()));
+                try (FileChannel channel = new FileInputStream(part.File).getChannel()) {
+                    channel.position(skipped);
+                    long remaining = part.Length;
+                    while (remaining > 0) {
+                        wrapped.clear();
+                        wrapped.limit((int) Math.min(buffer.length, remaining));
+                        int read = channel.read(wrapped);
+                        if (read < 0) {
+                            break; // the file was rolled over while we were reading it
+                        }
+                        out.write(buffer, 0, read);
+                        remaining -= read;
+                        written += read;
+
+                        int percent = total > 0 ? (int) (written * 100 / total) : 100;
+                        if (percent != lastPercent) {
+                            lastPercent = percent;
+                            progress.report(percent);
+                        }
+                    }
+                }
+                out.closeEntry();
+            }
+        }
+        progress.report(100);
+        LOG.info("Exported {} log files ({} bytes) to {}", parts.size(), zip.length(), zip.getName());
+        return zip;
+    }
+
+    @NonNull
+    private static String describeState(@NonNull Context context, @NonNull File[] files) {
+        StringBuilder sb = new StringBuilder();
+        SimpleDateFormat format = new SimpleDateFormat("dd:MM:yy HH:mm:ss.SSS", Locale.US);
+        sb.append("Exported: ").append(format.format(new Date())).append('\n');
+        sb.append("App Version: ").append(BuildConfig.VERSION_NAME).append(", BuildType ").append(BuildConfig.BUILD_TYPE).append('\n');
+        sb.append("OS Version: ").append(System.getProperty("os.version")).append(" (").append(Build.VERSION.INCREMENTAL).append(") - API ").append(Build.VERSION.SDK_INT).append('\n');
+        sb.append("Device: ").append(Build.DEVICE).append(", Model: ").append(Build.MODEL).append(", Product ").append(Build.PRODUCT).append('\n');
+        sb.append("GallagherMobileAccess SDK Version: ").append(com.gallagher.security.mobileaccess.BuildConfig.MOBILECONNECT_SDK_VERSION_NAME).append('\n');
+        sb.append("SDK configured: ").append(SdkStartup.getInstance().getIfReady() != null).append('\n');
+
+        BoundedAsyncAppender appender = Application.getAsyncFileAppender();
+        if (appender != null) {
+            sb.append(String.format(Locale.US, "Log file appender: queued %d, written %d, dropped %d, sampled out %d\n",
+                    appender.getQueuedCount(), appender.getWrittenCount(), appender.getDroppedCount(), appender.getSampledOutCount()));
+        }
+        AccessScheduler scheduler = AccessScheduler.getInstance();
+        sb.append(String.format(Locale.US, "Access requests: %d, attempts %d, deduplicated %d, dropped in cooldown %d, timed out %d, failed to start %d\n",
+                scheduler.getRequests(), scheduler.getAttempts(), scheduler.getDeduplicated(), scheduler.getCooldownDropped(),
+                scheduler.getTimedOut(), scheduler.getFailedToStart()));
+        sb.append("Credential sync: ").append(CredentialSync.getInstance().describe()).append('\n');
+        sb.append("Credentials: ").append(CredentialRepository.getInstance().describe()).append('\n');
+        sb.append("Connection sensitivity: ").append(SensitivityTuner.getInstance(context).describe()).append('\n');
+        sb.append("\nSDK event dispatch:\n").append(SdkEventHub.getInstance().describe());
+
+        sb.append("\nLog files:\n");
+        for (File file : files) {
+            sb.append(String.format(Locale.US, "%s %d bytes, modified %s\n", file.getName(), file.length(), format.format(new Date(file.lastModified()))));
+        }
+
+        sb.append("\nAccess latency:\n").append(AccessLatencyStats.getInstance().exportCsv());
+        return sb.toString();
+    }
+
+    private static boolean isCompressed(@NonNull File file) {
+        return file.getName().endsWith(".gz");
+    }
+
+    // only the export being shared right now is worth keeping
+    private static void deleteOldExports(@NonNull File exportDir) {
+        File[] old = exportDir.listFiles();
+        if (old == null) {
+            return;
+        }
+        for (File file : old) {
+            if (!file.delete()) {
+                LOG.warn("Failed to delete old log export {}", file.getName());
+            }
+        }
+    }
+}
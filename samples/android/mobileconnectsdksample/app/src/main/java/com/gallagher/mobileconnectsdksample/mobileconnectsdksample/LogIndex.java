@@ -0,0 +1,336 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
+
+// *********************************************************************************
+// An index over one log file, for browsing logs on the device.
+//
+// The file is memory-mapped rather than read onto the heap. Building the index makes
+// one pass over it and records, for each line, where it starts plus its level, logger
+// and time, parsed from the FileLogEncoder format:
+//
+//     dd:MM:yy HH:mm:ss.SSS [thread] LEVEL logger - message
+//
+// Lines that don't start with a timestamp (stack traces and other continuation lines)
+// take the level, logger and time of the line they belong to. Filtering then only
+// looks at the index, and the text of a line is only decoded when it's shown.
+//
+// Rolled .log.gz segments can't be mapped, so they are expanded into the cache
+// directory first. Building is slow-ish I/O; do it on a background thread. Once
+// built, an index is immutable and may be used from any thread.
+// *********************************************************************************
+final class LogIndex {
+
+    static final byte LEVEL_UNKNOWN = 0;
+    static final byte LEVEL_TRACE = 1;
+    static final byte LEVEL_DEBUG = 2;
+    static final byte LEVEL_INFO = 3;
+    static final byte LEVEL_WARN = 4;
+    static final byte LEVEL_ERROR = 5;
+
+    private static final int TIMESTAMP_LENGTH = "dd:MM:yy HH:mm:ss.SSS".length();
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    // *********************************************************************************
+    // What to show. Lines must match all of the conditions that are set
+    // *********************************************************************************
+    static final class Filter {
+        final byte MinLevel;
+        @Nullable final String LoggerPackage; // e.g. "com.gallagher.security"; see matchesPackage
+        final long FromMillis;
+        final long ToMillis;
+
+        Filter(byte minLevel, @Nullable String loggerPackage, long fromMillis, long toMillis) {
+            MinLevel = minLevel;
+            LoggerPackage = loggerPackage;
+            FromMillis = fromMillis;
+            ToMillis = toMillis;
+        }
+    }
+
+    @NonNull private final MappedByteBuffer mBuffer;
+    private final int mSize;
+    private final int mLineCount;
+    @NonNull private final int[] mLineStarts;
+    @NonNull private final byte[] mLevels;
+    @NonNull private final int[] mLoggers; // index into mLoggerNames, or -1
+    @NonNull private final long[] mTimes; // 0 if unknown
+    @NonNull private final String[] mLoggerNames;
+
+    private LogIndex(@NonNull MappedByteBuffer buffer, int size, int lineCount, @NonNull int[] lineStarts, @NonNull byte[] levels,
+                     @NonNull int[] loggers, @NonNull long[] times, @NonNull String[] loggerNames) {
+        mBuffer = buffer;
+        mSize = size;
+        mLineCount = lineCount;
+        mLineStarts = lineStarts;
+        mLevels = levels;
+        mLoggers = loggers;
+        mTimes = times;
+        mLoggerNames = loggerNames;
+    }
+
+    // *********************************************************************************
+    // Maps and indexes the file. cacheDir is where compressed segments are expanded to
+    // *********************************************************************************
+    @NonNull
+    static LogIndex build(@NonNull File file, @NonNull File cacheDir) throws IOException {
+        if (file.getName().endsWith(".gz")) {
+            file = expand(file, cacheDir);
+        }
+
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+            // the mapping stays valid after the channel is closed
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int size = buffer.limit();
+
+        int capacity = Math.max(16, size / 100); // about the average line length
+        int[] lineStarts = new int[capacity];
+        byte[] levels = new byte[capacity];
+        int[] loggers = new int[capacity];
+        long[] times = new long[capacity];
+        HashMap<String, Integer> loggerIds = new HashMap<>();
+        ArrayList<String> loggerNames = new ArrayList<>();
+        Calendar calendar = Calendar.getInstance();
+
+        byte level = LEVEL_UNKNOWN;
+        int logger = -1;
+        long time = 0;
+        int lineCount = 0;
+        int start = 0;
+        while (start < size) {
+            int end = start;
+            while (end < size && buffer.get(end) != '\n') {
+                end++;
+            }
+
+            if (lineCount == lineStarts.length) {
+                int newCapacity = lineCount * 2;
+                lineStarts = Arrays.copyOf(lineStarts, newCapacity);
+                levels = Arrays.copyOf(levels, newCapacity);
+                loggers = Arrays.copyOf(loggers, newCapacity);
+                times = Arrays.copyOf(times, newCapacity);
+            }
+
+            long lineTime = parseTime(buffer, start, end, calendar);
+            if (lineTime != 0) {
+                // a new entry; otherwise this continues the previous one
+                time = lineTime;
+                level = LEVEL_UNKNOWN;
+                logger = -1;
+
+                int threadEnd = indexOf(buffer, start + TIMESTAMP_LENGTH, end, (byte) ']');
+                int levelStart = threadEnd + 2;
+                if (threadEnd >= 0 && levelStart + 5 <= end) {
+                    level = parseLevel(buffer, levelStart);
+                    int loggerStart = levelStart + 6;
+                    int loggerEnd = indexOf(buffer, loggerStart, end, (byte) ' ');
+                    if (loggerEnd > loggerStart) {
+                        String name = decode(buffer, loggerStart, loggerEnd);
+                        Integer id = loggerIds.get(name);
+                        if (id == null) {
+                            id = loggerNames.size();
+                            loggerIds.put(name, id);
+                            loggerNames.add(name);
+                        }
+                        logger = id;
+                    }
+                }
+            }
+
+            lineStarts[lineCount] = start;
+            levels[lineCount] = level;
+            loggers[lineCount] = logger;
+            times[lineCount] = time;
+            lineCount++;
+            start = end + 1;
+        }
+
+        return new LogIndex(buffer, size, lineCount, lineStarts, levels, loggers, times, loggerNames.toArray(new String[0]));
+    }
+
+    int getLineCount() {
+        return mLineCount;
+    }
+
+    byte getLevel(int line) {
+        return mLevels[line];
+    }
+
+    // The lines that pass the filter, in file order
+    @NonNull
+    int[] filter(@NonNull Filter filter) {
+        // work out which loggers match once, rather than for every line
+        boolean[] loggerMatches = new boolean[mLoggerNames.length];
+        for (int i = 0; i < mLoggerNames.length; i++) {
+            loggerMatches[i] = filter.LoggerPackage == null || matchesPackage(mLoggerNames[i], filter.LoggerPackage);
+        }
+
+        int[] result = new int[mLineCount];
+        int count = 0;
+        for (int line = 0; line < mLineCount; line++) {
+            if (mLevels[line] < filter.MinLevel) {
+                continue;
+            }
+            if (filter.LoggerPackage != null && (mLoggers[line] < 0 || !loggerMatches[mLoggers[line]])) {
+                continue;
+            }
+            long time = mTimes[line];
+            if (time != 0 && (time < filter.FromMillis || time > filter.ToMillis)) {
+                continue;
+            }
+            result[count++] = line;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    // Decodes just this one line from the mapped file
+    @NonNull
+    String getLine(int line) {
+        int start = mLineStarts[line];
+        int end = line + 1 < mLineCount ? mLineStarts[line + 1] - 1 : mSize;
+        if (end > start && mBuffer.get(end - 1) == '\r') {
+            end--;
+        }
+        return decode(mBuffer, start, end);
+    }
+
+    // *********************************************************************************
+    // %logger{36} shortens the leading parts of a logger name to their first letter,
+    // so "com.gallagher.security.mobileaccess.Foo" can appear as "c.g.s.m.Foo" or
+    // "c.gallagher.security.mobileaccess.Foo". This accepts any of those for the package
+    // *********************************************************************************
+    static boolean matchesPackage(@NonNull String abbreviatedLogger, @NonNull String loggerPackage) {
+        String[] loggerParts = abbreviatedLogger.split("\\.");
+        String[] packageParts = loggerPackage.split("\\.");
+        if (loggerParts.length <= packageParts.length) {
+            return false;
+        }
+        for (int i = 0; i < packageParts.length; i++) {
+            String part = loggerParts[i];
+            boolean matches = part.equals(packageParts[i]) || (part.length() == 1 && packageParts[i].startsWith(part));
+            if (!matches) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // *********************************************************************************
+    // Helpers
+    // *********************************************************************************
+
+    // The line's timestamp in millis, or 0 if it doesn't start with one
+    private static long parseTime(@NonNull MappedByteBuffer buffer, int start, int end, @NonNull Calendar calendar) {
+        if (end - start < TIMESTAMP_LENGTH
+                || buffer.get(start + 2) != ':' || buffer.get(start + 5) != ':' || buffer.get(start + 8) != ' '
+                || buffer.get(start + 11) != ':' || buffer.get(start + 14) != ':' || buffer.get(start + 17) != '.') {
+            return 0;
+        }
+        int day = digits(buffer, start, 2);
+        int month = digits(buffer, start + 3, 2);
+        int year = digits(buffer, start + 6, 2);
+        int hour = digits(buffer, start + 9, 2);
+        int minute = digits(buffer, start + 12, 2);
+        int second = digits(buffer, start + 15, 2);
+        int millis = digits(buffer, start + 18, 3);
+        if (day < 0 || month < 0 || year < 0 || hour < 0 || minute < 0 || second < 0 || millis < 0) {
+            return 0;
+        }
+        calendar.clear();
+        calendar.set(2000 + year, month - 1, day, hour, minute, second);
+        calendar.set(Calendar.MILLISECOND, millis);
+        return calendar.getTimeInMillis();
+    }
+
+    // -1 if they aren't all digits
+    private static int digits(@NonNull MappedByteBuffer buffer, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static byte parseLevel(@NonNull MappedByteBuffer buffer, int start) {
+        switch (buffer.get(start)) {
+            case 'T': return LEVEL_TRACE;
+            case 'D': return LEVEL_DEBUG;
+            case 'I': return LEVEL_INFO;
+            case 'W': return LEVEL_WARN;
+            case 'E': return LEVEL_ERROR;
+            default: return LEVEL_UNKNOWN;
+        }
+    }
+
+    private static int indexOf(@NonNull MappedByteBuffer buffer, int start, int end, byte b) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @NonNull
+    private static String decode(@NonNull MappedByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Expands a .log.gz segment into cacheDir, unless it's already been expanded
+    @NonNull
+    private static File expand(@NonNull File gzip, @NonNull File cacheDir) throws IOException {
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            throw new IOException("Failed to create " + cacheDir);
+        }
+        String name = gzip.getName();
+        File expanded = new File(cacheDir, name.substring(0, name.length() - ".gz".length()));
+        // segments never change once they're compressed, so a newer copy is good enough
+        if (expanded.exists() && expanded.lastModified() >= gzip.lastModified()) {
+            return expanded;
+        }
+
+        File temp = new File(cacheDir, expanded.getName() + ".tmp");
+        try (InputStream in = new GZIPInputStream(new FileInputStream(gzip), COPY_BUFFER_SIZE);
+             OutputStream out = new FileOutputStream(temp)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        if (!temp.renameTo(expanded)) {
+            throw new IOException("Failed to rename " + temp + " to " + expanded);
+        }
+        return expanded;
+    }
+}
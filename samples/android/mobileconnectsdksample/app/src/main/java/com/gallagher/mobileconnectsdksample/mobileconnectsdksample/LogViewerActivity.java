@@ -0,0 +1,267 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import android.graphics.Color;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.CheckBox;
+import android.widget.Spinner;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// *********************************************************************************
+// Lets support staff look through the log files on the device, rather than asking
+// the user to send them.
+//
+// Each file is indexed by LogIndex on a background thread the first time it's picked;
+// after that, changing the filters only scans the index. Only the rows on screen are
+// ever decoded from the file.
+// *********************************************************************************
+public class LogViewerActivity extends AppCompatActivity {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LogViewerActivity.class);
+
+    private static final String[] LEVEL_NAMES = { "All levels", "DEBUG and up", "INFO and up", "WARN and up", "ERROR only" };
+    private static final byte[] LEVELS = { LogIndex.LEVEL_UNKNOWN, LogIndex.LEVEL_DEBUG, LogIndex.LEVEL_INFO, LogIndex.LEVEL_WARN, LogIndex.LEVEL_ERROR };
+
+    private static final String[] TIME_RANGE_NAMES = { "Any time", "Last 15 minutes", "Last hour", "Last 24 hours" };
+    private static final long[] TIME_RANGES = { 0, TimeUnit.MINUTES.toMillis(15), TimeUnit.HOURS.toMillis(1), TimeUnit.DAYS.toMillis(1) };
+
+    private static final String SDK_LOGGER_PACKAGE = "com.gallagher.security";
+    private static final String CACHE_DIRECTORY = "logview"; // expanded .gz segments
+
+    @NonNull private final ExecutorService mWorker = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "LogViewer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    @NonNull private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // only touched on the worker thread
+    @NonNull private final HashMap<File, LogIndex> mIndexes = new HashMap<>();
+    @NonNull private final HashMap<File, Long> mIndexedLengths = new HashMap<>(); // the active file keeps growing
+
+    // main thread
+    @NonNull private File[] mFiles = new File[0];
+    private int mGeneration = 0; // so results from a query that's been superseded are ignored
+    @Nullable private LogIndex mIndex;
+    @NonNull private int[] mLines = new int[0];
+
+    private Spinner mFileSpinner;
+    private Spinner mLevelSpinner;
+    private Spinner mTimeRangeSpinner;
+    private CheckBox mSdkOnlyCheckBox;
+    private TextView mStatusView;
+    private LineAdapter mAdapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_log_viewer);
+        setTitle("Logs");
+
+        mFileSpinner = findViewById(R.id.log_file);
+        mLevelSpinner = findViewById(R.id.log_level);
+        mTimeRangeSpinner = findViewById(R.id.log_time_range);
+        mSdkOnlyCheckBox = findViewById(R.id.log_sdk_only);
+        mStatusView = findViewById(R.id.log_status);
+
+        // newest first; the active log file is the one most people want
+        File logDir = Application.getLogFilesDir(this);
+        File[] files = logDir != null ? logDir.listFiles((dir, name) -> name.endsWith(".log") || name.endsWith(".log.gz")) : null;
+        if (files != null) {
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+            mFiles = files;
+        }
+        String[] fileNames = new String[mFiles.length];
+        for (int i = 0; i < mFiles.length; i++) {
+            fileNames[i] = String.format(Locale.US, "%s (%d KB)", mFiles[i].getName(), mFiles[i].length() / 1024);
+        }
+
+        mFileSpinner.setAdapter(spinnerAdapter(fileNames));
+        mLevelSpinner.setAdapter(spinnerAdapter(LEVEL_NAMES));
+        mTimeRangeSpinner.setAdapter(spinnerAdapter(TIME_RANGE_NAMES));
+
+        AdapterView.OnItemSelectedListener onChanged = new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                query();
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) { }
+        };
+        mFileSpinner.setOnItemSelectedListener(onChanged);
+        mLevelSpinner.setOnItemSelectedListener(onChanged);
+        mTimeRangeSpinner.setOnItemSelectedListener(onChanged);
+        mSdkOnlyCheckBox.setOnCheckedChangeListener((button, checked) -> query());
+
+        RecyclerView recyclerView = findViewById(R.id.log_lines);
+        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        mAdapter = new LineAdapter();
+        recyclerView.setAdapter(mAdapter);
+
+        if (mFiles.length == 0) {
+            mStatusView.setText("No log files");
+        } else {
+            // make sure the active file has everything logged so far before we index it
+            mWorker.execute(Application::flushLogFiles);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mWorker.shutdownNow();
+        // the expanded copies of compressed segments can be big; don't leave them lying around
+        File[] expanded = new File(getCacheDir(), CACHE_DIRECTORY).listFiles();
+        if (expanded != null) {
+            for (File file : expanded) {
+                if (!file.delete()) {
+                    LOG.warn("Failed to delete {}", file);
+                }
+            }
+        }
+    }
+
+    private void query() {
+        int position = mFileSpinner.getSelectedItemPosition();
+        if (position < 0 || position >= mFiles.length) {
+            return;
+        }
+        File file = mFiles[position];
+        long range = TIME_RANGES[mTimeRangeSpinner.getSelectedItemPosition()];
+        long now = System.currentTimeMillis();
+        LogIndex.Filter filter = new LogIndex.Filter(
+                LEVELS[mLevelSpinner.getSelectedItemPosition()],
+                mSdkOnlyCheckBox.isChecked() ? SDK_LOGGER_PACKAGE : null,
+                range > 0 ? now - range : Long.MIN_VALUE,
+                Long.MAX_VALUE);
+
+        int generation = ++mGeneration;
+        mStatusView.setText("Loading...");
+        File cacheDir = new File(getCacheDir(), CACHE_DIRECTORY);
+
+        mWorker.execute(() -> {
+            long start = System.currentTimeMillis();
+            LogIndex index = mIndexes.get(file);
+            Long indexedLength = mIndexedLengths.get(file);
+            try {
+                if (index == null || indexedLength == null || indexedLength != file.length()) {
+                    long length = file.length();
+                    index = LogIndex.build(file, cacheDir);
+                    mIndexes.put(file, index);
+                    mIndexedLengths.put(file, length);
+                }
+            } catch (IOException e) {
+                LOG.error("Failed to index {}", file, e);
+                mMainHandler.post(() -> {
+                    if (generation == mGeneration) {
+                        mStatusView.setText("Failed to read " + file.getName() + ": " + e.getMessage());
+                        show(null, new int[0]);
+                    }
+                });
+                return;
+            }
+            int[] lines = index.filter(filter);
+            long elapsed = System.currentTimeMillis() - start;
+
+            LogIndex result = index;
+            mMainHandler.post(() -> {
+                if (generation != mGeneration) {
+                    return;
+                }
+                mStatusView.setText(String.format(Locale.US, "%d of %d lines (%dms)", lines.length, result.getLineCount(), elapsed));
+                show(result, lines);
+            });
+        });
+    }
+
+    private void show(@Nullable LogIndex index, @NonNull int[] lines) {
+        mIndex = index;
+        mLines = lines;
+        mAdapter.notifyDataSetChanged();
+    }
+
+    @NonNull
+    private ArrayAdapter<String> spinnerAdapter(@NonNull String[] items) {
+        ArrayAdapter<String> adapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, items);
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        return adapter;
+    }
+
+    class LineAdapter extends RecyclerView.Adapter<LineAdapter.ViewHolder> {
+
+        class ViewHolder extends RecyclerView.ViewHolder {
+            final TextView mContentView;
+
+            ViewHolder(View view) {
+                super(view);
+                mContentView = view.findViewById(R.id.content);
+            }
+        }
+
+        @NonNull
+        @Override
+        public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.row_log_line, parent, false);
+            return new ViewHolder(view);
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+            LogIndex index = mIndex;
+            if (index == null) {
+                return;
+            }
+            int line = mLines[position];
+            holder.mContentView.setText(index.getLine(line));
+            switch (index.getLevel(line)) {
+                case LogIndex.LEVEL_ERROR:
+                    holder.mContentView.setTextColor(Color.RED);
+                    break;
+                case LogIndex.LEVEL_WARN:
+                    holder.mContentView.setTextColor(0xFFFF8F00); // amber
+                    break;
+                case LogIndex.LEVEL_TRACE:
+                case LogIndex.LEVEL_DEBUG:
+                    holder.mContentView.setTextColor(Color.GRAY);
+                    break;
+                default:
+                    holder.mContentView.setTextColor(Color.BLACK);
+                    break;
+            }
+        }
+
+        @Override
+        public int getItemCount() {
+            return mLines.length;
+        }
+    }
+}
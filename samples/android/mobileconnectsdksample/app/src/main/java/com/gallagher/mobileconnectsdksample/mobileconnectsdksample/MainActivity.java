@@ -9,8 +9,11 @@ import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.ActionBarDrawerToggle;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
@@ -20,74 +23,159 @@ import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentPagerAdapter;
 import androidx.viewpager.widget.ViewPager;
 
-import com.gallagher.security.mobileaccess.MobileAccess;
-import com.gallagher.security.mobileaccess.MobileAccessProvider;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
 
 public class MainActivity extends AppCompatActivity {
 
     Logger LOG = LoggerFactory.getLogger(MainActivity.class);
 
-    @NonNull
-    private final MobileAccess mMobileAccess = MobileAccessProvider.getInstance();
+    // A page of the pager and its bottom navigation item
+    private static final class Tab {
+        final String Title;
+        final int ActionId;
+        final Supplier<Fragment> Factory;
 
-    @NonNull
-    private final TabFragment[] mTabs = {
-            new CredentialsFragment(),
-            new ReadersFragment(),
-            new SaltoFragment(),
-            new DigitalIdFragment()
+        Tab(String title, int actionId, Supplier<Fragment> factory) {
+            Title = title;
+            ActionId = actionId;
+            Factory = factory;
+        }
+    }
+
+    // Each tab's fragment is only created when the pager first needs it
+    private static final Tab[] TABS = {
+            new Tab("Credentials", R.id.action_credentials, CredentialsFragment::new),
+            new Tab("Readers", R.id.action_readers, ReadersFragment::new),
+            new Tab("Salto Access", R.id.action_salto_keys, SaltoFragment::new),
+            new Tab("Digital IDs", R.id.action_digital_ids, DigitalIdFragment::new)
     };
 
     FragmentPagerAdapter mFragmentPagerAdapter;
 
     private ActionBarDrawerToggle mToggle;
 
+    // *********************************************************************************
+    // Zips the log files up in the background, then hands the zip to an email app.
+    // See LogExporter for what goes in it
+    // *********************************************************************************
     private void emailLogFiles() {
-        ArrayList<Uri> uris = new ArrayList<>();
-        File logDir;
-        try {
-            logDir = Application.getLogFilesDir(this);
-            if (logDir == null) {
-                LOG.error("Can't email log files; Application.getLogFileDir returned null");
-                return;
+        AlertDialog progressDialog = new AlertDialog.Builder(this)
+                .setTitle("Send Logs")
+                .setMessage("Preparing log files...")
+                .setCancelable(false)
+                .show();
+
+        LogExporter.getInstance().export(this, new LogExporter.Listener() {
+            @Override
+            public void onExportProgress(int percent) {
+                progressDialog.setMessage(String.format(Locale.US, "Preparing log files... %d%%", percent));
             }
-            File[] files = logDir.listFiles();
-            if (files != null) {
-                for (File log : files) {
-                    Uri fileUri = FileProvider.getUriForFile(this, "com.gallagher.mobileconnectsdksample.FileProvider", log);
-                    boolean success = uris.add(fileUri);
-                    LOG.info("log file: '{}', added: '{}'", log.getName(), success);
+
+            @Override
+            public void onExportCompleted(@Nullable File zip, @Nullable Exception error) {
+                if (isDestroyed()) {
+                    return;
+                }
+                progressDialog.dismiss();
+                if (zip == null) {
+                    if (error != null) {
+                        Toast.makeText(MainActivity.this, "Failed to prepare log files: " + error.getMessage(), Toast.LENGTH_LONG).show();
+                    }
+                    return;
+                }
+
+                Uri uri;
+                try {
+                    uri = FileProvider.getUriForFile(MainActivity.this, "com.gallagher.mobileconnectsdksample.FileProvider", zip);
+                } catch (Exception e) {
+                    LOG.error("Failed to get log files due to: ", e);
+                    return;
+                }
+                LOG.info("log export: '{}', {} bytes", zip.getName(), zip.length());
+
+                Intent email = new Intent(Intent.ACTION_SEND);
+                email.setType("message/rfc822");
+                email.putExtra(Intent.EXTRA_SUBJECT, "Gallagher Sample App Logs");
+                email.putExtra(Intent.EXTRA_STREAM, uri);
+                email.setFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+
+                if (email.resolveActivity(getApplicationContext().getPackageManager()) != null) {
+                    startActivity(email);
+                } else {
+                    LOG.debug("Email is not available on this device");
                 }
             }
-        } catch (Exception e) {
-            LOG.error("Failed to get log files due to: ", e);
-            return;
+        });
+    }
+
+    private void saveFlightRecording() {
+        FlightRecorder.getInstance().save("requested by user", file -> {
+            String message = file != null ? "Saved " + file.getName() + "; use Send Logs to send it" : "Failed to save the flight recording";
+            Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+        });
+    }
+
+    private void showStartupTrace() {
+        List<StartupTrace.Section> sections = StartupTrace.read(this);
+
+        StringBuilder message = new StringBuilder();
+        if (sections.isEmpty()) {
+            message.append("No startup trace recorded yet");
         }
+        for (StartupTrace.Section section : sections) {
+            message.append(String.format(Locale.US, "%s%s: %.1fms (at %.1fms)\n",
+                    StartupTrace.repeat("    ", section.Depth), section.Name,
+                    section.DurationMicros / 1000.0, section.StartMicros / 1000.0));
+        }
+
+        new AlertDialog.Builder(this)
+                .setTitle("Startup Trace")
+                .setMessage(message.toString().trim())
+                .setPositiveButton("Close", null)
+                .show();
+    }
 
-        Intent email = new Intent(Intent.ACTION_SEND_MULTIPLE);
-        email.setType("message/rfc822");
-        email.putExtra(Intent.EXTRA_SUBJECT, "Gallagher Sample App Logs");
-        email.putParcelableArrayListExtra(Intent.EXTRA_STREAM, uris);
-        email.setFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+    private void showAccessLatency() {
+        AccessLatencyStats stats = AccessLatencyStats.getInstance();
+        List<AccessLatencyStats.Summary> summaries = stats.getSummaries();
 
-        if (email.resolveActivity(getApplicationContext().getPackageManager()) != null) {
-            startActivity(email);
-        } else {
-            LOG.debug("Email is not available on this device");
+        StringBuilder message = new StringBuilder();
+        if (summaries.isEmpty()) {
+            message.append("No access attempts recorded yet");
+        }
+        for (AccessLatencyStats.Summary s : summaries) {
+            String name = s.ReaderName != null ? s.ReaderName : s.ReaderId;
+            message.append(String.format(Locale.US, "%s\n%s %s x%d\np50 %dms, p95 %dms, p99 %dms, max %dms\n\n",
+                    name, s.Transport, s.Outcome, s.Count, s.P50, s.P95, s.P99, s.Max));
         }
+
+        new AlertDialog.Builder(this)
+                .setTitle("Access Latency")
+                .setMessage(message.toString().trim())
+                .setPositiveButton("Share", (dlg, which) -> {
+                    Intent share = new Intent(Intent.ACTION_SEND);
+                    share.setType("text/plain");
+                    share.putExtra(Intent.EXTRA_SUBJECT, "Gallagher Sample App Access Latency");
+                    share.putExtra(Intent.EXTRA_TEXT, stats.exportCsv());
+                    startActivity(Intent.createChooser(share, "Share access latency"));
+                })
+                .setNegativeButton("Close", null)
+                .show();
     }
 
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        StartupTrace.begin("MainActivity.onCreate");
         setContentView(R.layout.activity_main);
 
         setTitle("Credentials"); // we start on the credentials page
@@ -109,36 +197,55 @@ public class MainActivity extends AppCompatActivity {
                 emailLogFiles();
                 return true;
             }
+            if (item.getItemId() == R.id.view_logs) {
+                startActivity(new Intent(this, LogViewerActivity.class));
+                return true;
+            }
+            if (item.getItemId() == R.id.access_latency) {
+                showAccessLatency();
+                return true;
+            }
+            if (item.getItemId() == R.id.startup_trace) {
+                showStartupTrace();
+                return true;
+            }
+            if (item.getItemId() == R.id.save_flight_recording) {
+                saveFlightRecording();
+                return true;
+            }
             return true;
 
         });
 
 
-        mFragmentPagerAdapter = new FragmentPagerAdapter(getSupportFragmentManager()) {
+        // Only the page on screen is resumed; the others stop at started. The tabs listen to the SDK
+        // while they're resumed, so the ones the user can't see don't keep their lists up to date
+        mFragmentPagerAdapter = new FragmentPagerAdapter(getSupportFragmentManager(), FragmentPagerAdapter.BEHAVIOR_RESUME_ONLY_CURRENT_FRAGMENT) {
             @Override
             public int getCount() {
-                return mTabs.length;
+                return TABS.length;
             }
 
+            @NonNull
             @Override
             public Fragment getItem(int position) {
-                return (Fragment)mTabs[position];
+                return TABS[position].Factory.get();
             }
         };
         viewPager.setAdapter(mFragmentPagerAdapter);
         viewPager.addOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener() {
             @Override
             public void onPageSelected(int position) {
-                TabFragment tab = mTabs[position];
-                setTitle(tab.getTitle());
-                navigationView.setSelectedItemId(tab.getActionId());
+                Tab tab = TABS[position];
+                setTitle(tab.Title);
+                navigationView.setSelectedItemId(tab.ActionId);
             }
         });
 
         navigationView.setOnNavigationItemSelectedListener(item -> {
             int pageIndex = -1;
-            for (int i = 0; i < mTabs.length; i++) {
-                if (mTabs[i].getActionId() == item.getItemId()) {
+            for (int i = 0; i < TABS.length; i++) {
+                if (TABS[i].ActionId == item.getItemId()) {
                     pageIndex = i;
                     break;
                 }
@@ -152,6 +259,10 @@ public class MainActivity extends AppCompatActivity {
             viewPager.invalidate();
             return true;
         });
+
+        StartupTrace.end();
+        // this runs once the first frame has been laid out, which is where startup ends as far as the user is concerned
+        getWindow().getDecorView().post(() -> StartupTrace.finish(this));
     }
 
     @Override
@@ -163,7 +274,8 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onResume() {
         super.onResume();
-        mMobileAccess.syncCredentialItemUpdates();
+        // the tab that resumes along with us asks too; CredentialSync makes that one sync
+        CredentialSync.getInstance().request(null);
     }
 
     @Override
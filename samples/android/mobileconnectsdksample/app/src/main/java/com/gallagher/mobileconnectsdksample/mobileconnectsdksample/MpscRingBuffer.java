@@ -0,0 +1,89 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// *********************************************************************************
+// A bounded, lock-free queue for many producer threads and a single consumer thread.
+//
+// Each slot carries a sequence number saying whose turn it is: a producer claims the
+// next position with a CAS, fills the slot, then publishes it by bumping the sequence.
+// offer() never blocks; it returns false if the queue is full and the caller decides
+// what to do about it.
+// *********************************************************************************
+final class MpscRingBuffer<E> {
+
+    private final int mMask;
+    @NonNull private final AtomicReferenceArray<E> mElements;
+    @NonNull private final AtomicLongArray mSequences;
+
+    @NonNull private final AtomicLong mTail = new AtomicLong(); // next position to claim
+    private volatile long mHead = 0; // next position to consume; only written by the consumer
+
+    // capacity is rounded up to a power of two
+    MpscRingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity out of range: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        if (size == 0) {
+            size = 1;
+        }
+        mMask = size - 1;
+        mElements = new AtomicReferenceArray<>(size);
+        mSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            mSequences.set(i, i);
+        }
+    }
+
+    int capacity() {
+        return mMask + 1;
+    }
+
+    // an estimate while other threads are offering
+    int size() {
+        long size = mTail.get() - mHead;
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    // Any thread. Returns false if the queue is full
+    boolean offer(@NonNull E element) {
+        while (true) {
+            long position = mTail.get();
+            int index = (int) (position & mMask);
+            long sequence = mSequences.get(index);
+            if (sequence == position) {
+                if (mTail.compareAndSet(position, position + 1)) {
+                    mElements.lazySet(index, element);
+                    mSequences.set(index, position + 1); // publish
+                    return true;
+                }
+            } else if (sequence < position) {
+                return false; // the consumer hasn't freed this slot yet
+            }
+            // otherwise another producer claimed it first; try the next position
+        }
+    }
+
+    // Consumer thread only. Returns null if the queue is empty (or the next element is still being written)
+    @Nullable
+    E poll() {
+        int index = (int) (mHead & mMask);
+        if (mSequences.get(index) != mHead + 1) {
+            return null;
+        }
+        E element = mElements.get(index);
+        mElements.lazySet(index, null);
+        mSequences.set(index, mHead + mMask + 1); // free the slot for the producer one lap ahead
+        mHead++;
+        return element;
+    }
+}
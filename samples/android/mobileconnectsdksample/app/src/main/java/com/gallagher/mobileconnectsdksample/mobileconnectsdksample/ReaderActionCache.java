@@ -0,0 +1,173 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.gallagher.security.mobileaccess.Reader;
+import com.gallagher.security.mobileaccess.ReaderAction;
+import com.gallagher.security.mobileaccess.ReaderAttributes;
+import com.gallagher.security.mobileaccess.ReaderConnectionError;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// *********************************************************************************
+// Remembers the result of MobileAccess.enumerateReaderActions for each reader, so that
+// showing a reader's actions doesn't need a bluetooth connection every time.
+//
+// Entries expire after a TTL, and are dropped early if something about the reader that
+// could affect its actions changes. Concurrent requests for the same reader share one
+// enumeration. Errors are never cached; the next request simply tries again.
+//
+// All methods must be called on the SdkEventLoop, and listeners are called there too.
+// *********************************************************************************
+class ReaderActionCache {
+
+    interface Listener {
+        // exactly one of actions and error is non-null
+        void onReaderActionsLoaded(@NonNull Reader reader, @Nullable List<ReaderAction> actions, @Nullable ReaderConnectionError error);
+    }
+
+    static final long DEFAULT_TTL_MILLIS = 5 * 60 * 1000;
+
+    private static final int MAX_ENTRIES = 64;
+
+    private static final class Entry {
+        final List<ReaderAction> Actions;
+        final long FetchedAt;
+        final String Fingerprint; // see fingerprintOf
+
+        Entry(List<ReaderAction> actions, long fetchedAt, String fingerprint) {
+            Actions = actions;
+            FetchedAt = fetchedAt;
+            Fingerprint = fingerprint;
+        }
+    }
+
+    private static final class Enumeration {
+        final ArrayList<Listener> Waiters = new ArrayList<>();
+        final String Fingerprint;
+        boolean Invalidated = false; // deliver the result to the waiters, but don't cache it
+
+        Enumeration(String fingerprint) {
+            Fingerprint = fingerprint;
+        }
+    }
+
+    @NonNull private final SdkStartup mSdk;
+    @NonNull private final SdkEventLoop mEventLoop = SdkEventLoop.getInstance();
+    private final long mTtlMillis;
+
+    // access-ordered, so the least recently used entry goes first when we're over MAX_ENTRIES
+    @NonNull private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    @NonNull private final HashMap<String, Enumeration> mInFlight = new HashMap<>();
+
+    ReaderActionCache(@NonNull SdkStartup sdk, long ttlMillis) {
+        mSdk = sdk;
+        mTtlMillis = ttlMillis;
+    }
+
+    // The cached actions, or null if we don't have any that are still fresh
+    @Nullable
+    List<ReaderAction> get(@NonNull String readerId) {
+        Entry entry = mEntries.get(readerId);
+        if (entry == null) {
+            return null;
+        }
+        if (SystemClock.elapsedRealtime() - entry.FetchedAt >= mTtlMillis) {
+            mEntries.remove(readerId);
+            return null;
+        }
+        return entry.Actions;
+    }
+
+    // Starts enumerating in the background unless we already have fresh actions or an enumeration is running
+    void prefetch(@NonNull ReaderAttributes reader) {
+        if (get(reader.getId()) == null && !mInFlight.containsKey(reader.getId())) {
+            enumerate(reader, fingerprintOf(reader));
+        }
+    }
+
+    // Calls the listener straight away if the actions are cached, otherwise once they've been enumerated
+    void load(@NonNull ReaderAttributes reader, @NonNull Listener listener) {
+        List<ReaderAction> actions = get(reader.getId());
+        if (actions != null) {
+            listener.onReaderActionsLoaded(reader, actions, null);
+            return;
+        }
+
+        Enumeration enumeration = mInFlight.get(reader.getId());
+        if (enumeration == null) {
+            enumeration = enumerate(reader, fingerprintOf(reader));
+        }
+        enumeration.Waiters.add(listener);
+    }
+
+    // *********************************************************************************
+    // Call for every ATTRIBUTES_CHANGED. Signal strength changes all the time and doesn't
+    // affect the actions, so only the attributes in fingerprintOf invalidate the entry
+    // *********************************************************************************
+    void onAttributesChanged(@NonNull ReaderAttributes reader) {
+        String fingerprint = fingerprintOf(reader);
+
+        Entry entry = mEntries.get(reader.getId());
+        if (entry != null && !entry.Fingerprint.equals(fingerprint)) {
+            mEntries.remove(reader.getId());
+        }
+        Enumeration enumeration = mInFlight.get(reader.getId());
+        if (enumeration != null && !enumeration.Fingerprint.equals(fingerprint)) {
+            enumeration.Invalidated = true;
+        }
+    }
+
+    void invalidate(@NonNull String readerId) {
+        mEntries.remove(readerId);
+        Enumeration enumeration = mInFlight.get(readerId);
+        if (enumeration != null) {
+            enumeration.Invalidated = true;
+        }
+    }
+
+    @NonNull
+    private Enumeration enumerate(@NonNull ReaderAttributes reader, @NonNull String fingerprint) {
+        String readerId = reader.getId();
+        Enumeration enumeration = new Enumeration(fingerprint);
+        mInFlight.put(readerId, enumeration);
+
+        mSdk.execute(mobileAccess -> mobileAccess.enumerateReaderActions(reader, (r, actions, error) -> mEventLoop.run(() -> {
+            mInFlight.remove(readerId);
+
+            List<ReaderAction> result = null;
+            if (error == null) {
+                result = actions != null ? Collections.unmodifiableList(new ArrayList<>(actions)) : Collections.emptyList();
+                if (!enumeration.Invalidated) {
+                    mEntries.put(readerId, new Entry(result, SystemClock.elapsedRealtime(), enumeration.Fingerprint));
+                }
+            }
+            for (Listener waiter : enumeration.Waiters) {
+                waiter.onReaderActionsLoaded(reader, result, error);
+            }
+        })));
+        return enumeration;
+    }
+
+    // The attributes that could change which actions a reader offers
+    @NonNull
+    private static String fingerprintOf(@NonNull ReaderAttributes reader) {
+        return reader.getName() + '|' + reader.isBleActionsEnabled() + '|' + reader.isSecondFactorRequired();
+    }
+}
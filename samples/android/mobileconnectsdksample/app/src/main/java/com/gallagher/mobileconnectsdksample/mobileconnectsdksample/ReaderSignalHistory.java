@@ -0,0 +1,169 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+
+import com.gallagher.security.mobileaccess.ReaderAttributes;
+import com.gallagher.security.mobileaccess.ReaderDistance;
+
+import java.util.HashMap;
+
+// *********************************************************************************
+// Recent path loss samples for each reader, plus smoothed estimates built from them.
+//
+// ReaderAttributes only gives us the instantaneous path loss, which jumps around by
+// several dB between advertisements, so the NEAR/MEDIUM/FAR distance flickers.
+// We run both an EMA and a simple 1D Kalman filter over the samples and feed the
+// Kalman estimate into ReaderDistance.calculate instead.
+//
+// All storage is allocated up front as flat primitive arrays: each reader gets a slot
+// with a fixed-size ring of samples, so recording a sample never allocates or boxes.
+// There's a hard cap on the number of slots; when it's full the least recently updated
+// reader is evicted. Not thread-safe; owned by the SdkEventLoop.
+// *********************************************************************************
+class ReaderSignalHistory {
+
+    static final int MAX_READERS = 256;
+    static final int SAMPLES_PER_READER = 32;
+
+    // EMA weight given to each new sample
+    private static final double EMA_ALPHA = 0.25;
+
+    // Kalman tuning: how much we expect the true path loss to drift per second as the phone moves (dB^2/s),
+    // and how noisy a single measurement is (dB^2)
+    private static final double KALMAN_PROCESS_NOISE_PER_SECOND = 4.0;
+    private static final double KALMAN_MEASUREMENT_NOISE = 36.0;
+
+    // ReaderAttributes doesn't expose a transmit power; 0 leaves calculate()'s manual-connect clamp at its default
+    private static final double TX_POWER = 0;
+
+    // ring buffers, SAMPLES_PER_READER entries per slot
+    @NonNull private final double[] mPathLoss = new double[MAX_READERS * SAMPLES_PER_READER];
+    @NonNull private final long[] mTimestamps = new long[MAX_READERS * SAMPLES_PER_READER];
+
+    // per-slot state
+    @NonNull private final int[] mHead = new int[MAX_READERS]; // index of the next sample to write
+    @NonNull private final int[] mCount = new int[MAX_READERS];
+    @NonNull private final long[] mLastUpdated = new long[MAX_READERS];
+    @NonNull private final double[] mEma = new double[MAX_READERS];
+    @NonNull private final double[] mKalmanEstimate = new double[MAX_READERS];
+    @NonNull private final double[] mKalmanVariance = new double[MAX_READERS];
+    @NonNull private final String[] mSlotOwner = new String[MAX_READERS];
+
+    @NonNull private final HashMap<String, Integer> mSlots = new HashMap<>();
+    @NonNull private final int[] mFreeSlots = new int[MAX_READERS];
+    private int mFreeCount;
+
+    ReaderSignalHistory() {
+        for (int i = 0; i < MAX_READERS; i++) {
+            mFreeSlots[i] = MAX_READERS - 1 - i;
+        }
+        mFreeCount = MAX_READERS;
+    }
+
+    int size() {
+        return mSlots.size();
+    }
+
+    // *********************************************************************************
+    // Adds the reader's current path loss and updates its smoothed estimates.
+    // nowMillis should come from a monotonic clock such as SystemClock.elapsedRealtime
+    // *********************************************************************************
+    void record(@NonNull ReaderAttributes reader, long nowMillis) {
+        double sample = reader.getMeasuredPathLoss();
+        Integer existing = mSlots.get(reader.getId());
+
+        int slot;
+        if (existing == null) {
+            slot = allocateSlot(reader.getId());
+            mEma[slot] = sample;
+            mKalmanEstimate[slot] = sample;
+            mKalmanVariance[slot] = KALMAN_MEASUREMENT_NOISE;
+        } else {
+            slot = existing;
+            mEma[slot] += EMA_ALPHA * (sample - mEma[slot]);
+
+            // predict: uncertainty grows with the time since the last sample
+            double elapsedSeconds = Math.max(0, nowMillis - mLastUpdated[slot]) / 1000.0;
+            double variance = mKalmanVariance[slot] + KALMAN_PROCESS_NOISE_PER_SECOND * elapsedSeconds;
+            // update
+            double gain = variance / (variance + KALMAN_MEASUREMENT_NOISE);
+            mKalmanEstimate[slot] += gain * (sample - mKalmanEstimate[slot]);
+            mKalmanVariance[slot] = (1 - gain) * variance;
+        }
+
+        int base = slot * SAMPLES_PER_READER;
+        mPathLoss[base + mHead[slot]] = sample;
+        mTimestamps[base + mHead[slot]] = nowMillis;
+        mHead[slot] = (mHead[slot] + 1) % SAMPLES_PER_READER;
+        if (mCount[slot] < SAMPLES_PER_READER) {
+            mCount[slot]++;
+        }
+        mLastUpdated[slot] = nowMillis;
+    }
+
+    // Call when the reader goes READER_UNAVAILABLE
+    void evict(@NonNull String readerId) {
+        Integer slot = mSlots.remove(readerId);
+        if (slot != null) {
+            mSlotOwner[slot] = null;
+            mCount[slot] = 0;
+            mHead[slot] = 0;
+            mFreeSlots[mFreeCount++] = slot;
+        }
+    }
+
+    // Kalman-smoothed path loss, or the reader's instantaneous value if we have no history for it
+    double getSmoothedPathLoss(@NonNull ReaderAttributes reader) {
+        Integer slot = mSlots.get(reader.getId());
+        return slot != null ? mKalmanEstimate[slot] : reader.getMeasuredPathLoss();
+    }
+
+    // EMA of the path loss, or the reader's instantaneous value if we have no history for it
+    double getEmaPathLoss(@NonNull ReaderAttributes reader) {
+        Integer slot = mSlots.get(reader.getId());
+        return slot != null ? mEma[slot] : reader.getMeasuredPathLoss();
+    }
+
+    @NonNull
+    ReaderDistance getSmoothedDistance(@NonNull ReaderAttributes reader) {
+        return ReaderDistance.calculate(TX_POWER, reader.getAutoConnectPathLoss(), reader.getManualConnectPathLoss(), getSmoothedPathLoss(reader));
+    }
+
+    // Copies up to pathLossOut.length of the most recent samples and their timestamps, oldest first.
+    // Returns how many were copied
+    int copyRecentSamples(@NonNull String readerId, @NonNull double[] pathLossOut, @NonNull long[] timestampsOut) {
+        Integer slot = mSlots.get(readerId);
+        if (slot == null) {
+            return 0;
+        }
+        int n = Math.min(Math.min(pathLossOut.length, timestampsOut.length), mCount[slot]);
+        int base = slot * SAMPLES_PER_READER;
+        int start = mHead[slot] - n;
+        for (int i = 0; i < n; i++) {
+            int index = (start + i + SAMPLES_PER_READER) % SAMPLES_PER_READER;
+            pathLossOut[i] = mPathLoss[base + index];
+            timestampsOut[i] = mTimestamps[base + index];
+        }
+        return n;
+    }
+
+    private int allocateSlot(@NonNull String readerId) {
+        if (mFreeCount == 0) {
+            // full; make room by dropping whichever reader we heard from least recently
+            int oldest = 0;
+            for (int i = 1; i < MAX_READERS; i++) {
+                if (mLastUpdated[i] < mLastUpdated[oldest]) {
+                    oldest = i;
+                }
+            }
+            evict(mSlotOwner[oldest]);
+        }
+        int slot = mFreeSlots[--mFreeCount];
+        mSlotOwner[slot] = readerId;
+        mSlots.put(readerId, slot);
+        return slot;
+    }
+}
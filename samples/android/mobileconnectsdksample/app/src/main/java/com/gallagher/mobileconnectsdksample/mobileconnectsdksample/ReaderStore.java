@@ -0,0 +1,185 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.gallagher.security.mobileaccess.ReaderAttributes;
+import com.gallagher.security.mobileaccess.ReaderDistance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// *********************************************************************************
+// Holds the set of readers the SDK has told us about, keyed by reader ID, and keeps
+// them ordered nearest-first.
+// Lookups are O(1) and moving a reader after its path loss changes is O(log n), so a
+// busy site with hundreds of advertising readers doesn't re-sort on every SDK callback.
+// The RecyclerView never sees this directly; it gets an immutable snapshot instead.
+// *********************************************************************************
+class ReaderStore {
+
+    // Within a distance band, a reader only moves in the list once its path loss has drifted
+    // this far (in dB) from the value it was last ranked at. Without this, two readers at about
+    // the same distance keep swapping places as the signal fluctuates. A change of distance band
+    // always moves the reader.
+    static final double RANK_HYSTERESIS_DB = 4.0;
+
+    // How many readers' stable IDs we remember, in the order they last appeared; the same as
+    // ReaderSignalHistory keeps history for
+    static final int MAX_STABLE_IDS = ReaderSignalHistory.MAX_READERS;
+
+    enum ReaderVisualState {
+        CONNECTING, GRANTED, DENIED, REQUESTED, COMPLETED
+    }
+
+    // "ViewModel" to render our reader information along with connection state.
+    // Rows are immutable so that a snapshot handed to the UI can't change underneath it;
+    // an update replaces the row rather than modifying it.
+    static final class ReaderWithVisualState {
+        final ReaderAttributes Reader;
+        final ReaderDistance Distance; // smoothed, so it doesn't flicker like Reader.getReaderDistance()
+        @Nullable final ReaderVisualState VisualState;
+        final long StableId;
+
+        ReaderWithVisualState(ReaderAttributes reader, ReaderDistance distance, @Nullable ReaderVisualState visualState, long stableId) {
+            Reader = reader;
+            Distance = distance;
+            VisualState = visualState;
+            StableId = stableId;
+        }
+
+        ReaderWithVisualState withReader(ReaderAttributes reader, ReaderDistance distance) {
+            return new ReaderWithVisualState(reader, distance, VisualState, StableId);
+        }
+
+        ReaderWithVisualState withVisualState(@Nullable ReaderVisualState visualState) {
+            return new ReaderWithVisualState(Reader, Distance, visualState, StableId);
+        }
+    }
+
+    // The rank fields are only changed while the entry is out of the ranking set
+    private static final class Entry {
+        @NonNull ReaderWithVisualState Row;
+        int RankedDistance;
+        double RankedPathLoss;
+
+        Entry(@NonNull ReaderWithVisualState row) {
+            Row = row;
+        }
+    }
+
+    // ReaderDistance first, as the path loss thresholds are configured per-reader;
+    // then path loss within a distance band. The stable ID breaks ties so no two entries compare equal.
+    private static final Comparator<Entry> NEAREST_FIRST = (a, b) -> {
+        int result = Integer.compare(a.RankedDistance, b.RankedDistance);
+        if (result == 0) {
+            result = Double.compare(a.RankedPathLoss, b.RankedPathLoss);
+        }
+        if (result == 0) {
+            result = Long.compare(a.Row.StableId, b.Row.StableId);
+        }
+        return result;
+    };
+
+    @NonNull private final HashMap<String, Entry> mReaders = new HashMap<>();
+    @NonNull private final TreeSet<Entry> mRanking = new TreeSet<>(NEAREST_FIRST);
+
+    // A reader keeps its stable ID if it goes away and comes back, so RecyclerView can keep animating
+    // the same row. Only the last MAX_STABLE_IDS readers to appear are remembered; one that's been
+    // forgotten just gets a new ID, as IDs are never reused
+    @NonNull private final LinkedHashMap<String, Long> mStableIds = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_STABLE_IDS;
+        }
+    };
+    private long mNextStableId = 1;
+
+    @Nullable
+    ReaderWithVisualState get(@NonNull String readerId) {
+        Entry entry = mReaders.get(readerId);
+        return entry != null ? entry.Row : null;
+    }
+
+    int size() {
+        return mReaders.size();
+    }
+
+    // pathLoss and distance are what we rank and display the reader by; normally smoothed
+    // values from ReaderSignalHistory rather than the reader's instantaneous ones
+    void update(@NonNull ReaderAttributes reader, double pathLoss, @NonNull ReaderDistance distance) {
+        String readerId = reader.getId();
+        Entry entry = mReaders.get(readerId);
+        if (entry == null) {
+            entry = new Entry(new ReaderWithVisualState(reader, distance, null, stableIdFor(readerId)));
+            setRank(entry, pathLoss, distance);
+            mReaders.put(readerId, entry);
+            mRanking.add(entry);
+            return;
+        }
+
+        entry.Row = entry.Row.withReader(reader, distance);
+        // the row shows the new distance straight away, so it must be ranked by it too;
+        // the hysteresis only holds back moves within a distance band
+        if (distance.getValue() != entry.RankedDistance || Math.abs(pathLoss - entry.RankedPathLoss) > RANK_HYSTERESIS_DB) {
+            mRanking.remove(entry);
+            setRank(entry, pathLoss, distance);
+            mRanking.add(entry);
+        }
+    }
+
+    // returns false if the reader was already gone. The SDK can send us double-removes
+    boolean remove(@NonNull String readerId) {
+        Entry entry = mReaders.remove(readerId);
+        if (entry == null) {
+            return false;
+        }
+        mRanking.remove(entry);
+        return true;
+    }
+
+    // returns false if we don't know about the reader.
+    boolean setVisualState(@NonNull String readerId, @Nullable ReaderVisualState visualState) {
+        Entry entry = mReaders.get(readerId);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.Row.VisualState != visualState) {
+            entry.Row = entry.Row.withVisualState(visualState);
+        }
+        return true;
+    }
+
+    // nearest reader first
+    @NonNull
+    List<ReaderWithVisualState> snapshot() {
+        ArrayList<ReaderWithVisualState> result = new ArrayList<>(mRanking.size());
+        for (Entry entry : mRanking) {
+            result.add(entry.Row);
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    private static void setRank(@NonNull Entry entry, double pathLoss, @NonNull ReaderDistance distance) {
+        entry.RankedDistance = distance.getValue();
+        entry.RankedPathLoss = pathLoss;
+    }
+
+    private long stableIdFor(@NonNull String readerId) {
+        Long stableId = mStableIds.get(readerId);
+        if (stableId == null) {
+            stableId = mNextStableId++;
+            mStableIds.put(readerId, stableId);
+        }
+        return stableId;
+    }
+}
@@ -0,0 +1,150 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.gallagher.security.mobileaccess.ReaderAttributes;
+import com.gallagher.security.mobileaccess.ReaderUpdateListener;
+import com.gallagher.security.mobileaccess.ReaderUpdateType;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Executor;
+
+// *********************************************************************************
+// The SDK fires ATTRIBUTES_CHANGED for every advertisement it hears, so a single reader
+// can be updated many times between two frames. This sits between the SDK and the
+// real ReaderUpdateListener, keeps only the latest update for each reader, and hands
+// them on once per frame.
+//
+// For each reader, any run of updates collapses down to "remove, then update", where
+// either part may be missing. That way a reader that disappears and comes back within
+// a frame is still re-added, and double READER_UNAVAILABLE removes stay harmless.
+//
+// Updates may arrive on any thread. The batch is taken on the main thread's frame
+// callback and delivered to the downstream on the given executor.
+// *********************************************************************************
+class ReaderUpdateCoalescer implements ReaderUpdateListener, Choreographer.FrameCallback {
+
+    private static final class PendingUpdate {
+        @Nullable ReaderAttributes RemovedReader; // set if the reader must be removed first
+        @Nullable ReaderAttributes Reader; // the latest attributes to apply after any remove
+    }
+
+    @NonNull private final ReaderUpdateListener mDownstream;
+    @Nullable private final Runnable mOnFlushed;
+    @NonNull private final Executor mDeliveryExecutor;
+    @NonNull private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    @NonNull private final Runnable mPostFrameCallbackRunnable = () -> Choreographer.getInstance().postFrameCallback(this);
+
+    // in the order the readers should be applied. Guarded by itself
+    @NonNull private final LinkedHashMap<String, PendingUpdate> mPending = new LinkedHashMap<>();
+    private boolean mFrameScheduled = false;
+
+    private volatile long mUpdatesReceived = 0; // written under the mPending lock
+    private volatile long mUpdatesApplied = 0; // written on the delivery executor
+
+    // onFlushed runs on the delivery executor after each batch has been delivered,
+    // so the downstream can publish it in one go
+    ReaderUpdateCoalescer(@NonNull ReaderUpdateListener downstream, @Nullable Runnable onFlushed, @NonNull Executor deliveryExecutor) {
+        mDownstream = downstream;
+        mOnFlushed = onFlushed;
+        mDeliveryExecutor = deliveryExecutor;
+    }
+
+    long getUpdatesReceived() { return mUpdatesReceived; }
+    long getUpdatesApplied() { return mUpdatesApplied; }
+
+    @Override
+    public void onReaderUpdated(@NonNull ReaderAttributes reader, @NonNull ReaderUpdateType readerUpdateType) {
+        boolean scheduleFrame = false;
+        synchronized (mPending) {
+            mUpdatesReceived++;
+
+            String readerId = reader.getId();
+            PendingUpdate pending = mPending.get(readerId);
+            if (pending == null) {
+                pending = new PendingUpdate();
+                mPending.put(readerId, pending);
+            }
+
+            if (readerUpdateType.equals(ReaderUpdateType.ATTRIBUTES_CHANGED)) {
+                if (pending.RemovedReader != null && pending.Reader == null) {
+                    // the reader is coming back after a remove; move it to the end so
+                    // the re-add is applied after anything that arrived in the meantime
+                    mPending.remove(readerId);
+                    mPending.put(readerId, pending);
+                }
+                pending.Reader = reader;
+            } else if (readerUpdateType.equals(ReaderUpdateType.READER_UNAVAILABLE)) {
+                pending.RemovedReader = reader;
+                pending.Reader = null;
+            }
+
+            if (!mFrameScheduled) {
+                mFrameScheduled = true;
+                scheduleFrame = true;
+            }
+        }
+
+        if (scheduleFrame) {
+            // Choreographer is per-thread, and we want the main thread's frames
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                mPostFrameCallbackRunnable.run();
+            } else {
+                mMainHandler.post(mPostFrameCallbackRunnable);
+            }
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        ArrayList<PendingUpdate> batch;
+        synchronized (mPending) {
+            mFrameScheduled = false;
+            if (mPending.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(mPending.values());
+            mPending.clear();
+        }
+
+        mDeliveryExecutor.execute(() -> deliver(batch));
+    }
+
+    // Drops anything that hasn't been delivered yet. Call on the main thread
+    void cancel() {
+        mMainHandler.removeCallbacks(mPostFrameCallbackRunnable);
+        Choreographer.getInstance().removeFrameCallback(this);
+        synchronized (mPending) {
+            mFrameScheduled = false;
+            mPending.clear();
+        }
+    }
+
+    private void deliver(@NonNull ArrayList<PendingUpdate> batch) {
+        long applied = 0;
+        for (PendingUpdate pending : batch) {
+            if (pending.RemovedReader != null) {
+                mDownstream.onReaderUpdated(pending.RemovedReader, ReaderUpdateType.READER_UNAVAILABLE);
+                applied++;
+            }
+            if (pending.Reader != null) {
+                mDownstream.onReaderUpdated(pending.Reader, ReaderUpdateType.ATTRIBUTES_CHANGED);
+                applied++;
+            }
+        }
+        mUpdatesApplied += applied;
+
+        if (mOnFlushed != null) {
+            mOnFlushed.run();
+        }
+    }
+}
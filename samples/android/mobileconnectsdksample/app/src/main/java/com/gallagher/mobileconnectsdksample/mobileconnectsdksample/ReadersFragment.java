@@ -9,61 +9,89 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.activity.result.contract.ActivityResultContracts.RequestMultiplePermissions;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.gallagher.mobileconnectsdksample.mobileconnectsdksample.ReaderStore.ReaderVisualState;
+import com.gallagher.mobileconnectsdksample.mobileconnectsdksample.RecentReaderCache.RecentReader;
+import com.gallagher.mobileconnectsdksample.mobileconnectsdksample.ReaderStore.ReaderWithVisualState;
 import com.gallagher.security.mobileaccess.AccessResult;
 import com.gallagher.security.mobileaccess.AutomaticAccessListener;
-import com.gallagher.security.mobileaccess.MobileAccess;
-import com.gallagher.security.mobileaccess.MobileAccessProvider;
 import com.gallagher.security.mobileaccess.MobileAccessState;
 import com.gallagher.security.mobileaccess.Reader;
+import com.gallagher.security.mobileaccess.ReaderAction;
 import com.gallagher.security.mobileaccess.ReaderAttributes;
 import com.gallagher.security.mobileaccess.ReaderConnectionError;
+import com.gallagher.security.mobileaccess.ReaderDistance;
 import com.gallagher.security.mobileaccess.ReaderUpdateListener;
 import com.gallagher.security.mobileaccess.ReaderUpdateType;
 import com.gallagher.security.mobileaccess.SdkStateListener;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 
-public class ReadersFragment extends Fragment implements TabFragment, SdkStateListener, AutomaticAccessListener {
+public class ReadersFragment extends Fragment implements SdkStateListener, AutomaticAccessListener {
 
-    private enum ReaderVisualState {
-        CONNECTING, GRANTED, DENIED, REQUESTED, COMPLETED
-    }
+    private static final Logger LOG = LoggerFactory.getLogger(ReadersFragment.class);
 
-    // "ViewModel" to render our reader information along with connection state
-    private static class ReaderWithVisualState {
-        ReaderAttributes Reader;
-        ReaderVisualState VisualState;
+    private static final long VISUAL_STATE_DURATION_MILLIS = 1000;
 
-        ReaderWithVisualState(ReaderAttributes reader, ReaderVisualState visualState) {
-            Reader = reader;
-            VisualState = visualState;
-        }
-    }
+    // Readers seen longer ago than this aren't worth showing after a restart
+    private static final long RECENT_READER_MAX_AGE_MILLIS = 24 * 60 * 60 * 1000;
 
     // *********************************************************************************
-    // Get a reference to the MobileAccess shared instance
+    // Get a reference to the MobileAccess shared instance.
+    // The app finishes setting up the SDK after Application.onCreate, so calls to it go through SdkStartup
     // *********************************************************************************
     @NonNull
-    private final MobileAccess mMobileAccess = MobileAccessProvider.getInstance();
+    private final SdkStartup mSdk = SdkStartup.getInstance();
+
+    @NonNull
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    // Outlives the view, so actions we've already enumerated are still there when the user comes back to the tab
+    @NonNull
+    private final ReaderActionCache mReaderActionCache = new ReaderActionCache(mSdk, ReaderActionCache.DEFAULT_TTL_MILLIS);
 
     ReaderRecyclerViewAdapter mAdapter;
+    ReaderUpdateCoalescer mReaderUpdateCoalescer;
+
+    // GRANTED/DENIED etc. are only shown briefly. One timer wheel owns all of those expiries
+    // (keyed by reader ID) so a newer state is never cleared by an older access attempt's timer.
+    // It runs on the SdkEventLoop, alongside the reader store
+    TimerWheel<String> mVisualStateExpiry;
+
+    // The last set of states we showed messages for; null until the first callback for this view
+    @Nullable
+    private EnumSet<MobileAccessState> mShownStates;
+
+    // The last set of states the SDK told us about. Unlike mShownStates this survives the view being
+    // recreated, so coming back to the tab doesn't prompt for permissions all over again
+    @NonNull
+    private EnumSet<MobileAccessState> mLastStates = EnumSet.noneOf(MobileAccessState.class);
 
-    public String getTitle() { return "Readers"; }
-    public int getActionId() { return R.id.action_readers; }
     private final androidx.activity.result.ActivityResultLauncher<String[]> permissionLauncher;
 
     public ReadersFragment() {
@@ -83,22 +111,25 @@ public class ReadersFragment extends Fragment implements TabFragment, SdkStateLi
         Context context = view.getContext();
 
         // Wire up the RecyclerView
-        mAdapter = new ReaderRecyclerViewAdapter();
-
-        // *********************************************************************************
-        // Ask the SDK to tell us about it's operational state so we can show warning messages if needed
-        // *********************************************************************************
-        mMobileAccess.addSdkStateListener(this);
-
-        // *********************************************************************************
-        // Ask the SDK to tell us about readers it discovers
-        // *********************************************************************************
-        mMobileAccess.addReaderUpdateListener(mAdapter);
+        mAdapter = new ReaderRecyclerViewAdapter(RecentReaderCache.getInstance(context));
+        // show the readers we saw last time until scanning finds them again
+        mAdapter.loadRecentReaders();
+        mReaderUpdateCoalescer = new ReaderUpdateCoalescer(mAdapter, mAdapter::commit, SdkEventLoop.getInstance());
+        mVisualStateExpiry = new TimerWheel<>(100, 32, SystemClock::uptimeMillis, Scheduler.forHandler(SdkEventLoop.getInstance().getHandler()),
+                readerId -> mAdapter.setReaderVisualState(readerId, null));
 
         // *********************************************************************************
-        // Ask the SDK to tell us about automatic access so we can show UI if needed
+        // Listen to the SDK's operational state so we can show warning messages if needed, and
+        // to the readers it discovers. Reader updates go through the coalescer so the adapter
+        // sees at most one per reader per frame.
+        // SdkEventHub only passes these on while the tab is on screen (the pager only resumes that
+        // one), so scanning doesn't keep rebuilding a list nobody can see. Each time we come back
+        // it starts us off with the current state and the readers in range
         // *********************************************************************************
-        mMobileAccess.addAutomaticAccessListener(this);
+        SdkEventHub hub = SdkEventHub.getInstance();
+        hub.getSdkStates().subscribe("ReadersFragment", getViewLifecycleOwner(), () -> this);
+        ReaderUpdateCoalescer coalescer = mReaderUpdateCoalescer;
+        hub.getReaderUpdates().subscribe("ReadersFragment", getViewLifecycleOwner(), () -> coalescer);
 
         RecyclerView recyclerView = view.findViewById(R.id.reader_list);
         recyclerView.setLayoutManager(new LinearLayoutManager(context));
@@ -107,30 +138,131 @@ public class ReadersFragment extends Fragment implements TabFragment, SdkStateLi
         return view;
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+
+        // *********************************************************************************
+        // Ask the SDK to tell us about automatic access so we can show UI if needed
+        // *********************************************************************************
+        mSdk.execute(mobileAccess -> mobileAccess.addAutomaticAccessListener(this));
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        // if the SDK isn't ready yet this is queued behind the add, so they still pair up
+        mSdk.execute(mobileAccess -> mobileAccess.removeAutomaticAccessListener(this));
+        // the hub has already stopped sending us reader updates; drop any still waiting for a frame
+        mReaderUpdateCoalescer.cancel();
+        // we won't hear how any access in progress ends, so don't leave it showing CONNECTING
+        SdkEventLoop.getInstance().run(mVisualStateExpiry::cancelAll);
+        mAdapter.clearVisualStates();
+    }
+
     @Override
     public void onDestroyView() {
-        mMobileAccess.removeAutomaticAccessListener(this);
-        mMobileAccess.removeReaderUpdateListener(mAdapter);
-        mMobileAccess.removeSdkStateListener(this);
+        mAdapter.close();
+        mShownStates = null; // a new view needs its messages again
+        LOG.debug("Reader updates received: {}, applied: {}",
+                mReaderUpdateCoalescer.getUpdatesReceived(), mReaderUpdateCoalescer.getUpdatesApplied());
+        AccessScheduler scheduler = AccessScheduler.getInstance();
+        LOG.debug("Access requests: {}, attempts: {}, deduplicated: {}, dropped in cooldown: {}",
+                scheduler.getRequests(), scheduler.getAttempts(), scheduler.getDeduplicated(), scheduler.getCooldownDropped());
         super.onDestroyView();
     }
 
     // *********************************************************************************
-    // Manually request access for the given reader
+    // Manually request access for the given reader.
+    // This goes through the AccessScheduler so a double-tap doesn't start a second connection
     // *********************************************************************************
     public void onReaderClicked(Reader reader) {
-        mMobileAccess.requestAccess(reader, this);
+        AccessScheduler.getInstance().requestAccess(reader, this);
+    }
+
+    // *********************************************************************************
+    // Show the actions (e.g. arm, disarm) the reader offers. We enumerate these in the background
+    // when the reader comes near, so they normally come straight from the cache
+    // *********************************************************************************
+    public void onReaderLongClicked(ReaderAttributes reader) {
+        if (!reader.isBleActionsEnabled()) {
+            Toast.makeText(getActivity(), "This reader has no actions", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        SdkEventLoop.getInstance().run(() -> {
+            if (mReaderActionCache.get(reader.getId()) == null) {
+                mMainHandler.post(() -> Toast.makeText(getActivity(), "Loading actions...", Toast.LENGTH_SHORT).show());
+            }
+            mReaderActionCache.load(reader, (r, actions, error) -> mMainHandler.post(() -> showReaderActions(r, actions, error)));
+        });
+    }
+
+    private void showReaderActions(@NonNull Reader reader, @Nullable List<ReaderAction> actions, @Nullable ReaderConnectionError error) {
+        if (!isAdded()) {
+            return; // the user has moved on
+        }
+        if (error != null || actions == null) {
+            LOG.warn("Failed to enumerate actions for reader {}: {}", reader.getName(), error);
+            Toast.makeText(getActivity(), "Could not get actions: " + error, Toast.LENGTH_LONG).show();
+            return;
+        }
+        if (actions.isEmpty()) {
+            Toast.makeText(getActivity(), "This reader has no actions", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        String[] names = new String[actions.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = actions.get(i).getName();
+        }
+        new AlertDialog.Builder(requireActivity())
+                .setTitle(reader.getName())
+                .setItems(names, (dlg, which) -> requestReaderAction(reader, actions.get(which)))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private void requestReaderAction(@NonNull Reader reader, @NonNull ReaderAction action) {
+        mSdk.execute(mobileAccess -> mobileAccess.requestReaderAction(reader, action, (r, a, error) -> {
+            if (error != null) {
+                // the reader may no longer offer what we cached, so enumerate again next time
+                SdkEventLoop.getInstance().run(() -> mReaderActionCache.invalidate(r.getId()));
+            }
+            mMainHandler.post(() -> {
+                if (isAdded()) {
+                    String message = error != null ? a.getName() + " failed: " + error : a.getName() + " completed";
+                    Toast.makeText(getActivity(), message, Toast.LENGTH_SHORT).show();
+                }
+            });
+        }));
     }
 
     // *********************************************************************************
     // SdkStateListener:
     // The MobileConnect SDK will publish the list of problems/warnings via this callback.
-    // so we can use it to show warning messages and things like that
+    // so we can use it to show warning messages and things like that.
+    // The SDK calls this often with the same states, so we only do any work when the set changes,
+    // and only prompt for a permission when its state has just appeared
     // *********************************************************************************
     public void onStateChanged(boolean isScanning, Collection<MobileAccessState> states) {
+        showStates(states);
+    }
+
+    private void showStates(@NonNull Collection<MobileAccessState> states) {
+        EnumSet<MobileAccessState> current = EnumSet.noneOf(MobileAccessState.class);
+        current.addAll(states);
+        if (current.equals(mShownStates)) {
+            return;
+        }
+        EnumSet<MobileAccessState> added = EnumSet.copyOf(current);
+        added.removeAll(mLastStates);
+        mShownStates = current;
+        mLastStates = current;
+
         ArrayList<String> messages = new ArrayList<>();
 
-        for(MobileAccessState state : states) {
+        for(MobileAccessState state : current) {
             switch (state) {
                 case ERROR_NO_CREDENTIALS:
                     messages.add("Please register a credential");
@@ -153,7 +285,9 @@ public class ReadersFragment extends Fragment implements TabFragment, SdkStateLi
                     // Request location permissions from user.
                     // It's recommended you do this in a more sensible place so as not to spam the user with requests
                     // For android 12, location permissions are only required for Salto keys
-                    permissionLauncher.launch(new String[] { Manifest.permission.ACCESS_FINE_LOCATION, Manifest.permission.ACCESS_COARSE_LOCATION });
+                    if (added.contains(state)) {
+                        permissionLauncher.launch(new String[] { Manifest.permission.ACCESS_FINE_LOCATION, Manifest.permission.ACCESS_COARSE_LOCATION });
+                    }
                     break;
                 case BLE_ERROR_LOCATION_SERVICE_DISABLED:
                     messages.add("Location services are disabled; Please enable them to allow bluetooth connectivity.");
@@ -181,7 +315,7 @@ public class ReadersFragment extends Fragment implements TabFragment, SdkStateLi
                     // Android 12+ requires the new BLUETOOTH_CONNECT permission to scan and connect to BLE devices
                     messages.add("Please grant permission for this application to scan and connect to nearby devices");
 
-                    if (android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                    if (android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && added.contains(state)) {
                         permissionLauncher.launch(new String[] { Manifest.permission.BLUETOOTH_SCAN, Manifest.permission.BLUETOOTH_CONNECT });
                     }
                     break;
@@ -216,7 +350,12 @@ public class ReadersFragment extends Fragment implements TabFragment, SdkStateLi
     // *********************************************************************************
     @Override
     public void onAccessStarted(@NonNull Reader reader) {
-        mAdapter.setReaderVisualState(reader, ReaderVisualState.CONNECTING);
+        // this attempt owns the visual state now; don't let an earlier attempt's timer clear it
+        String readerId = reader.getId();
+        SdkEventLoop.getInstance().run(() -> {
+            mVisualStateExpiry.cancel(readerId);
+            mAdapter.setReaderVisualState(readerId, ReaderVisualState.CONNECTING);
+        });
     }
 
     // *********************************************************************************
@@ -234,63 +373,184 @@ public class ReadersFragment extends Fragment implements TabFragment, SdkStateLi
         // behind the scenes
         if(accessResult != null) {
             if (accessResult.isAccessGranted()) {
-                mAdapter.setReaderVisualState(reader, ReaderVisualState.GRANTED);
+                mAdapter.setReaderVisualState(reader.getId(), ReaderVisualState.GRANTED);
             } else if (accessResult.isAccessDenied()) {
-                mAdapter.setReaderVisualState(reader, ReaderVisualState.DENIED);
+                mAdapter.setReaderVisualState(reader.getId(), ReaderVisualState.DENIED);
             } else {
-                mAdapter.setReaderVisualState(reader, ReaderVisualState.REQUESTED);
+                mAdapter.setReaderVisualState(reader.getId(), ReaderVisualState.REQUESTED);
             }
         } else {
-            mAdapter.setReaderVisualState(reader, ReaderVisualState.DENIED);
+            mAdapter.setReaderVisualState(reader.getId(), ReaderVisualState.DENIED);
         }
 
         // The SDK doesn't give us any more callbacks after accessComplete
         // so set a timer to clear the visual state after a small delay.
-        new Handler(Looper.getMainLooper()).postDelayed(() -> mAdapter.setReaderVisualState(reader, null), 1000);
+        // This replaces any timer still pending for the reader.
+        String readerId = reader.getId();
+        SdkEventLoop.getInstance().run(() -> mVisualStateExpiry.schedule(readerId, VISUAL_STATE_DURATION_MILLIS));
     }
 
+    // *********************************************************************************
+    // Rows are either a message (String), a reader, or a reader we remember from before (RecentReader).
+    // Readers are matched on their stable ID rather than their attributes, as each update from the SDK
+    // is a new ReaderAttributes object.
+    // We only compare what the row actually displays so attribute churn doesn't rebind the row.
+    // *********************************************************************************
+    private static final DiffUtil.ItemCallback<Object> ROW_DIFF_CALLBACK = new DiffUtil.ItemCallback<Object>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Object oldItem, @NonNull Object newItem) {
+            if (oldItem instanceof ReaderWithVisualState && newItem instanceof ReaderWithVisualState) {
+                return ((ReaderWithVisualState) oldItem).StableId == ((ReaderWithVisualState) newItem).StableId;
+            }
+            if (oldItem instanceof RecentReader && newItem instanceof RecentReader) {
+                return ((RecentReader) oldItem).Id.equals(((RecentReader) newItem).Id);
+            }
+            return oldItem.equals(newItem);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Object oldItem, @NonNull Object newItem) {
+            if (oldItem instanceof ReaderWithVisualState && newItem instanceof ReaderWithVisualState) {
+                ReaderWithVisualState oldReader = (ReaderWithVisualState) oldItem;
+                ReaderWithVisualState newReader = (ReaderWithVisualState) newItem;
+                return oldReader.VisualState == newReader.VisualState
+                        && oldReader.Distance == newReader.Distance
+                        && oldReader.Reader.getName().equals(newReader.Reader.getName());
+            }
+            if (oldItem instanceof RecentReader && newItem instanceof RecentReader) {
+                return ((RecentReader) oldItem).Name.equals(((RecentReader) newItem).Name);
+            }
+            return oldItem.equals(newItem);
+        }
+    };
+
     class ReaderRecyclerViewAdapter extends RecyclerView.Adapter implements ReaderUpdateListener {
 
-        @NonNull private final ArrayList<String> mMessages = new ArrayList<>();
-        @NonNull private final ArrayList<ReaderWithVisualState> mReaders = new ArrayList<>();
+        // The store and messages are only touched on the SdkEventLoop. The UI only ever sees
+        // the immutable row lists that commit() publishes from there.
+        @NonNull private final SdkEventLoop mEventLoop = SdkEventLoop.getInstance();
+        @NonNull private final ReaderStore mStore = new ReaderStore();
+        @NonNull private final ReaderSignalHistory mSignalHistory = new ReaderSignalHistory();
+        @NonNull private List<String> mMessages = Collections.emptyList();
+
+        // Remembered readers that scanning hasn't found yet; each one is dropped as soon as the live reader turns up
+        @NonNull private final RecentReaderCache mRecentReaderCache;
+        @NonNull private final LinkedHashMap<String, RecentReader> mRecentReaders = new LinkedHashMap<>();
+
+        // The differ computes the change set on a background thread and dispatches it
+        // to the RecyclerView in one go, so we never call notifyItem* ourselves
+        @NonNull private final AsyncListDiffer<Object> mDiffer = new AsyncListDiffer<>(this, ROW_DIFF_CALLBACK);
+        @NonNull private final SnapshotPublisher<List<Object>> mPublisher = new SnapshotPublisher<>(mDiffer::submitList);
+
+        // Several SDK callbacks usually arrive back-to-back; only build one snapshot for all of them
+        @NonNull private final Runnable mCommitRunnable = this::commit;
+        private boolean mCommitPending = false;
+
+        ReaderRecyclerViewAdapter(@NonNull RecentReaderCache recentReaderCache) {
+            mRecentReaderCache = recentReaderCache;
+            setHasStableIds(true);
+        }
 
-        ReaderRecyclerViewAdapter() { }
+        // Reads the recent readers file on the SdkEventLoop. Queued ahead of any reader updates, so
+        // a reader that's already in range replaces its remembered row rather than the other way round
+        void loadRecentReaders() {
+            mEventLoop.execute(() -> {
+                for (RecentReader recent : mRecentReaderCache.load(System.currentTimeMillis(), RECENT_READER_MAX_AGE_MILLIS)) {
+                    if (mStore.get(recent.Id) == null) {
+                        mRecentReaders.put(recent.Id, recent);
+                    }
+                }
+                if (!mRecentReaders.isEmpty()) {
+                    scheduleCommit();
+                }
+            });
+        }
 
+        // may be called from any thread
         void setMessages(List<String> messages) {
-            mMessages.clear();
-            mMessages.addAll(messages);
-            notifyDataSetChanged();
+            // two states can map to the same message, and rows need unique IDs
+            List<String> uniqueMessages = new ArrayList<>(new LinkedHashSet<>(messages));
+            mEventLoop.run(() -> {
+                mMessages = uniqueMessages;
+                scheduleCommit();
+            });
+        }
+
+        // may be called from any thread
+        void setReaderVisualState(String readerId, ReaderVisualState visualState) {
+            mEventLoop.run(() -> {
+                if (mStore.setVisualState(readerId, visualState)) {
+                    scheduleCommit();
+                }
+                // if we don't find the reader, ignore it.
+                // The SDK will always fire updateReader before it fires onAccessStarted/Ended
+                // so this shouldn't happen anyway apart from a possible odd timing issue
+            });
+        }
+
+        // may be called from any thread
+        void clearVisualStates() {
+            mEventLoop.run(() -> {
+                boolean changed = false;
+                for (ReaderWithVisualState row : mStore.snapshot()) {
+                    if (row.VisualState != null) {
+                        changed |= mStore.setVisualState(row.Reader.getId(), null);
+                    }
+                }
+                if (changed) {
+                    scheduleCommit();
+                }
+            });
+        }
+
+        // Stops publishing to the UI once the view has gone
+        void close() {
+            mPublisher.close();
+        }
+
+        private void scheduleCommit() {
+            if (!mCommitPending) {
+                mCommitPending = true;
+                mEventLoop.getHandler().post(mCommitRunnable);
+            }
         }
 
         // *********************************************************************************
-        // Updates to a reader will have different attributes and therefore
-        // it doesn't really make sense to compare them directly. Instead we search for
-        // "matching" readers with the same ID
+        // Publish the current messages and readers to the RecyclerView as a single change set.
+        // Runs on the SdkEventLoop.
+        // messages show above readers, then the readers we remember but haven't found yet
         // *********************************************************************************
-        int findReaderIndex(@NonNull Reader reader) {
-            for(int i = 0; i < mReaders.size(); i++) {
-                if(mReaders.get(i).Reader.getId().equals(reader.getId())) {
-                    return i;
-                }
+        void commit() {
+            if (mCommitPending) {
+                mCommitPending = false;
+                mEventLoop.getHandler().removeCallbacks(mCommitRunnable);
             }
-            return -1;
+
+            List<ReaderWithVisualState> readers = mStore.snapshot();
+            ArrayList<Object> rows = new ArrayList<>(mMessages.size() + readers.size() + mRecentReaders.size());
+            rows.addAll(mMessages);
+            rows.addAll(readers);
+            rows.addAll(mRecentReaders.values());
+            mPublisher.publish(Collections.unmodifiableList(rows));
         }
 
-        void setReaderVisualState(Reader reader, ReaderVisualState visualState) {
-            int idx = findReaderIndex(reader);
-            if(idx >= 0) {
-                mReaders.get(idx).VisualState = visualState;
-                notifyItemRangeChanged(idx, 1);
+        @Override
+        public long getItemId(int position) {
+            Object row = mDiffer.getCurrentList().get(position);
+            if (row instanceof ReaderWithVisualState) {
+                return ((ReaderWithVisualState) row).StableId;
+            }
+            if (row instanceof RecentReader) {
+                // remembered readers get their own range; they never share the list with their live row
+                return 0x4000000000000000L | (((RecentReader) row).Id.hashCode() & 0xFFFFFFFFL);
             }
-            // if we don't find the reader, ignore it.
-            // The SDK will always fire updateReader before it fires onAccessStarted/Ended
-            // so this shouldn't happen anyway apart from a possible odd timing issue
+            // reader IDs are positive, so keep messages in the negative range
+            return 0xFFFFFFFF00000000L | (row.hashCode() & 0xFFFFFFFFL);
         }
 
         @Override
         public int getItemViewType(int position) {
-            // messages show above readers
-            return position < mMessages.size() ? R.layout.row_reader_message : R.layout.row_reader;
+            return mDiffer.getCurrentList().get(position) instanceof String ? R.layout.row_reader_message : R.layout.row_reader;
         }
 
         @Override
@@ -302,31 +562,50 @@ public class ReadersFragment extends Fragment implements TabFragment, SdkStateLi
 
         @Override
         public void onBindViewHolder(@NonNull final RecyclerView.ViewHolder holder, int position) {
+            Object row = mDiffer.getCurrentList().get(position);
             if(holder instanceof MessageViewHolder) {
                 MessageViewHolder messageHolder = (MessageViewHolder)holder;
 
-                String message = mMessages.get(position);
+                String message = (String)row;
                 messageHolder.mContentView.setText(message);
             }
+            else if(holder instanceof ReaderViewHolder && row instanceof RecentReader) {
+                ReaderViewHolder readerHolder = (ReaderViewHolder)holder;
+
+                RecentReader recent = (RecentReader)row;
+                readerHolder.mIdView.setText("RECENTLY SEEN");
+                readerHolder.mContentView.setText(recent.Name);
+                readerHolder.itemView.setAlpha(0.5f);
+
+                readerHolder.mItem = null;
+                readerHolder.itemView.setOnClickListener(v ->
+                        Toast.makeText(v.getContext(), recent.Name + " is not in range yet", Toast.LENGTH_SHORT).show());
+                readerHolder.itemView.setOnLongClickListener(null);
+            }
             else if(holder instanceof ReaderViewHolder) {
                 ReaderViewHolder readerHolder = (ReaderViewHolder)holder;
 
-                ReaderWithVisualState rws = mReaders.get(position - mMessages.size());
+                ReaderWithVisualState rws = (ReaderWithVisualState)row;
                 ReaderAttributes reader = rws.Reader;
 
-                String visualStateString = rws.VisualState != null ? rws.VisualState.toString() : null;
+                // show the connection state while there is one, otherwise how far away the reader is
+                String visualStateString = rws.VisualState != null ? rws.VisualState.toString() : rws.Distance.toString();
                 readerHolder.mIdView.setText(visualStateString);
                 readerHolder.mContentView.setText(reader.getName());
+                readerHolder.itemView.setAlpha(1f);
 
                 readerHolder.mItem = reader;
                 readerHolder.itemView.setOnClickListener(v -> ReadersFragment.this.onReaderClicked(readerHolder.mItem));
+                readerHolder.itemView.setOnLongClickListener(v -> {
+                    ReadersFragment.this.onReaderLongClicked(reader);
+                    return true;
+                });
             }
         }
 
         @Override
         public int getItemCount() {
-            // messages show above readers
-            return mMessages.size() + mReaders.size();
+            return mDiffer.getCurrentList().size();
         }
 
         // *********************************************************************************
@@ -335,21 +614,31 @@ public class ReadersFragment extends Fragment implements TabFragment, SdkStateLi
         // *********************************************************************************
         @Override
         public void onReaderUpdated(ReaderAttributes reader, ReaderUpdateType readerUpdateType) {
+            // The coalescer delivers on the SdkEventLoop, and calls commit() once it has
+            // delivered the whole batch for this frame
             if(readerUpdateType.equals(ReaderUpdateType.ATTRIBUTES_CHANGED)) {
-                int idx = findReaderIndex(reader);
-                if(idx == -1) { // a new reader, put it at the top
-                    mReaders.add(0, new ReaderWithVisualState(reader, null));
-                    notifyItemRangeInserted(0, 1);
-                } else {
-                    mReaders.get(idx).Reader = reader;
-                    notifyItemRangeChanged(idx, 1);
+                // the store keeps readers sorted nearest-first. Rank and label the reader
+                // by its smoothed signal, not the latest (noisy) sample
+                ReaderWithVisualState previous = mStore.get(reader.getId());
+                mSignalHistory.record(reader, SystemClock.elapsedRealtime());
+                ReaderDistance distance = mSignalHistory.getSmoothedDistance(reader);
+                double pathLoss = mSignalHistory.getSmoothedPathLoss(reader);
+                mStore.update(reader, pathLoss, distance);
+
+                // it's live now; also remember it for next time the app starts
+                mRecentReaders.remove(reader.getId());
+                mRecentReaderCache.record(reader, pathLoss, System.currentTimeMillis());
+
+                // the user is most likely to want a reader's actions once they're standing at it,
+                // so fetch them as it comes near rather than when the menu is opened
+                mReaderActionCache.onAttributesChanged(reader);
+                boolean cameNear = distance == ReaderDistance.NEAR && (previous == null || previous.Distance != ReaderDistance.NEAR);
+                if (cameNear && reader.isBleActionsEnabled()) {
+                    mReaderActionCache.prefetch(reader);
                 }
             } else if(readerUpdateType.equals(ReaderUpdateType.READER_UNAVAILABLE)) {
-                int idx = findReaderIndex(reader);
-                if(idx >= 0) { // only remove it if it's not already removed. We can get double-removes
-                    mReaders.remove(idx);
-                    notifyItemRangeRemoved(idx, 1);
-                }
+                mStore.remove(reader.getId()); // we can get double-removes, the store ignores those
+                mSignalHistory.evict(reader.getId());
             }
         }
 
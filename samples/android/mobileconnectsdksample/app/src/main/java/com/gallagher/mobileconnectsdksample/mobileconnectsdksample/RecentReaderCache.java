@@ -0,0 +1,299 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.gallagher.security.mobileaccess.ReaderAttributes;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// *********************************************************************************
+// Remembers the readers we've seen recently, on disk, so that after a cold start the
+// readers list can show them straight away instead of being empty until bluetooth
+// scanning finds each one again.
+//
+// The file is a small header followed by MAX_READERS fixed-size records, and is memory
+// mapped: recording a reader is just a few puts into its record, and loading is a scan
+// of the mapping. When every record is in use the least recently seen reader is replaced.
+// Updates for a reader we've just recorded are skipped unless something we show changed,
+// so the SDK's stream of ATTRIBUTES_CHANGED doesn't turn into a stream of page writes.
+//
+// Not thread-safe; owned by the SdkEventLoop.
+// *********************************************************************************
+final class RecentReaderCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RecentReaderCache.class);
+
+    static final int FLAG_BLE_MANUAL_CONNECT = 1;
+    static final int FLAG_BLE_AUTO_CONNECT = 1 << 1;
+    static final int FLAG_BLE_ACTIONS = 1 << 2;
+    static final int FLAG_NFC = 1 << 3;
+    static final int FLAG_SECOND_FACTOR_REQUIRED = 1 << 4;
+
+    static final int MAX_READERS = 64;
+
+    // A reader's last seen time is only rewritten when it's at least this old
+    private static final long WRITE_INTERVAL_MILLIS = 10_000;
+
+    private static final String FILE_NAME = "recent_readers.bin";
+    private static final int MAGIC = 0x47524331; // "GRC1"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    // record layout: lastSeen (long, 0 = empty), pathLoss (double), flags (int),
+    // id length (short) + id bytes, name length (short) + name bytes, padding
+    private static final int MAX_ID_BYTES = 64;
+    private static final int MAX_NAME_BYTES = 160;
+    private static final int RECORD_SIZE = 256;
+    private static final int ID_OFFSET = 20;
+    private static final int NAME_OFFSET = ID_OFFSET + 2 + MAX_ID_BYTES;
+
+    private static final int FILE_SIZE = HEADER_SIZE + MAX_READERS * RECORD_SIZE;
+
+    static final class RecentReader {
+        final String Id;
+        final String Name;
+        final double PathLoss;
+        final long LastSeen; // System.currentTimeMillis
+        final int Flags;
+
+        RecentReader(String id, String name, double pathLoss, long lastSeen, int flags) {
+            Id = id;
+            Name = name;
+            PathLoss = pathLoss;
+            LastSeen = lastSeen;
+            Flags = flags;
+        }
+
+        boolean has(int flag) {
+            return (Flags & flag) != 0;
+        }
+    }
+
+    private static RecentReaderCache sInstance;
+
+    @NonNull private final File mFile;
+    @Nullable private MappedByteBuffer mBuffer; // null until opened, or if the file couldn't be mapped
+    private boolean mOpened = false;
+
+    // what's in each record, so deciding whether to write doesn't have to read the mapping
+    @NonNull private final HashMap<String, Integer> mSlots = new HashMap<>();
+    @NonNull private final String[] mNames = new String[MAX_READERS];
+    @NonNull private final int[] mFlags = new int[MAX_READERS];
+    @NonNull private final long[] mLastSeen = new long[MAX_READERS];
+
+    @NonNull
+    static synchronized RecentReaderCache getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new RecentReaderCache(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return sInstance;
+    }
+
+    private RecentReaderCache(@NonNull File file) {
+        mFile = file;
+    }
+
+    // *********************************************************************************
+    // Returns the readers seen within maxAgeMillis, most recently seen first.
+    // Maps the file the first time it's called
+    // *********************************************************************************
+    @NonNull
+    List<RecentReader> load(long nowMillis, long maxAgeMillis) {
+        open();
+
+        ArrayList<RecentReader> result = new ArrayList<>();
+        if (mBuffer == null) {
+            return result;
+        }
+        for (Map.Entry<String, Integer> entry : mSlots.entrySet()) {
+            String readerId = entry.getKey();
+            int slot = entry.getValue();
+            if (nowMillis - mLastSeen[slot] > maxAgeMillis) {
+                continue;
+            }
+            int base = recordOffset(slot);
+            result.add(new RecentReader(readerId, mNames[slot], mBuffer.getDouble(base + 8), mLastSeen[slot], mFlags[slot]));
+        }
+        Collections.sort(result, (a, b) -> Long.compare(b.LastSeen, a.LastSeen));
+        return result;
+    }
+
+    // Call for every ATTRIBUTES_CHANGED; most calls return without touching the file
+    void record(@NonNull ReaderAttributes reader, double pathLoss, long nowMillis) {
+        open();
+        if (mBuffer == null) {
+            return;
+        }
+
+        String readerId = reader.getId();
+        String name = reader.getName() != null ? reader.getName() : "";
+        int flags = flagsOf(reader);
+
+        Integer existing = mSlots.get(readerId);
+        if (existing != null
+                && nowMillis - mLastSeen[existing] < WRITE_INTERVAL_MILLIS
+                && mFlags[existing] == flags
+                && mNames[existing].equals(name)) {
+            return;
+        }
+
+        byte[] idBytes = readerId.getBytes(StandardCharsets.UTF_8);
+        if (idBytes.length > MAX_ID_BYTES) {
+            return; // we can't store it without losing its identity
+        }
+        byte[] nameBytes = truncatedUtf8(name, MAX_NAME_BYTES);
+
+        int slot = existing != null ? existing : allocateSlot(readerId);
+        int base = recordOffset(slot);
+
+        // clear lastSeen first and set it last, so a record that's only half written
+        // (if we're killed part way through) reads back as empty
+        mBuffer.putLong(base, 0);
+        mBuffer.putDouble(base + 8, pathLoss);
+        mBuffer.putInt(base + 16, flags);
+        putBytes(base + ID_OFFSET, idBytes);
+        putBytes(base + NAME_OFFSET, nameBytes);
+        mBuffer.putLong(base, nowMillis);
+
+        mNames[slot] = name;
+        mFlags[slot] = flags;
+        mLastSeen[slot] = nowMillis;
+    }
+
+    static int flagsOf(@NonNull ReaderAttributes reader) {
+        int flags = 0;
+        if (reader.isBleManualConnectEnabled()) flags |= FLAG_BLE_MANUAL_CONNECT;
+        if (reader.isBleAutoConnectEnabled()) flags |= FLAG_BLE_AUTO_CONNECT;
+        if (reader.isBleActionsEnabled()) flags |= FLAG_BLE_ACTIONS;
+        if (reader.isNfcEnabled()) flags |= FLAG_NFC;
+        if (reader.isSecondFactorRequired()) flags |= FLAG_SECOND_FACTOR_REQUIRED;
+        return flags;
+    }
+
+    private void open() {
+        if (mOpened) {
+            return;
+        }
+        mOpened = true;
+
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            if (file.length() != FILE_SIZE) {
+                file.setLength(0);
+                file.setLength(FILE_SIZE); // zero filled, so every record is empty
+            }
+            // the mapping stays valid after the channel is closed
+            mBuffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+        } catch (IOException e) {
+            LOG.warn("Can't map the recent readers file; readers won't be remembered", e);
+            mBuffer = null;
+            return;
+        }
+
+        if (mBuffer.getInt(0) != MAGIC || mBuffer.getInt(4) != VERSION) {
+            for (int i = 0; i < FILE_SIZE; i += 8) {
+                mBuffer.putLong(i, 0);
+            }
+            mBuffer.putInt(0, MAGIC);
+            mBuffer.putInt(4, VERSION);
+            return;
+        }
+
+        for (int slot = 0; slot < MAX_READERS; slot++) {
+            readRecord(slot);
+        }
+        LOG.debug("Loaded {} recent readers", mSlots.size());
+    }
+
+    private void readRecord(int slot) {
+        ByteBuffer buffer = mBuffer;
+        int base = recordOffset(slot);
+        long lastSeen = buffer.getLong(base);
+        if (lastSeen == 0) {
+            return;
+        }
+        String id = getString(base + ID_OFFSET, MAX_ID_BYTES);
+        String name = getString(base + NAME_OFFSET, MAX_NAME_BYTES);
+        if (id == null || name == null || mSlots.containsKey(id)) {
+            buffer.putLong(base, 0); // corrupt or duplicate; free the record
+            return;
+        }
+        mSlots.put(id, slot);
+        mNames[slot] = name;
+        mFlags[slot] = buffer.getInt(base + 16);
+        mLastSeen[slot] = lastSeen;
+    }
+
+    private int allocateSlot(@NonNull String readerId) {
+        int slot = -1;
+        for (int i = 0; i < MAX_READERS; i++) {
+            if (mLastSeen[i] == 0) {
+                slot = i;
+                break;
+            }
+            if (slot == -1 || mLastSeen[i] < mLastSeen[slot]) {
+                slot = i; // least recently seen so far
+            }
+        }
+        if (mLastSeen[slot] != 0) {
+            mSlots.values().remove(slot);
+        }
+        mSlots.put(readerId, slot);
+        return slot;
+    }
+
+    private void putBytes(int offset, @NonNull byte[] bytes) {
+        mBuffer.putShort(offset, (short) bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            mBuffer.put(offset + 2 + i, bytes[i]);
+        }
+    }
+
+    // null if the length is out of range
+    @Nullable
+    private String getString(int offset, int maxBytes) {
+        int length = mBuffer.getShort(offset);
+        if (length < 0 || length > maxBytes) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = mBuffer.get(offset + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // cuts whole characters off the end until it fits, so we never store half a character
+    @NonNull
+    private static byte[] truncatedUtf8(@NonNull String value, int maxBytes) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        while (bytes.length > maxBytes) {
+            value = value.substring(0, value.offsetByCodePoints(0, value.codePointCount(0, value.length()) - 1));
+            bytes = value.getBytes(StandardCharsets.UTF_8);
+        }
+        return bytes;
+    }
+
+    private static int recordOffset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+}
@@ -14,11 +14,11 @@ import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.gallagher.security.mobileaccess.MobileAccess;
-import com.gallagher.security.mobileaccess.MobileAccessProvider;
 import com.gallagher.security.mobileaccess.SaltoAccessListener;
 import com.gallagher.security.mobileaccess.SaltoAccessResult;
 import com.gallagher.security.mobileaccess.SaltoError;
@@ -29,14 +29,15 @@ import com.gallagher.security.mobileaccess.SaltoUpdateListener;
 import com.gallagher.security.mobileaccess.SdkFeatureState;
 import com.gallagher.security.mobileaccess.SdkFeatureStateListener;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 
-public class SaltoFragment extends Fragment implements SdkFeatureStateListener, TabFragment {
+public class SaltoFragment extends Fragment implements SdkFeatureStateListener {
 
+    // The app finishes setting up the SDK after Application.onCreate, so calls to it go through SdkStartup
     @NonNull
-    private final MobileAccess mMobileAccess = MobileAccessProvider.getInstance();
+    private final SdkStartup mSdk = SdkStartup.getInstance();
 
     @NonNull
     private final SaltoRecyclerViewAdapter mAdapter = new SaltoRecyclerViewAdapter();
@@ -44,9 +45,6 @@ public class SaltoFragment extends Fragment implements SdkFeatureStateListener,
     private View mBannerView;
     private boolean mHasCloudConnectionError = false;
 
-    public String getTitle() { return "Salto Access"; }
-    public int getActionId() { return R.id.action_salto_keys; }
-
     public SaltoFragment() { }
 
     @Override
@@ -59,26 +57,28 @@ public class SaltoFragment extends Fragment implements SdkFeatureStateListener,
 
         mBannerView = view.findViewById(R.id.banner);
         Button bannerRetryButton = view.findViewById(R.id.bannerRetryButton);
-        bannerRetryButton.setOnClickListener(v -> mMobileAccess.syncCredentialItemUpdates());
-
-        mMobileAccess.addSdkFeatureStateListener(this);
-        mMobileAccess.addSaltoUpdateListener(mAdapter);
+        bannerRetryButton.setOnClickListener(v -> CredentialSync.getInstance().requestNow(null));
 
         return view;
     }
 
+    // *********************************************************************************
+    // SdkEventHub only passes on SDK events while the tab is on screen (the pager only resumes
+    // that one). Each time we come back it sends every key it has first, so the list is replaced
+    // with that rather than replaying what changed while it was hidden
+    // *********************************************************************************
     @Override
-    public void onDestroyView() {
-        super.onDestroyView();
-        mMobileAccess.removeSdkFeatureStateListener(this);
-        mMobileAccess.removeSaltoUpdateListener(mAdapter);
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        SdkEventHub hub = SdkEventHub.getInstance();
+        hub.getSdkFeatureStates().subscribe("SaltoFragment", this, () -> this);
+        hub.getSaltoUpdates().subscribe("SaltoFragment", this, mAdapter::newSubscription);
     }
 
     @Override
     public void onResume() {
         super.onResume();
-        mMobileAccess.syncCredentialItemUpdates();
-        updateConnectionErrorBanner();
+        CredentialSync.getInstance().request(null);
     }
 
     @Override
@@ -99,7 +99,7 @@ public class SaltoFragment extends Fragment implements SdkFeatureStateListener,
         Toast.makeText(getContext(), String.format("Unlock using key %s in standard mode", saltoKey.getName()), Toast.LENGTH_SHORT).show();
 
         // if no SaltoOpeningParams passed then SaltoOpeningMode.STANDARD_MODE is used by default
-        mMobileAccess.startOpeningSaltoDoor(saltoKey, new SaltoAccessListener() {
+        mSdk.execute(mobileAccess -> mobileAccess.startOpeningSaltoDoor(saltoKey, new SaltoAccessListener() {
             @Override
             public void onPeripheralFound() {
                 Toast.makeText(getContext(), "Salto door detected", Toast.LENGTH_SHORT).show();
@@ -117,14 +117,14 @@ public class SaltoFragment extends Fragment implements SdkFeatureStateListener,
                     throw new IllegalStateException("Missing result or error from salto access complete callback");
                 }
             }
-        });
+        }));
     }
 
     public void onSaltoUnlockOfficeModeButtonClicked(SaltoKeyIdentifier saltoKey)
     {
         Toast.makeText(getContext(), String.format("Unlock using key %s in office mode", saltoKey.getName()), Toast.LENGTH_SHORT).show();
 
-        mMobileAccess.startOpeningSaltoDoor(saltoKey, new SaltoAccessListener() {
+        mSdk.execute(mobileAccess -> mobileAccess.startOpeningSaltoDoor(saltoKey, new SaltoAccessListener() {
             @Override
             public void onPeripheralFound() {
                 Toast.makeText(getContext(), "Salto door detected", Toast.LENGTH_SHORT).show();
@@ -142,7 +142,7 @@ public class SaltoFragment extends Fragment implements SdkFeatureStateListener,
                     throw new IllegalStateException("Missing result or error from salto access complete callback");
                 }
             }
-        }, new SaltoOpeningParams(SaltoOpeningMode.OFFICE_MODE));
+        }, new SaltoOpeningParams(SaltoOpeningMode.OFFICE_MODE)));
     }
 
     private void updateConnectionErrorBanner() {
@@ -170,10 +170,35 @@ public class SaltoFragment extends Fragment implements SdkFeatureStateListener,
         public @NonNull SaltoKeyIdentifier getSaltoKey() { return mSaltoKey; }
     }
 
-    public class SaltoRecyclerViewAdapter extends RecyclerView.Adapter<SaltoViewHolder> implements SaltoUpdateListener {
+    // Salto keys are identified by their credential and server together
+    private static final DiffUtil.ItemCallback<SaltoKeyIdentifier> SALTO_KEY_DIFF_CALLBACK = new DiffUtil.ItemCallback<SaltoKeyIdentifier>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull SaltoKeyIdentifier oldItem, @NonNull SaltoKeyIdentifier newItem) {
+            return saltoKeyOf(oldItem).equals(saltoKeyOf(newItem));
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull SaltoKeyIdentifier oldItem, @NonNull SaltoKeyIdentifier newItem) {
+            return oldItem.getName().equals(newItem.getName());
+        }
+    };
+
+    @NonNull
+    static List<Object> saltoKeyOf(@NonNull SaltoKeyIdentifier key) {
+        return Arrays.asList(key.getCredentialId(), key.getSaltoServerId());
+    }
+
+    public class SaltoRecyclerViewAdapter extends RecyclerView.Adapter<SaltoViewHolder> {
+
+        // only touched on the SdkEventLoop
+        @NonNull
+        private final KeyedListModel<List<Object>, SaltoKeyIdentifier> mSaltoKeys = new KeyedListModel<>(SaltoFragment::saltoKeyOf);
+
+        @NonNull
+        private final AsyncListDiffer<SaltoKeyIdentifier> mDiffer = new AsyncListDiffer<>(this, SALTO_KEY_DIFF_CALLBACK);
 
         @NonNull
-        private final ArrayList<SaltoKeyIdentifier> mSaltoKeys = new ArrayList<>();
+        private final SnapshotPublisher<List<SaltoKeyIdentifier>> mPublisher = new SnapshotPublisher<>(mDiffer::submitList);
 
         @NonNull
         @Override
@@ -184,7 +209,7 @@ public class SaltoFragment extends Fragment implements SdkFeatureStateListener,
 
         @Override
         public void onBindViewHolder(@NonNull SaltoViewHolder holder, int position) {
-            holder.setSaltoKey(mSaltoKeys.get(position));
+            holder.setSaltoKey(mDiffer.getCurrentList().get(position));
             Button unlockStandardModeButton = holder.itemView.findViewById(R.id.unlock_standard_mode_button);
             unlockStandardModeButton.setOnClickListener(v ->
                     onSaltoUnlockStandardModeButtonClicked(holder.getSaltoKey()));
@@ -196,41 +221,26 @@ public class SaltoFragment extends Fragment implements SdkFeatureStateListener,
 
         @Override
         public int getItemCount() {
-            return mSaltoKeys.size();
+            return mDiffer.getCurrentList().size();
         }
 
-        @Override
-        public void onSaltoKeysUpdated(@NonNull List<SaltoKeyIdentifier> addedOrUpdatedSaltoKeyIdentifiers, @NonNull List<SaltoKeyIdentifier> removedSaltoKeyIdentifiers) {
-            // update our list of Salto Key Identifiers
-            for (SaltoKeyIdentifier saltoKey : addedOrUpdatedSaltoKeyIdentifiers) {
-                int updateIndex = -1;
-                for (int i = 0; i < mSaltoKeys.size(); i++) {
-                    SaltoKeyIdentifier key = mSaltoKeys.get(i);
-                    if (key.getCredentialId().equals(saltoKey.getCredentialId()) && key.getSaltoServerId().equals(saltoKey.getSaltoServerId())) {
-                        updateIndex = i;
-                        break;
-                    }
-                }
-
-                if (updateIndex == -1) {
-                    mSaltoKeys.add(saltoKey);
-                    notifyItemInserted(mSaltoKeys.size() - 1);
-                } else {
-                    mSaltoKeys.set(updateIndex, saltoKey);
-                    notifyItemChanged(updateIndex);
-                }
-            }
-
-            for (SaltoKeyIdentifier removedSaltoKey : removedSaltoKeyIdentifiers) {
-                for (int i = 0; i < mSaltoKeys.size(); i++) {
-                    SaltoKeyIdentifier key = mSaltoKeys.get(i);
-                    if (key.getCredentialId().equals(removedSaltoKey.getCredentialId()) && key.getSaltoServerId().equals(removedSaltoKey.getSaltoServerId())) {
-                        mSaltoKeys.remove(i);
-                        notifyItemRemoved(i);
-                        break;
+        // A listener for one add/remove pair. SdkEventHub delivers in order, with the replay first,
+        // so its first callback is every key the SDK has
+        @NonNull
+        SaltoUpdateListener newSubscription() {
+            boolean[] first = { true }; // only touched on the SdkEventLoop
+            return (addedOrUpdatedSaltoKeyIdentifiers, removedSaltoKeyIdentifiers) -> {
+                // update our list of Salto Key Identifiers off the main thread, then hand the UI a snapshot
+                SdkEventLoop.getInstance().execute(() -> {
+                    boolean changed = first[0]
+                            ? mSaltoKeys.replace(addedOrUpdatedSaltoKeyIdentifiers)
+                            : mSaltoKeys.apply(addedOrUpdatedSaltoKeyIdentifiers, removedSaltoKeyIdentifiers);
+                    first[0] = false;
+                    if (changed) {
+                        mPublisher.publish(mSaltoKeys.snapshot());
                     }
-                }
-            }
+                });
+            };
         }
     }
 }
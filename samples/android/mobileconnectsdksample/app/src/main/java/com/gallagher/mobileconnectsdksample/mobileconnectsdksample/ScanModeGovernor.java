@@ -0,0 +1,192 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+
+import com.gallagher.security.mobileaccess.BluetoothScanMode;
+import com.gallagher.security.mobileaccess.MobileAccess;
+import com.gallagher.security.mobileaccess.MobileAccessState;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+
+// *********************************************************************************
+// Chooses the bluetooth background scan mode (the one the SDK uses while the screen is
+// off) from what the app already knows, rather than leaving it on
+// BACKGROUND_LOW_LATENCY all the time:
+//
+// - no credentials:                               FOREGROUND_ONLY; there's nothing to open
+// - a reader was seen in the last ACTIVE_WINDOW:  BACKGROUND_LOW_LATENCY; we're at a door
+// - a reader was seen in the last NEARBY_WINDOW,
+//   or the app was in the foreground recently:    BACKGROUND_BALANCED
+// - otherwise:                                    BACKGROUND_LOW_POWER
+//
+// Moving to a more responsive mode happens straight away, so the first door is never
+// slow to open. Moving to a less responsive one waits until that has been the right
+// choice for DOWNGRADE_DELAY, so walking past the edge of a reader's range doesn't
+// flip the mode back and forth.
+//
+// All methods must be called on the main thread, like other calls into the SDK, except
+// onReaderSeen which may be called from any thread.
+// *********************************************************************************
+final class ScanModeGovernor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScanModeGovernor.class);
+
+    interface Clock {
+        long elapsedRealtime();
+    }
+
+    static final long ACTIVE_WINDOW_MILLIS = 2 * 60 * 1000;
+    static final long NEARBY_WINDOW_MILLIS = 15 * 60 * 1000;
+    static final long RECENT_FOREGROUND_MILLIS = 5 * 60 * 1000;
+    static final long DOWNGRADE_DELAY_MILLIS = 60 * 1000;
+    static final long TICK_MILLIS = 30 * 1000;
+
+    // least to most responsive; the index is used to compare them
+    private static final BluetoothScanMode[] LADDER = {
+            BluetoothScanMode.FOREGROUND_ONLY,
+            BluetoothScanMode.BACKGROUND_LOW_POWER,
+            BluetoothScanMode.BACKGROUND_BALANCED,
+            BluetoothScanMode.BACKGROUND_LOW_LATENCY,
+    };
+
+    @NonNull private final Clock mClock;
+    @NonNull private final Scheduler mScheduler;
+    @NonNull private final MobileAccess mMobileAccess;
+    @NonNull private final Runnable mTickRunnable = this::tick;
+
+    // signals
+    private volatile long mLastReaderSeen = Long.MIN_VALUE;
+    private volatile boolean mHasCredentials = true; // until the SDK tells us otherwise
+    private boolean mForeground = false;
+    private long mLastForeground = Long.MIN_VALUE;
+
+    @NonNull private volatile BluetoothScanMode mMode;
+    private long mDowngradeWantedSince = -1; // when the desired mode first dropped below mMode, or -1
+    private boolean mStarted = false;
+
+    // scheduler must run things on the main thread
+    ScanModeGovernor(@NonNull Clock clock, @NonNull Scheduler scheduler, @NonNull MobileAccess mobileAccess) {
+        mClock = clock;
+        mScheduler = scheduler;
+        mMobileAccess = mobileAccess;
+        mMode = mobileAccess.getBluetoothBackgroundScanMode();
+    }
+
+    @NonNull
+    BluetoothScanMode getMode() {
+        return mMode;
+    }
+
+    // Applies the right mode now, and re-checks every TICK_MILLIS so downgrades happen as time passes
+    void start() {
+        mStarted = true;
+        tick();
+    }
+
+    void stop() {
+        mStarted = false;
+        mScheduler.removeCallbacks(mTickRunnable);
+    }
+
+    // *********************************************************************************
+    // Signals
+    // *********************************************************************************
+
+    // Call for any ReaderUpdateListener activity. This is called a lot, so it only
+    // touches the scheduler when it might need a more responsive mode
+    void onReaderSeen() {
+        mLastReaderSeen = mClock.elapsedRealtime();
+        if (mHasCredentials && mMode != BluetoothScanMode.BACKGROUND_LOW_LATENCY) {
+            mScheduler.post(this::evaluate);
+        }
+    }
+
+    void onStateChanged(@NonNull Collection<MobileAccessState> states) {
+        boolean hasCredentials = !states.contains(MobileAccessState.ERROR_NO_CREDENTIALS);
+        if (hasCredentials != mHasCredentials) {
+            mHasCredentials = hasCredentials;
+            evaluate();
+        }
+    }
+
+    void onForegroundChanged(boolean foreground) {
+        if (foreground != mForeground) {
+            mForeground = foreground;
+            mLastForeground = mClock.elapsedRealtime();
+            evaluate();
+        }
+    }
+
+    // *********************************************************************************
+    // Policy
+    // *********************************************************************************
+
+    void evaluate() {
+        long now = mClock.elapsedRealtime();
+        BluetoothScanMode desired = desiredMode(now);
+        int comparison = rank(desired) - rank(mMode);
+
+        if (comparison > 0) {
+            apply(desired, "upgrade");
+        } else if (comparison < 0) {
+            if (mDowngradeWantedSince < 0) {
+                mDowngradeWantedSince = now;
+            } else if (now - mDowngradeWantedSince >= DOWNGRADE_DELAY_MILLIS) {
+                apply(desired, "downgrade");
+            }
+        } else {
+            mDowngradeWantedSince = -1;
+        }
+    }
+
+    @NonNull
+    BluetoothScanMode desiredMode(long now) {
+        if (!mHasCredentials) {
+            return BluetoothScanMode.FOREGROUND_ONLY;
+        }
+        long sinceReader = elapsedSince(mLastReaderSeen, now);
+        if (sinceReader < ACTIVE_WINDOW_MILLIS) {
+            return BluetoothScanMode.BACKGROUND_LOW_LATENCY;
+        }
+        long sinceForeground = mForeground ? 0 : elapsedSince(mLastForeground, now);
+        if (sinceReader < NEARBY_WINDOW_MILLIS || sinceForeground < RECENT_FOREGROUND_MILLIS) {
+            return BluetoothScanMode.BACKGROUND_BALANCED;
+        }
+        return BluetoothScanMode.BACKGROUND_LOW_POWER;
+    }
+
+    private void tick() {
+        evaluate();
+        if (mStarted) {
+            mScheduler.removeCallbacks(mTickRunnable);
+            mScheduler.postDelayed(mTickRunnable, TICK_MILLIS);
+        }
+    }
+
+    private void apply(@NonNull BluetoothScanMode mode, @NonNull String reason) {
+        LOG.info("Bluetooth background scan mode {} -> {} ({})", mMode, mode, reason);
+        mMode = mode;
+        mDowngradeWantedSince = -1;
+        mMobileAccess.setBluetoothBackgroundScanMode(mode);
+    }
+
+    private static long elapsedSince(long then, long now) {
+        return then == Long.MIN_VALUE ? Long.MAX_VALUE : now - then;
+    }
+
+    // modes the ladder doesn't use (e.g. set by someone else) count as the least responsive
+    private static int rank(@NonNull BluetoothScanMode mode) {
+        for (int i = 0; i < LADDER.length; i++) {
+            if (LADDER[i] == mode) {
+                return i;
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,43 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import android.os.Handler;
+
+import androidx.annotation.NonNull;
+
+// *********************************************************************************
+// The part of android.os.Handler that timers need, so classes built on it can be
+// driven by a fake clock in JVM unit tests. In the app, use forHandler.
+// *********************************************************************************
+interface Scheduler {
+
+    void postDelayed(@NonNull Runnable task, long delayMillis);
+
+    void removeCallbacks(@NonNull Runnable task);
+
+    default void post(@NonNull Runnable task) {
+        postDelayed(task, 0);
+    }
+
+    @NonNull
+    static Scheduler forHandler(@NonNull Handler handler) {
+        return new Scheduler() {
+            @Override
+            public void postDelayed(@NonNull Runnable task, long delayMillis) {
+                handler.postDelayed(task, delayMillis);
+            }
+
+            @Override
+            public void removeCallbacks(@NonNull Runnable task) {
+                handler.removeCallbacks(task);
+            }
+
+            @Override
+            public void post(@NonNull Runnable task) {
+                handler.post(task);
+            }
+        };
+    }
+}
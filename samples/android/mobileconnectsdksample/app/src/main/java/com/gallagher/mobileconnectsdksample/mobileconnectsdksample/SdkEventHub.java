@@ -0,0 +1,421 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleEventObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.gallagher.security.mobileaccess.DigitalId;
+import com.gallagher.security.mobileaccess.DigitalIdListener;
+import com.gallagher.security.mobileaccess.MobileAccess;
+import com.gallagher.security.mobileaccess.MobileAccessState;
+import com.gallagher.security.mobileaccess.ReaderAttributes;
+import com.gallagher.security.mobileaccess.ReaderUpdateListener;
+import com.gallagher.security.mobileaccess.ReaderUpdateType;
+import com.gallagher.security.mobileaccess.SaltoKeyIdentifier;
+import com.gallagher.security.mobileaccess.SaltoUpdateListener;
+import com.gallagher.security.mobileaccess.SdkFeatureState;
+import com.gallagher.security.mobileaccess.SdkFeatureStateListener;
+import com.gallagher.security.mobileaccess.SdkStateListener;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// *********************************************************************************
+// Registers one listener of each kind with MobileAccess and hands the events on to
+// everything in the app that wants them, so the SDK only ever delivers to one listener
+// per kind however many screens are open.
+//
+// Each kind of event has a Channel. A channel remembers the latest state, and a new
+// subscriber is given it straight away, the way the SDK treats a newly added listener:
+// - SDK states and feature states: the last ones reported
+// - readers: an ATTRIBUTES_CHANGED for every reader that's currently available
+// - Salto keys and Digital IDs: every one we have, as "added"
+//
+// A channel delivers its events one at a time, in the order they happened. Under the
+// channel's lock, an event is queued as the state is updated, and a new subscriber's
+// replay is queued as the state is copied. So a subscriber gets its replay before
+// anything newer, and never gets an event the replay already includes. The lock is never
+// held while a subscriber is called. Whichever thread finds the queue idle delivers it
+// until it's empty: usually the SDK's thread that called us, or the thread that
+// subscribed. Events can therefore arrive on either. A slow subscriber holds up that
+// channel, but not the threads queueing behind it. Each subscriber's callbacks are timed;
+// see describe().
+// *********************************************************************************
+final class SdkEventHub {
+
+    // A read-only copy of one subscriber's dispatch times, in microseconds
+    static final class DispatchStats {
+        final String ChannelName;
+        final String SubscriberName;
+        final long Count;
+        final long P50;
+        final long P99;
+        final long Max;
+
+        DispatchStats(String channel, String subscriber, LatencyHistogram histogram) {
+            ChannelName = channel;
+            SubscriberName = subscriber;
+            Count = histogram.getTotalCount();
+            P50 = histogram.getValueAtPercentile(50);
+            P99 = histogram.getValueAtPercentile(99);
+            Max = histogram.getMax();
+        }
+    }
+
+    private interface Event<L> {
+        void deliver(@NonNull L listener);
+    }
+
+    private interface Replay<L> {
+        // Copies the current state into an event for a new subscriber, or returns null if
+        // there's nothing to give it yet. Called holding the channel's lock
+        @Nullable Event<L> snapshot();
+    }
+
+    private static final class Subscriber<L> {
+        final L Listener;
+        final LatencyHistogram Micros; // guarded by itself; shared by subscribers with the same name
+        volatile boolean Subscribed = true; // events still queued for it once it's unsubscribed are dropped
+
+        Subscriber(L listener, LatencyHistogram micros) {
+            Listener = listener;
+            Micros = micros;
+        }
+    }
+
+    private static final class Delivery<L> {
+        final List<Subscriber<L>> To;
+        final Event<L> Event;
+
+        Delivery(List<Subscriber<L>> to, Event<L> event) {
+            To = to;
+            Event = event;
+        }
+    }
+
+    // *********************************************************************************
+    // One kind of event and the subscribers to it. All methods may be called from any thread
+    // *********************************************************************************
+    static final class Channel<L> {
+
+        @NonNull private final String mName;
+        @NonNull private final Replay<L> mReplay;
+
+        // everything below is guarded by this
+
+        // replaced rather than changed, so a queued event keeps the subscribers it was published to
+        @NonNull private List<Subscriber<L>> mSubscribers = Collections.emptyList();
+        @NonNull private final ArrayDeque<Delivery<L>> mQueue = new ArrayDeque<>();
+        private boolean mDelivering = false; // a thread is emptying mQueue
+        // dispatch times by subscriber name. A fragment subscribes afresh each time it's shown,
+        // so this adds those up, and keeps them after it has unsubscribed
+        @NonNull private final LinkedHashMap<String, LatencyHistogram> mDispatchMicros = new LinkedHashMap<>();
+
+        private Channel(@NonNull String name, @NonNull Replay<L> replay) {
+            mName = name;
+            mReplay = replay;
+        }
+
+        // *********************************************************************************
+        // Until unsubscribe(listener). The replay is delivered before this returns, unless
+        // another thread is delivering this channel's events; then that thread delivers it,
+        // in its place. Either way it's the listener's first callback, unless there's no
+        // state yet, and then its first callback is the SDK's first
+        // *********************************************************************************
+        void subscribe(@NonNull String name, @NonNull L listener) {
+            synchronized (this) {
+                LatencyHistogram micros = mDispatchMicros.get(name);
+                if (micros == null) {
+                    micros = new LatencyHistogram();
+                    mDispatchMicros.put(name, micros);
+                }
+                Subscriber<L> subscriber = new Subscriber<>(listener, micros);
+                ArrayList<Subscriber<L>> subscribers = new ArrayList<>(mSubscribers);
+                subscribers.add(subscriber);
+                mSubscribers = subscribers;
+
+                Event<L> replay = mReplay.snapshot();
+                if (replay == null || !queue(Collections.singletonList(subscriber), replay)) {
+                    return;
+                }
+            }
+            deliverQueued();
+        }
+
+        // The listener gets no more callbacks once this returns, unless another thread is calling it already
+        synchronized void unsubscribe(@NonNull L listener) {
+            for (int i = 0; i < mSubscribers.size(); i++) {
+                Subscriber<L> subscriber = mSubscribers.get(i);
+                if (subscriber.Listener == listener) {
+                    subscriber.Subscribed = false;
+                    ArrayList<Subscriber<L>> subscribers = new ArrayList<>(mSubscribers);
+                    subscribers.remove(i);
+                    mSubscribers = subscribers;
+                    return;
+                }
+            }
+        }
+
+        // *********************************************************************************
+        // Subscribes while owner is resumed; for a fragment, that's while its tab is on screen.
+        // listeners is asked for a new listener each time, so one that treats its first
+        // callback as the whole state (as the Salto and Digital ID tabs do) still can.
+        // Call on the main thread
+        // *********************************************************************************
+        void subscribe(@NonNull String name, @NonNull LifecycleOwner owner, @NonNull Supplier<L> listeners) {
+            owner.getLifecycle().addObserver(new LifecycleEventObserver() {
+                @Nullable private L mListener;
+
+                @Override
+                public void onStateChanged(@NonNull LifecycleOwner source, @NonNull Lifecycle.Event event) {
+                    if (event == Lifecycle.Event.ON_RESUME && mListener == null) {
+                        mListener = listeners.get();
+                        subscribe(name, mListener);
+                    } else if (event == Lifecycle.Event.ON_PAUSE && mListener != null) {
+                        unsubscribe(mListener);
+                        mListener = null;
+                    } else if (event == Lifecycle.Event.ON_DESTROY) {
+                        source.getLifecycle().removeObserver(this);
+                    }
+                }
+            });
+        }
+
+        // Runs update under this channel's lock, and queues event to every subscriber in the same breath
+        private void publish(@NonNull Runnable update, @NonNull Event<L> event) {
+            synchronized (this) {
+                update.run();
+                if (mSubscribers.isEmpty() || !queue(mSubscribers, event)) {
+                    return;
+                }
+            }
+            deliverQueued();
+        }
+
+        // Called holding the lock. Returns true if the caller should deliver the queue, because no other thread is
+        private boolean queue(@NonNull List<Subscriber<L>> to, @NonNull Event<L> event) {
+            mQueue.add(new Delivery<>(to, event));
+            if (mDelivering) {
+                return false;
+            }
+            mDelivering = true;
+            return true;
+        }
+
+        private void deliverQueued() {
+            try {
+                while (true) {
+                    Delivery<L> delivery;
+                    synchronized (this) {
+                        delivery = mQueue.poll();
+                        if (delivery == null) {
+                            mDelivering = false;
+                            return;
+                        }
+                    }
+                    for (Subscriber<L> subscriber : delivery.To) {
+                        if (subscriber.Subscribed) {
+                            deliver(subscriber, delivery.Event);
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                // what's left goes out with the next event
+                synchronized (this) {
+                    mDelivering = false;
+                }
+                throw e;
+            }
+        }
+
+        private void deliver(@NonNull Subscriber<L> subscriber, @NonNull Event<L> event) {
+            long start = System.nanoTime();
+            event.deliver(subscriber.Listener);
+            long micros = (System.nanoTime() - start) / 1000;
+            synchronized (subscriber.Micros) {
+                subscriber.Micros.record(micros);
+            }
+        }
+
+        private synchronized void collectStats(@NonNull List<DispatchStats> out) {
+            for (Map.Entry<String, LatencyHistogram> entry : mDispatchMicros.entrySet()) {
+                LatencyHistogram micros = entry.getValue();
+                synchronized (micros) {
+                    out.add(new DispatchStats(mName, entry.getKey(), micros));
+                }
+            }
+        }
+    }
+
+    private static SdkEventHub sInstance;
+
+    // the latest state, guarded by the channel it belongs to
+    private boolean mIsScanning;
+    @Nullable private Collection<MobileAccessState> mStates; // null until the SDK first reports them
+    @Nullable private Collection<SdkFeatureState> mFeatureStates;
+    @NonNull private final LinkedHashMap<String, ReaderAttributes> mReaders = new LinkedHashMap<>();
+    @NonNull private final KeyedListModel<List<Object>, SaltoKeyIdentifier> mSaltoKeys = new KeyedListModel<>(SaltoFragment::saltoKeyOf);
+    private boolean mSaltoKeysLoaded = false;
+    @NonNull private final KeyedListModel<String, DigitalId> mDigitalIds = new KeyedListModel<>(DigitalId::getId);
+    private boolean mDigitalIdsLoaded = false;
+    @Nullable private Date mDigitalIdsUpdated;
+
+    @NonNull private final Channel<SdkStateListener> mSdkStates = new Channel<>("SdkState", () -> {
+        if (mStates == null) {
+            return null;
+        }
+        boolean isScanning = mIsScanning;
+        Collection<MobileAccessState> states = mStates;
+        return listener -> listener.onStateChanged(isScanning, states);
+    });
+
+    @NonNull private final Channel<SdkFeatureStateListener> mSdkFeatureStates = new Channel<>("SdkFeatureState", () -> {
+        if (mFeatureStates == null) {
+            return null;
+        }
+        Collection<SdkFeatureState> featureStates = mFeatureStates;
+        return listener -> listener.onFeatureStatesChanged(featureStates);
+    });
+
+    @NonNull private final Channel<ReaderUpdateListener> mReaderUpdates = new Channel<>("ReaderUpdate", () -> {
+        if (mReaders.isEmpty()) {
+            return null;
+        }
+        ArrayList<ReaderAttributes> readers = new ArrayList<>(mReaders.values());
+        return listener -> {
+            for (ReaderAttributes reader : readers) {
+                listener.onReaderUpdated(reader, ReaderUpdateType.ATTRIBUTES_CHANGED);
+            }
+        };
+    });
+
+    @NonNull private final Channel<SaltoUpdateListener> mSaltoUpdates = new Channel<>("SaltoUpdate", () -> {
+        if (!mSaltoKeysLoaded) {
+            return null;
+        }
+        List<SaltoKeyIdentifier> keys = mSaltoKeys.snapshot();
+        return listener -> listener.onSaltoKeysUpdated(keys, Collections.emptyList());
+    });
+
+    @NonNull private final Channel<DigitalIdListener> mDigitalIdUpdates = new Channel<>("DigitalId", () -> {
+        if (!mDigitalIdsLoaded) {
+            return null;
+        }
+        List<DigitalId> digitalIds = mDigitalIds.snapshot();
+        Date updated = mDigitalIdsUpdated;
+        return listener -> listener.onDigitalIdUpdated(digitalIds, Collections.emptyList(), updated);
+    });
+
+    @NonNull
+    static synchronized SdkEventHub getInstance() {
+        if (sInstance == null) {
+            sInstance = new SdkEventHub();
+        }
+        return sInstance;
+    }
+
+    // tests make their own; the app uses getInstance()
+    SdkEventHub() { }
+
+    @NonNull Channel<SdkStateListener> getSdkStates() { return mSdkStates; }
+    @NonNull Channel<SdkFeatureStateListener> getSdkFeatureStates() { return mSdkFeatureStates; }
+    @NonNull Channel<ReaderUpdateListener> getReaderUpdates() { return mReaderUpdates; }
+    @NonNull Channel<SaltoUpdateListener> getSaltoUpdates() { return mSaltoUpdates; }
+    @NonNull Channel<DigitalIdListener> getDigitalIdUpdates() { return mDigitalIdUpdates; }
+
+    // *********************************************************************************
+    // Adds our listeners to MobileAccess. Call once, when the SDK is ready; subscribing
+    // before then is fine
+    // *********************************************************************************
+    void start(@NonNull MobileAccess mobileAccess) {
+        mobileAccess.addSdkStateListener(mSdkStateListener);
+        // feature states are only reported when they change, so start from the current ones
+        mSdkFeatureStateListener.onFeatureStatesChanged(mobileAccess.getSdkFeatureStates());
+        mobileAccess.addSdkFeatureStateListener(mSdkFeatureStateListener);
+        mobileAccess.addReaderUpdateListener(mReaderUpdateListener);
+        mobileAccess.addSaltoUpdateListener(mSaltoUpdateListener);
+        mobileAccess.addDigitalIdListener(mDigitalIdListener);
+    }
+
+    @NonNull
+    List<DispatchStats> getDispatchStats() {
+        ArrayList<DispatchStats> result = new ArrayList<>();
+        mSdkStates.collectStats(result);
+        mSdkFeatureStates.collectStats(result);
+        mReaderUpdates.collectStats(result);
+        mSaltoUpdates.collectStats(result);
+        mDigitalIdUpdates.collectStats(result);
+        return result;
+    }
+
+    // One line per subscriber, for the log export
+    @NonNull
+    String describe() {
+        StringBuilder sb = new StringBuilder();
+        for (DispatchStats s : getDispatchStats()) {
+            sb.append(String.format(Locale.US, "%s -> %s: %d dispatches, p50 %dus, p99 %dus, max %dus\n",
+                    s.ChannelName, s.SubscriberName, s.Count, s.P50, s.P99, s.Max));
+        }
+        return sb.toString();
+    }
+
+    // *********************************************************************************
+    // Our listeners. Each updates the latest state and queues the event under its channel's
+    // lock, so the two can't get out of step with a replay
+    // *********************************************************************************
+
+    @NonNull
+    private final SdkStateListener mSdkStateListener = (isScanning, states) -> mSdkStates.publish(() -> {
+        mIsScanning = isScanning;
+        mStates = states;
+    }, listener -> listener.onStateChanged(isScanning, states));
+
+    @NonNull
+    private final SdkFeatureStateListener mSdkFeatureStateListener = new SdkFeatureStateListener() {
+        @Override
+        public void onFeatureStatesChanged(@NonNull Collection<SdkFeatureState> featureStates) {
+            mSdkFeatureStates.publish(() -> mFeatureStates = featureStates, listener -> listener.onFeatureStatesChanged(featureStates));
+        }
+
+        @Override
+        public void onFeatureError(@NonNull Error error) {
+            // errors aren't state; nothing to remember
+            mSdkFeatureStates.publish(() -> { }, listener -> listener.onFeatureError(error));
+        }
+    };
+
+    @NonNull
+    private final ReaderUpdateListener mReaderUpdateListener = (reader, updateType) -> mReaderUpdates.publish(() -> {
+        if (updateType == ReaderUpdateType.READER_UNAVAILABLE) {
+            mReaders.remove(reader.getId());
+        } else {
+            mReaders.put(reader.getId(), reader);
+        }
+    }, listener -> listener.onReaderUpdated(reader, updateType));
+
+    @NonNull
+    private final SaltoUpdateListener mSaltoUpdateListener = (addedOrUpdated, removed) -> mSaltoUpdates.publish(() -> {
+        mSaltoKeys.apply(addedOrUpdated, removed);
+        mSaltoKeysLoaded = true;
+    }, listener -> listener.onSaltoKeysUpdated(addedOrUpdated, removed));
+
+    @NonNull
+    private final DigitalIdListener mDigitalIdListener = (addedOrUpdated, removed, lastUpdateTime) -> mDigitalIdUpdates.publish(() -> {
+        mDigitalIds.apply(addedOrUpdated, removed);
+        mDigitalIdsLoaded = true;
+        mDigitalIdsUpdated = lastUpdateTime;
+    }, listener -> listener.onDigitalIdUpdated(addedOrUpdated, removed, lastUpdateTime));
+}
@@ -0,0 +1,69 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.Executor;
+
+// *********************************************************************************
+// A single background thread that owns all of the list state built from SDK callbacks.
+// Listener callbacks hop onto this thread, do their merge/index work here, and publish
+// an immutable snapshot for the UI (see SnapshotPublisher). Because only this thread
+// touches the models, it doesn't matter which thread the SDK calls us back on.
+// *********************************************************************************
+final class SdkEventLoop implements Executor {
+
+    private static SdkEventLoop sInstance;
+
+    @NonNull private final Handler mHandler;
+
+    private SdkEventLoop() {
+        HandlerThread thread = new HandlerThread("SdkEventLoop", Process.THREAD_PRIORITY_DISPLAY);
+        thread.start();
+        mHandler = new Handler(thread.getLooper());
+    }
+
+    @NonNull
+    static synchronized SdkEventLoop getInstance() {
+        if (sInstance == null) {
+            sInstance = new SdkEventLoop();
+        }
+        return sInstance;
+    }
+
+    @NonNull
+    Handler getHandler() {
+        return mHandler;
+    }
+
+    @NonNull
+    Looper getLooper() {
+        return mHandler.getLooper();
+    }
+
+    boolean isCurrentThread() {
+        return mHandler.getLooper().getThread() == Thread.currentThread();
+    }
+
+    // Always queues, so tasks run in the order they were posted
+    @Override
+    public void execute(@NonNull Runnable task) {
+        mHandler.post(task);
+    }
+
+    // Runs straight away if we're already on the loop, otherwise queues it
+    void run(@NonNull Runnable task) {
+        if (isCurrentThread()) {
+            task.run();
+        } else {
+            mHandler.post(task);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.gallagher.security.mobileaccess.MobileAccess;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+
+// *********************************************************************************
+// Holds the app's own SDK setup (settings, listeners, the scan mode governor and so
+// on) until Application.onCreate has returned, so it doesn't add to the time before
+// the first frame.
+//
+// MobileAccessProvider.configure itself still runs in Application.onCreate, on the
+// main thread. The SDK's NFC and bluetooth background services can be started in a
+// cold process as soon as onCreate returns, and they need the SDK configured by then.
+//
+// Code that needs the SDK passes a Call to execute() instead of holding on to
+// MobileAccessProvider.getInstance(). Calls made before the SDK is ready are queued and
+// run in the order they were made once it is; after that they run straight away.
+// Calls always run on the main thread.
+// *********************************************************************************
+final class SdkStartup {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SdkStartup.class);
+
+    interface Call {
+        void run(@NonNull MobileAccess mobileAccess);
+    }
+
+    private static SdkStartup sInstance;
+
+    @NonNull private final Scheduler mMainScheduler;
+    @NonNull private final CompletableFuture<MobileAccess> mReady = new CompletableFuture<>();
+
+    // guarded by this. mMobileAccess is only set once the queue has been replayed,
+    // so a new call can't overtake one that was queued before it
+    @NonNull private final ArrayList<Call> mQueue = new ArrayList<>();
+    @Nullable private MobileAccess mMobileAccess;
+    private boolean mStarted = false;
+
+    @NonNull
+    static synchronized SdkStartup getInstance() {
+        if (sInstance == null) {
+            sInstance = new SdkStartup(Scheduler.forHandler(new Handler(Looper.getMainLooper())));
+        }
+        return sInstance;
+    }
+
+    // mainScheduler runs things on the main thread; tests pass their own
+    SdkStartup(@NonNull Scheduler mainScheduler) {
+        mMainScheduler = mainScheduler;
+    }
+
+    // *********************************************************************************
+    // Call once, from Application.onCreate, with what MobileAccessProvider.configure returned.
+    // The calls queued so far run from the main thread's queue, after onCreate has returned
+    // *********************************************************************************
+    void start(@NonNull MobileAccess mobileAccess) {
+        synchronized (this) {
+            if (mStarted) {
+                throw new IllegalStateException("The SDK has already been started");
+            }
+            mStarted = true;
+        }
+        mMainScheduler.post(() -> replay(mobileAccess));
+    }
+
+    // Completes on the main thread once the SDK is configured and every queued call has run
+    @NonNull
+    CompletableFuture<MobileAccess> getReady() {
+        return mReady;
+    }
+
+    @Nullable
+    synchronized MobileAccess getIfReady() {
+        return mMobileAccess;
+    }
+
+    // May be called from any thread
+    void execute(@NonNull Call call) {
+        MobileAccess mobileAccess;
+        synchronized (this) {
+            mobileAccess = mMobileAccess;
+            if (mobileAccess == null) {
+                mQueue.add(call);
+                return;
+            }
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            call.run(mobileAccess);
+        } else {
+            mMainScheduler.post(() -> call.run(mobileAccess));
+        }
+    }
+
+    private void replay(@NonNull MobileAccess mobileAccess) {
+        StartupTrace.begin("SdkStartup queued calls");
+        int replayed = 0;
+        while (true) {
+            ArrayList<Call> calls;
+            synchronized (this) {
+                if (mQueue.isEmpty()) {
+                    // calls queued while we were replaying have run too; from now on calls run directly
+                    mMobileAccess = mobileAccess;
+                    break;
+                }
+                calls = new ArrayList<>(mQueue);
+                mQueue.clear();
+            }
+            for (Call call : calls) {
+                call.run(mobileAccess);
+            }
+            replayed += calls.size();
+        }
+        StartupTrace.end();
+        LOG.debug("Replayed {} calls queued before the SDK was ready", replayed);
+        mReady.complete(mobileAccess);
+    }
+}
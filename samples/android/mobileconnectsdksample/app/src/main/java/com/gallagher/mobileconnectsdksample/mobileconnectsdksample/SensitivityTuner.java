@@ -0,0 +1,297 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import android.content.Context;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.gallagher.security.mobileaccess.AccessResult;
+import com.gallagher.security.mobileaccess.AutomaticAccessListener;
+import com.gallagher.security.mobileaccess.BluetoothConnectionSensitivity;
+import com.gallagher.security.mobileaccess.MobileAccess;
+import com.gallagher.security.mobileaccess.Reader;
+import com.gallagher.security.mobileaccess.ReaderConnectionError;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Locale;
+
+// *********************************************************************************
+// Picks the BluetoothConnectionSensitivity for this phone from how its automatic
+// connections have actually gone, instead of leaving every model on the SDK default.
+//
+// When automatic access starts we note how far inside the reader's auto connect path
+// loss the phone was (the margin), and when it completes we count it against one of
+// three margin bands, as a success or as a link failure (the reader going away, the
+// connection being closed, or an unexpected error). Other errors, such as Forbidden or
+// SecondFactorRequired, say nothing about the radio and aren't counted.
+//
+// If attempts made right at the edge of range fail noticeably more often than ones made
+// well inside it, the phone is connecting too early, and we step down to LOW and then
+// VERY_LOW so it waits until it's closer. Counts fade with every attempt, so once the
+// edge hasn't been tried for a while we no longer trust what we knew about it and step
+// back up to find out again. Changes are at least MIN_ATTEMPTS_BETWEEN_CHANGES apart.
+//
+// The model is a few numbers, kept in a small memory-mapped file tagged with Build.MODEL
+// (so it isn't carried over to a different phone by a backup restore), and updated in
+// place after each attempt. Callbacks may arrive on any thread.
+// *********************************************************************************
+final class SensitivityTuner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SensitivityTuner.class);
+
+    // most to least sensitive; the index is the level stored in the file
+    private static final BluetoothConnectionSensitivity[] LEVELS = {
+            BluetoothConnectionSensitivity.NORMAL,
+            BluetoothConnectionSensitivity.LOW,
+            BluetoothConnectionSensitivity.VERY_LOW,
+    };
+
+    // band 0 is the first BAND_WIDTH_DB inside the auto connect path loss, band 1 the next, band 2 everything deeper.
+    // Each sensitivity level moves the connection point in by about one band
+    static final int BANDS = 3;
+    static final double BAND_WIDTH_DB = 2.5;
+
+    // each attempt multiplies every count by this, giving a half life of about 69 attempts
+    private static final float DECAY = 0.99f;
+    // a band with less weight than this is treated as unknown
+    private static final float MIN_EVIDENCE = 3f;
+    // how much higher a band's failure rate may be than the deepest band's before we stop connecting there
+    private static final float TOLERANCE = 0.1f;
+    // failure rates are pulled towards this by PRIOR_ATTEMPTS pretend attempts, so one failure isn't 100%
+    private static final float PRIOR_FAILURE_RATE = 0.05f;
+    private static final float PRIOR_ATTEMPTS = 2f;
+    private static final int MIN_ATTEMPTS_BETWEEN_CHANGES = 8;
+
+    private static final String FILE_NAME = "connection_sensitivity.bin";
+    private static final int MAGIC = 0x47435331; // "GCS1"
+    private static final int VERSION = 1;
+
+    // layout: magic, version, Build.MODEL hash, level, attempts since the last change (ints),
+    // then attempts and failures (floats) for each band
+    private static final int MODEL_OFFSET = 8;
+    private static final int LEVEL_OFFSET = 12;
+    private static final int SINCE_CHANGE_OFFSET = 16;
+    private static final int BANDS_OFFSET = 20;
+    private static final int FILE_SIZE = BANDS_OFFSET + BANDS * 8;
+
+    private static SensitivityTuner sInstance;
+
+    @NonNull private final File mFile;
+    private final int mModelHash; // Build.MODEL's
+    @Nullable private MappedByteBuffer mBuffer; // null if the file couldn't be mapped; we still tune, but forget on restart
+
+    // guarded by this
+    @NonNull private final float[] mAttempts = new float[BANDS];
+    @NonNull private final float[] mFailures = new float[BANDS];
+    @NonNull private final HashMap<String, Double> mMargins = new HashMap<>(); // at onAccessStarted, keyed by reader ID
+    private int mLevel = 0;
+    private int mSinceChange = 0;
+
+    @NonNull
+    static synchronized SensitivityTuner getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new SensitivityTuner(new File(context.getApplicationContext().getFilesDir(), FILE_NAME), Build.MODEL.hashCode());
+        }
+        return sInstance;
+    }
+
+    // the model is thrown away unless it was saved with the same modelHash
+    SensitivityTuner(@NonNull File file, int modelHash) {
+        mFile = file;
+        mModelHash = modelHash;
+        open();
+    }
+
+    @NonNull
+    synchronized BluetoothConnectionSensitivity getSensitivity() {
+        return LEVELS[mLevel];
+    }
+
+    // *********************************************************************************
+    // Applies what we've learned so far; call once the SDK is ready, then register
+    // getAutomaticAccessListener() to keep learning
+    // *********************************************************************************
+    void apply(@NonNull MobileAccess mobileAccess) {
+        BluetoothConnectionSensitivity sensitivity = getSensitivity();
+        LOG.info("Bluetooth connection sensitivity for {}: {}", Build.MODEL, sensitivity);
+        mobileAccess.setBluetoothConnectionSensitivity(sensitivity);
+    }
+
+    @NonNull
+    AutomaticAccessListener getAutomaticAccessListener() {
+        return mAutomaticAccessListener;
+    }
+
+    @NonNull
+    private final AutomaticAccessListener mAutomaticAccessListener = new AutomaticAccessListener() {
+        @Override
+        public void onReturnToReaderRequired(Reader reader) { }
+
+        @Override
+        public void onReturnedToReader(Reader reader) { }
+
+        @Override
+        public void onAccessStarted(@NonNull Reader reader) {
+            accessStarted(reader.getId(), reader.getAutoConnectPathLoss() - reader.getMeasuredPathLoss());
+        }
+
+        @Override
+        public void onAccessCompleted(@NonNull Reader reader, @Nullable AccessResult accessResult, @Nullable ReaderConnectionError error) {
+            BluetoothConnectionSensitivity changed;
+            if (error == null) {
+                changed = accessCompleted(reader.getId(), false);
+            } else if (isLinkFailure(error)) {
+                changed = accessCompleted(reader.getId(), true);
+            } else {
+                forget(reader.getId());
+                return;
+            }
+            if (changed != null) {
+                SdkStartup.getInstance().execute(mobileAccess -> mobileAccess.setBluetoothConnectionSensitivity(changed));
+            }
+        }
+    };
+
+    // One line for the log export
+    @NonNull
+    synchronized String describe() {
+        StringBuilder sb = new StringBuilder(String.format(Locale.US, "%s, %d attempts since the last change;", LEVELS[mLevel], mSinceChange));
+        for (int band = 0; band < BANDS; band++) {
+            sb.append(String.format(Locale.US, " band %d: %.1f failed of %.1f", band, mFailures[band], mAttempts[band]));
+        }
+        return sb.toString();
+    }
+
+    // *********************************************************************************
+    // Model
+    // *********************************************************************************
+
+    synchronized void accessStarted(@NonNull String readerId, double margin) {
+        mMargins.put(readerId, margin);
+    }
+
+    private synchronized void forget(@NonNull String readerId) {
+        mMargins.remove(readerId);
+    }
+
+    // Returns the new sensitivity if this attempt changed it, otherwise null
+    @Nullable
+    synchronized BluetoothConnectionSensitivity accessCompleted(@NonNull String readerId, boolean failed) {
+        Double margin = mMargins.remove(readerId);
+        if (margin == null) {
+            return null; // we never saw it start
+        }
+        int band = bandOf(margin);
+        for (int i = 0; i < BANDS; i++) {
+            mAttempts[i] *= DECAY;
+            mFailures[i] *= DECAY;
+        }
+        mAttempts[band] += 1;
+        if (failed) {
+            mFailures[band] += 1;
+        }
+        mSinceChange++;
+
+        BluetoothConnectionSensitivity changed = null;
+        int level = chooseLevel();
+        if (level != mLevel && mSinceChange >= MIN_ATTEMPTS_BETWEEN_CHANGES) {
+            LOG.info("Bluetooth connection sensitivity {} -> {} ({})", LEVELS[mLevel], LEVELS[level], describe());
+            mLevel = level;
+            mSinceChange = 0;
+            changed = LEVELS[level];
+        }
+        save();
+        return changed;
+    }
+
+    // The most sensitive level whose edge band doesn't fail noticeably more than the deepest band.
+    // Bands we don't know enough about get the benefit of the doubt, so we go and find out
+    private int chooseLevel() {
+        float baseline = failureRate(BANDS - 1);
+        for (int level = 0; level < LEVELS.length - 1; level++) {
+            if (mAttempts[level] < MIN_EVIDENCE || failureRate(level) <= baseline + TOLERANCE) {
+                return level;
+            }
+        }
+        return LEVELS.length - 1;
+    }
+
+    private float failureRate(int band) {
+        return (mFailures[band] + PRIOR_FAILURE_RATE * PRIOR_ATTEMPTS) / (mAttempts[band] + PRIOR_ATTEMPTS);
+    }
+
+    static int bandOf(double margin) {
+        if (margin < BAND_WIDTH_DB) {
+            return 0; // including negative margins, where the SDK connected a little outside the threshold
+        }
+        return margin < 2 * BAND_WIDTH_DB ? 1 : 2;
+    }
+
+    private static boolean isLinkFailure(@NonNull ReaderConnectionError error) {
+        return error instanceof ReaderConnectionError.ReaderUnavailable
+                || error instanceof ReaderConnectionError.RemoteClose
+                || error instanceof ReaderConnectionError.Unexpected;
+    }
+
+    // *********************************************************************************
+    // Storage
+    // *********************************************************************************
+
+    private void open() {
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            if (file.length() != FILE_SIZE) {
+                file.setLength(0);
+                file.setLength(FILE_SIZE);
+            }
+            // the mapping stays valid after the channel is closed
+            mBuffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+        } catch (IOException e) {
+            LOG.warn("Can't map the connection sensitivity file; tuning will start again next time", e);
+            mBuffer = null;
+            return;
+        }
+
+        MappedByteBuffer buffer = mBuffer;
+        int level = buffer.getInt(LEVEL_OFFSET);
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(MODEL_OFFSET) != mModelHash
+                || level < 0 || level >= LEVELS.length) {
+            save(); // start again from NORMAL
+            return;
+        }
+        mLevel = level;
+        mSinceChange = buffer.getInt(SINCE_CHANGE_OFFSET);
+        for (int band = 0; band < BANDS; band++) {
+            mAttempts[band] = buffer.getFloat(BANDS_OFFSET + band * 8);
+            mFailures[band] = buffer.getFloat(BANDS_OFFSET + band * 8 + 4);
+        }
+        LOG.debug("Loaded connection sensitivity model: {}", describe());
+    }
+
+    private void save() {
+        MappedByteBuffer buffer = mBuffer;
+        if (buffer == null) {
+            return;
+        }
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(MODEL_OFFSET, mModelHash);
+        buffer.putInt(LEVEL_OFFSET, mLevel);
+        buffer.putInt(SINCE_CHANGE_OFFSET, mSinceChange);
+        for (int band = 0; band < BANDS; band++) {
+            buffer.putFloat(BANDS_OFFSET + band * 8, mAttempts[band]);
+            buffer.putFloat(BANDS_OFFSET + band * 8 + 4, mFailures[band]);
+        }
+    }
+}
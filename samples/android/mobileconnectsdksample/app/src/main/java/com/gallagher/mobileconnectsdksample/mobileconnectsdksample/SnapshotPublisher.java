@@ -0,0 +1,62 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+// *********************************************************************************
+// Hands immutable snapshots from a background thread to the main thread.
+// Only the latest snapshot matters, so if several are published before the main thread
+// gets to them, the UI swaps straight to the newest one and the rest are skipped.
+// At most one main-thread post is outstanding at a time.
+// *********************************************************************************
+class SnapshotPublisher<T> {
+
+    @NonNull private final Scheduler mMainScheduler;
+    @NonNull private final AtomicReference<T> mPending = new AtomicReference<>();
+    @NonNull private final Consumer<T> mConsumer;
+    @NonNull private final Runnable mDeliverRunnable = this::deliver;
+    private volatile boolean mClosed = false;
+
+    // consumer is always called on the main thread
+    SnapshotPublisher(@NonNull Consumer<T> consumer) {
+        this(Scheduler.forHandler(new Handler(Looper.getMainLooper())), consumer);
+    }
+
+    // mainScheduler must run things on the main thread; tests pass their own
+    SnapshotPublisher(@NonNull Scheduler mainScheduler, @NonNull Consumer<T> consumer) {
+        mMainScheduler = mainScheduler;
+        mConsumer = consumer;
+    }
+
+    // may be called from any thread
+    void publish(@NonNull T snapshot) {
+        if (mClosed) {
+            return;
+        }
+        if (mPending.getAndSet(snapshot) == null) {
+            mMainScheduler.post(mDeliverRunnable);
+        }
+    }
+
+    // Drops anything not yet delivered and ignores future snapshots, e.g. once the view is gone
+    void close() {
+        mClosed = true;
+        mMainScheduler.removeCallbacks(mDeliverRunnable);
+        mPending.set(null);
+    }
+
+    private void deliver() {
+        T snapshot = mPending.getAndSet(null);
+        if (snapshot != null && !mClosed) {
+            mConsumer.accept(snapshot);
+        }
+    }
+}
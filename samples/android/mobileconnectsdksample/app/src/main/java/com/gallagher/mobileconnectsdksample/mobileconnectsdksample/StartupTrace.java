@@ -0,0 +1,178 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import android.content.Context;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+
+import androidx.annotation.NonNull;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// *********************************************************************************
+// Times the named phases of app startup (SDK configuration, logging setup and so on).
+//
+// Wrap each phase in begin()/end(); phases can nest. Each section is also passed to
+// android.os.Trace, so it shows up in a system trace. Once the first frame is up, call
+// finish() and the sections are written to a small binary file, which the
+// "Startup Trace" menu item reads back.
+//
+// All times are relative to the start of the process. Main thread only.
+// *********************************************************************************
+final class StartupTrace {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StartupTrace.class);
+
+    private static final String FILE_NAME = "startup.trace";
+    private static final int MAGIC = 0x47535431; // "GST1"
+    private static final int MAX_SECTIONS = 32;
+
+    static final class Section {
+        final String Name;
+        final int Depth; // 0 for a top-level phase
+        final long StartMicros; // since the process started
+        final long DurationMicros;
+
+        Section(String name, int depth, long startMicros, long durationMicros) {
+            Name = name;
+            Depth = depth;
+            StartMicros = startMicros;
+            DurationMicros = durationMicros;
+        }
+    }
+
+    // fixed size, so tracing never allocates in the middle of what it's measuring
+    private static final String[] sNames = new String[MAX_SECTIONS];
+    private static final int[] sDepths = new int[MAX_SECTIONS];
+    private static final long[] sStarts = new long[MAX_SECTIONS];
+    private static final long[] sEnds = new long[MAX_SECTIONS];
+    private static final int[] sOpen = new int[MAX_SECTIONS]; // stack of sections begun but not ended
+    private static int sCount = 0;
+    private static int sOpenCount = 0;
+    // begins we ignored (out of room, or already finished) that haven't been ended yet. They're
+    // always nested inside the sections we did record, so end() matches them off first
+    private static int sIgnoredCount = 0;
+    private static boolean sFinished = false;
+
+    private StartupTrace() { }
+
+    static void begin(@NonNull String name) {
+        if (sFinished || sCount == MAX_SECTIONS) {
+            sIgnoredCount++;
+            return;
+        }
+        Trace.beginSection(name);
+        sNames[sCount] = name;
+        sDepths[sCount] = sOpenCount;
+        sStarts[sCount] = SystemClock.elapsedRealtimeNanos();
+        sOpen[sOpenCount++] = sCount++;
+    }
+
+    static void end() {
+        if (sIgnoredCount > 0) {
+            sIgnoredCount--; // so was its android.os.Trace section
+            return;
+        }
+        if (sOpenCount == 0) {
+            return; // unbalanced, or the section was closed by finish()
+        }
+        sEnds[sOpen[--sOpenCount]] = SystemClock.elapsedRealtimeNanos();
+        Trace.endSection();
+    }
+
+    // *********************************************************************************
+    // Stops tracing and writes the file, off the main thread. Only the first call does anything
+    // *********************************************************************************
+    static void finish(@NonNull Context context) {
+        if (sFinished) {
+            return;
+        }
+        sFinished = true;
+        while (sOpenCount > 0) {
+            end();
+        }
+
+        long processStartNanos = Process.getStartElapsedRealtime() * 1_000_000L;
+        ArrayList<Section> sections = new ArrayList<>(sCount + 1);
+        // how long Android took to get as far as our code
+        if (sCount > 0) {
+            sections.add(new Section("process start", 0, 0, (sStarts[0] - processStartNanos) / 1000));
+        }
+        for (int i = 0; i < sCount; i++) {
+            sections.add(new Section(sNames[i], sDepths[i], (sStarts[i] - processStartNanos) / 1000, (sEnds[i] - sStarts[i]) / 1000));
+        }
+
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        SdkEventLoop.getInstance().execute(() -> write(file, sections));
+    }
+
+    // The sections from the last startup, or an empty list if there's no trace
+    @NonNull
+    static List<Section> read(@NonNull Context context) {
+        ArrayList<Section> sections = new ArrayList<>();
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        if (!file.exists()) {
+            return sections;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return sections;
+            }
+            int count = in.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                int depth = in.readUnsignedByte();
+                long start = in.readLong();
+                long duration = in.readLong();
+                sections.add(new Section(name, depth, start, duration));
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to read the startup trace", e);
+            sections.clear();
+        }
+        return sections;
+    }
+
+    private static void write(@NonNull File file, @NonNull List<Section> sections) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(sections.size());
+            for (Section section : sections) {
+                out.writeUTF(section.Name);
+                out.writeByte(section.Depth);
+                out.writeLong(section.StartMicros);
+                out.writeLong(section.DurationMicros);
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to write the startup trace", e);
+            return;
+        }
+        for (Section section : sections) {
+            LOG.debug("Startup: {}{} took {}us", repeat("  ", section.Depth), section.Name, section.DurationMicros);
+        }
+    }
+
+    @NonNull
+    static String repeat(@NonNull String value, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+}
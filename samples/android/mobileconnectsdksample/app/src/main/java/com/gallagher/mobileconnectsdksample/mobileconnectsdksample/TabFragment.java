@@ -1,9 +0,0 @@
-//
-// Copyright Gallagher Group Ltd 2024 All Rights Reserved
-//
-package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
-
-public interface TabFragment {
-    public String getTitle();
-    public int getActionId();
-}
\ No newline at end of file
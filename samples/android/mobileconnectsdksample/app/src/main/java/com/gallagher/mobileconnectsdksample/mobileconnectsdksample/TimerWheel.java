@@ -0,0 +1,160 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+// *********************************************************************************
+// A hashed timer wheel for short, frequently replaced timeouts that are keyed by
+// something (e.g. a reader ID).
+//
+// Each key has at most one pending timeout; scheduling it again replaces the old one,
+// so a stale timeout can never fire on top of a newer one. Instead of posting one
+// Runnable per timeout, a single tick runs on the scheduler at most once per tick
+// interval, and only while something is pending.
+//
+// All methods must be called on the scheduler's thread.
+// *********************************************************************************
+class TimerWheel<K> {
+
+    interface Clock {
+        long uptimeMillis();
+    }
+
+    interface ExpiryListener<K> {
+        void onExpired(@NonNull K key);
+    }
+
+    private static final class Timeout<K> {
+        final K Key;
+        final long Deadline;
+        boolean Cancelled = false;
+
+        Timeout(K key, long deadline) {
+            Key = key;
+            Deadline = deadline;
+        }
+    }
+
+    private final long mTickMillis;
+    @NonNull private final ArrayList<Timeout<K>>[] mSlots;
+    @NonNull private final HashMap<K, Timeout<K>> mPending = new HashMap<>();
+
+    @NonNull private final Clock mClock;
+    @NonNull private final Scheduler mScheduler;
+    @NonNull private final ExpiryListener<K> mListener;
+    @NonNull private final Runnable mTickRunnable = this::tick;
+
+    private long mLastTick; // the last tick number whose slot has been processed
+    private boolean mTickScheduled = false;
+
+    // the wheel covers tickMillis * slotCount; longer timeouts just go around more than once
+    @SuppressWarnings("unchecked")
+    TimerWheel(long tickMillis, int slotCount, @NonNull Clock clock, @NonNull Scheduler scheduler, @NonNull ExpiryListener<K> listener) {
+        if (tickMillis <= 0 || slotCount <= 0) {
+            throw new IllegalArgumentException("tickMillis and slotCount must be positive");
+        }
+        mTickMillis = tickMillis;
+        mSlots = new ArrayList[slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            mSlots[i] = new ArrayList<>();
+        }
+        mClock = clock;
+        mScheduler = scheduler;
+        mListener = listener;
+        mLastTick = clock.uptimeMillis() / tickMillis;
+    }
+
+    int getPendingCount() {
+        return mPending.size();
+    }
+
+    // Schedules key to expire after delayMillis, replacing any timeout it already has
+    void schedule(@NonNull K key, long delayMillis) {
+        cancel(key);
+
+        long deadline = mClock.uptimeMillis() + Math.max(0, delayMillis);
+        // round up, so a timeout never fires before its deadline
+        long deadlineTick = Math.max((deadline + mTickMillis - 1) / mTickMillis, mLastTick + 1);
+
+        Timeout<K> timeout = new Timeout<>(key, deadline);
+        mSlots[(int) (deadlineTick % mSlots.length)].add(timeout);
+        mPending.put(key, timeout);
+
+        scheduleTick();
+    }
+
+    // Cancelled timeouts are left in their slot and dropped the next time the wheel passes over it
+    void cancel(@NonNull K key) {
+        Timeout<K> timeout = mPending.remove(key);
+        if (timeout != null) {
+            timeout.Cancelled = true;
+        }
+    }
+
+    void cancelAll() {
+        for (ArrayList<Timeout<K>> slot : mSlots) {
+            slot.clear();
+        }
+        mPending.clear();
+        mScheduler.removeCallbacks(mTickRunnable);
+        mTickScheduled = false;
+    }
+
+    // *********************************************************************************
+    // Processes every slot between the last tick and now, firing anything whose deadline
+    // has passed. Normally run by the scheduler, but can be called directly (e.g. with a fake clock)
+    // *********************************************************************************
+    void tick() {
+        mTickScheduled = false;
+
+        long now = mClock.uptimeMillis();
+        long currentTick = now / mTickMillis;
+
+        // if we've fallen more than a whole revolution behind, one pass over every slot is enough
+        long firstTick = Math.max(mLastTick + 1, currentTick - mSlots.length + 1);
+
+        ArrayList<Timeout<K>> expired = new ArrayList<>();
+        for (long t = firstTick; t <= currentTick; t++) {
+            ArrayList<Timeout<K>> slot = mSlots[(int) (t % mSlots.length)];
+            for (int i = slot.size() - 1; i >= 0; i--) {
+                Timeout<K> timeout = slot.get(i);
+                if (timeout.Cancelled || timeout.Deadline <= now) {
+                    // swap-remove; order within a slot doesn't matter
+                    slot.set(i, slot.get(slot.size() - 1));
+                    slot.remove(slot.size() - 1);
+                    if (!timeout.Cancelled) {
+                        expired.add(timeout);
+                    }
+                }
+            }
+        }
+        mLastTick = Math.max(mLastTick, currentTick);
+
+        // listeners may schedule new timeouts, so finish with the wheel before calling them
+        for (Timeout<K> timeout : expired) {
+            mPending.remove(timeout.Key);
+        }
+        for (Timeout<K> timeout : expired) {
+            mListener.onExpired(timeout.Key);
+        }
+
+        scheduleTick();
+    }
+
+    private void scheduleTick() {
+        if (mTickScheduled || mPending.isEmpty()) {
+            return;
+        }
+        mTickScheduled = true;
+
+        // line up with the next tick boundary
+        long now = mClock.uptimeMillis();
+        long nextTickAt = (now / mTickMillis + 1) * mTickMillis;
+        mScheduler.postDelayed(mTickRunnable, nextTickAt - now);
+    }
+}
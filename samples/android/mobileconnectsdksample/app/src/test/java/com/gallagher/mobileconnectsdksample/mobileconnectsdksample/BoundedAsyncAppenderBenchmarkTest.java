@@ -0,0 +1,138 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.Appender;
+import ch.qos.logback.core.FileAppender;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// *********************************************************************************
+// How long the logging thread spends in the file appender for each event: the file
+// appender on its own (how the app used to log) against BoundedAsyncAppender in front
+// of it. Events come in bursts with gaps between them, as they do in the app.
+// *********************************************************************************
+public class BoundedAsyncAppenderBenchmarkTest {
+
+    private static final String OLD_PATTERN = "%d{dd:MM:yy HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n";
+    private static final int BURST = 50; // well inside the queue, so nothing waits for space
+    private static final int WARM_UP_BURSTS = 200;
+    private static final int BURSTS = 400;
+    // a regression to writing on the logging thread would put the async median back near the sync one
+    private static final double MAX_ASYNC_TO_SYNC_MEDIAN = 0.5;
+
+    private File mDir;
+    private LoggerContext mContext;
+    private Logger mLogger;
+
+    @Before
+    public void setUp() throws Exception {
+        mDir = Files.createTempDirectory("log-benchmark").toFile();
+        mContext = new LoggerContext();
+        mLogger = mContext.getLogger("com.gallagher.mobileconnectsdksample.mobileconnectsdksample.ReadersFragment");
+    }
+
+    @After
+    public void tearDown() {
+        mContext.stop();
+        File[] files = mDir.listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            files[i].delete();
+        }
+        mDir.delete();
+    }
+
+    @Test
+    public void asyncAppenderKeepsFileWritesOffTheLoggingThread() throws Exception {
+        FileAppender<ILoggingEvent> sync = newFileAppender("sync.log");
+        long[] syncNanos = measure(sync);
+        sync.stop();
+
+        BoundedAsyncAppender async = new BoundedAsyncAppender();
+        async.setName("async");
+        async.setContext(mContext);
+        async.setDelegate(newFileAppender("async.log"));
+        async.start();
+        long[] asyncNanos = measure(async);
+        async.flush(5000);
+        async.stop();
+
+        long events = (long) (WARM_UP_BURSTS + BURSTS) * BURST;
+        assertEquals(events, async.getWrittenCount());
+        assertEquals(0, async.getDroppedCount());
+        assertEquals(countLines(new File(mDir, "sync.log")), countLines(new File(mDir, "async.log")));
+
+        long syncMedian = percentile(syncNanos, 50);
+        long asyncMedian = percentile(asyncNanos, 50);
+        assertTrue("Per event on the logging thread: sync " + describe(syncNanos) + "; async " + describe(asyncNanos),
+                asyncMedian <= syncMedian * MAX_ASYNC_TO_SYNC_MEDIAN);
+    }
+
+    @NonNull
+    private FileAppender<ILoggingEvent> newFileAppender(@NonNull String name) {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(mContext);
+        encoder.setPattern(OLD_PATTERN);
+        encoder.start();
+
+        FileAppender<ILoggingEvent> appender = new FileAppender<>();
+        appender.setName(name);
+        appender.setContext(mContext);
+        appender.setFile(new File(mDir, name).getAbsolutePath());
+        appender.setEncoder(encoder);
+        appender.start();
+        return appender;
+    }
+
+    // nanoseconds spent in doAppend for each event after the warm-up
+    @NonNull
+    private long[] measure(@NonNull Appender<ILoggingEvent> appender) throws InterruptedException {
+        long[] nanos = new long[BURSTS * BURST];
+        for (int burst = 0; burst < WARM_UP_BURSTS + BURSTS; burst++) {
+            for (int i = 0; i < BURST; i++) {
+                LoggingEvent event = new LoggingEvent(Logger.class.getName(), mLogger, Level.INFO,
+                        "Reader {} updated: distance {}, rssi {}", null, new Object[] { "Front Door", "NEAR", -61 - i });
+                long start = System.nanoTime();
+                appender.doAppend(event);
+                long elapsed = System.nanoTime() - start;
+                if (burst >= WARM_UP_BURSTS) {
+                    nanos[(burst - WARM_UP_BURSTS) * BURST + i] = elapsed;
+                }
+            }
+            Thread.sleep(1); // let the worker catch up, as it does between bursts in the app
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    private static long percentile(@NonNull long[] sorted, int percent) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+    }
+
+    @NonNull
+    private static String describe(@NonNull long[] sorted) {
+        return String.format("p50 %dns, p90 %dns, p99 %dns", percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99));
+    }
+
+    private static long countLines(@NonNull File file) throws Exception {
+        return Files.readAllLines(file.toPath()).size();
+    }
+}
@@ -0,0 +1,139 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+
+import com.gallagher.security.mobileaccess.MobileCredential;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+// *********************************************************************************
+// One FakeScheduler plays both the main thread and the SdkEventLoop, so a load and the
+// delivery of its result both happen when the test advances time
+// *********************************************************************************
+public class CredentialRepositoryTest {
+
+    private FakeScheduler mScheduler;
+    private StubMobileAccess mMobileAccess;
+    private CredentialRepository mRepository;
+
+    // every list the listener was given
+    private final ArrayList<List<MobileCredential>> mDelivered = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        mScheduler = new FakeScheduler(1_000_000);
+        mMobileAccess = new StubMobileAccess();
+        SdkStartup sdk = new SdkStartup(mScheduler);
+        sdk.start(mMobileAccess.get());
+        mScheduler.advanceBy(0);
+        mRepository = new CredentialRepository(sdk, mScheduler::post, mScheduler, new CredentialSync(sdk, mScheduler::now, mScheduler));
+    }
+
+    @Test
+    public void invalidationsBeforeALoadRunsAllWaitForIt() {
+        setCredentials(credential("a", "Head Office"));
+        mRepository.addListener(mDelivered::add);
+        mRepository.invalidate();
+        mRepository.invalidate();
+        mRepository.invalidate();
+        mScheduler.advanceBy(0);
+
+        assertEquals(1, loads());
+        assertEquals(1, mDelivered.size());
+        assertTrue(mRepository.describe(), mRepository.describe().startsWith("1 credentials; loads 1, invalidations 3"));
+
+        // once it has run, a change needs another load
+        setCredentials(credential("a", "Head Office"), credential("b", "Depot"));
+        mRepository.invalidate();
+        mRepository.invalidate();
+        mScheduler.advanceBy(0);
+
+        assertEquals(2, loads());
+        assertEquals(Arrays.asList("a", "b"), ids(mDelivered.get(mDelivered.size() - 1)));
+    }
+
+    @Test
+    public void credentialsThatStayKeepTheirPlace() {
+        MobileCredential a = credential("a", "Head Office");
+        MobileCredential b = credential("b", "Depot");
+        MobileCredential c = credential("c", "Warehouse");
+        setCredentials(a, b, c);
+        mRepository.addListener(mDelivered::add);
+        mScheduler.advanceBy(0);
+        assertEquals(Arrays.asList("a", "b", "c"), ids(mDelivered.get(0)));
+
+        // the SDK's order changes, b is deleted, c is renamed and d is new
+        MobileCredential renamed = credential("c", "Warehouse 2");
+        setCredentials(credential("d", "Yard"), renamed, a);
+        mRepository.invalidate();
+        mScheduler.advanceBy(0);
+
+        List<MobileCredential> credentials = mDelivered.get(1);
+        assertEquals(Arrays.asList("a", "c", "d"), ids(credentials));
+        assertSame(renamed, credentials.get(1));
+    }
+
+    @Test
+    public void aListenerAddedLaterGetsTheListWithoutAnotherLoad() {
+        setCredentials(credential("a", "Head Office"));
+        mRepository.addListener(credentials -> { });
+        mScheduler.advanceBy(0);
+
+        mRepository.addListener(mDelivered::add);
+        assertEquals(1, loads());
+        assertEquals(Collections.singletonList("a"), ids(mDelivered.get(0)));
+    }
+
+    private void setCredentials(@NonNull MobileCredential... credentials) {
+        mMobileAccess.setResult("getMobileCredentials", Arrays.asList(credentials));
+    }
+
+    private int loads() {
+        int loads = 0;
+        for (String call : mMobileAccess.getCalls()) {
+            if (call.startsWith("getMobileCredentials(")) {
+                loads++;
+            }
+        }
+        return loads;
+    }
+
+    @NonNull
+    private static List<String> ids(@NonNull List<MobileCredential> credentials) {
+        ArrayList<String> ids = new ArrayList<>(credentials.size());
+        for (MobileCredential credential : credentials) {
+            ids.add(credential.getId());
+        }
+        return ids;
+    }
+
+    // A credential with just an ID and a facility name
+    @NonNull
+    private static MobileCredential credential(@NonNull String id, @NonNull String facilityName) {
+        return (MobileCredential) Proxy.newProxyInstance(MobileCredential.class.getClassLoader(), new Class<?>[] { MobileCredential.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getId": return id;
+                        case "getFacilityName": return facilityName;
+                        case "equals": return proxy == args[0];
+                        case "hashCode": return System.identityHashCode(proxy);
+                        case "toString": return id + " (" + facilityName + ")";
+                        default: return method.getReturnType() == boolean.class ? false : null;
+                    }
+                });
+    }
+}
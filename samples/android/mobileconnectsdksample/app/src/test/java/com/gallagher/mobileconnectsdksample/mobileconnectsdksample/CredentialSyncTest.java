@@ -0,0 +1,203 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.gallagher.security.mobileaccess.SdkFeatureState;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.concurrent.TimeoutException;
+
+import static com.gallagher.mobileconnectsdksample.mobileconnectsdksample.CredentialSync.INITIAL_BACKOFF_MILLIS;
+import static com.gallagher.mobileconnectsdksample.mobileconnectsdksample.CredentialSync.MAX_BACKOFF_MILLIS;
+import static com.gallagher.mobileconnectsdksample.mobileconnectsdksample.CredentialSync.MIN_INTERVAL_MILLIS;
+import static com.gallagher.mobileconnectsdksample.mobileconnectsdksample.CredentialSync.SYNC_TIMEOUT_MILLIS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CredentialSyncTest {
+
+    private FakeScheduler mScheduler;
+    private StubMobileAccess mMobileAccess;
+    private CredentialSync mSync;
+
+    // what each callback was called with, in the order they were called; null for success
+    private final ArrayList<Throwable> mResults = new ArrayList<>();
+    private final CredentialSync.Callback mCallback = mResults::add;
+
+    @Before
+    public void setUp() {
+        mScheduler = new FakeScheduler(1_000_000);
+        mMobileAccess = new StubMobileAccess();
+        SdkStartup sdk = new SdkStartup(mScheduler);
+        sdk.start(mMobileAccess.get());
+        mScheduler.advanceBy(0);
+        mSync = new CredentialSync(sdk, mScheduler::now, mScheduler);
+    }
+
+    @Test
+    public void requestsMadeWhileASyncIsRunningJoinIt() throws Exception {
+        mSync.request(mCallback);
+        mSync.request(mCallback);
+        mSync.requestNow(mCallback);
+        mSync.request(null);
+        assertEquals(1, syncs());
+        assertEquals(Collections.emptyList(), mResults);
+
+        completeSync(null);
+        assertEquals(Arrays.asList(null, null, null), mResults);
+        assertTrue(mSync.describe(), mSync.describe().startsWith("requests 4, syncs 1, merged 3, throttled 0, failed 0"));
+    }
+
+    @Test
+    public void requestsWithinTheMinimumIntervalGetTheLastResult() throws Exception {
+        mSync.request(mCallback);
+        completeSync(null);
+
+        mScheduler.advanceBy(MIN_INTERVAL_MILLIS - 1);
+        mSync.request(mCallback);
+        mScheduler.advanceBy(0); // the result is posted, like the SDK's would be
+        assertEquals(1, syncs());
+        assertEquals(Arrays.asList(null, null), mResults);
+
+        // unless the user asks
+        mSync.requestNow(mCallback);
+        assertEquals(2, syncs());
+        completeSync(null);
+
+        mScheduler.advanceBy(MIN_INTERVAL_MILLIS);
+        mSync.request(mCallback);
+        assertEquals(3, syncs());
+    }
+
+    @Test
+    public void failedSyncsBackOffExponentially() throws Exception {
+        IOException error = new IOException("cloud unreachable");
+        mSync.request(mCallback);
+
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        for (int syncs = 1; syncs <= 7; syncs++) {
+            completeSync(error);
+            assertThrottledFor(backoff, syncs, error);
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+        assertEquals(MAX_BACKOFF_MILLIS, backoff);
+
+        // one success and it's back to normal
+        completeSync(null);
+        assertThrottledFor(MIN_INTERVAL_MILLIS, 8, null);
+    }
+
+    @Test
+    public void backsOffWhileTheSdkReportsItCantReachTheCloud() throws Exception {
+        mSync.getSdkFeatureStateListener().onFeatureStatesChanged(EnumSet.of(SdkFeatureState.ERROR_CLOUD_CONNECTION_FAILED));
+        mSync.request(mCallback);
+        mScheduler.advanceBy(0);
+        assertEquals(0, syncs());
+
+        mScheduler.advanceBy(INITIAL_BACKOFF_MILLIS);
+        mSync.request(mCallback);
+        assertEquals(1, syncs());
+
+        // the sync worked, but the SDK still can't reach the cloud, so keep backing off
+        completeSync(null);
+        assertThrottledFor(INITIAL_BACKOFF_MILLIS, 1, null);
+
+        // once it can, and a sync has worked, it's back to normal
+        mSync.getSdkFeatureStateListener().onFeatureStatesChanged(EnumSet.noneOf(SdkFeatureState.class));
+        completeSync(null);
+        assertThrottledFor(MIN_INTERVAL_MILLIS, 2, null);
+    }
+
+    @Test
+    public void aSyncThatNeverCallsBackTimesOut() throws Exception {
+        mSync.request(mCallback);
+        Object lateCallback = syncCallback();
+
+        mScheduler.advanceBy(SYNC_TIMEOUT_MILLIS - 1);
+        assertEquals(Collections.emptyList(), mResults);
+        mSync.request(mCallback); // joins it
+        assertEquals(1, syncs());
+
+        mScheduler.advanceBy(1);
+        assertEquals(2, mResults.size());
+        assertTrue(String.valueOf(mResults.get(0)), mResults.get(0) instanceof TimeoutException);
+        assertSame(mResults.get(0), mResults.get(1));
+        assertEquals(0, mScheduler.getPendingCount());
+
+        // a timeout is a failure like any other; the next sync waits out the backoff, and doesn't join the one that timed out
+        mSync.request(mCallback);
+        mScheduler.advanceBy(0);
+        assertEquals(1, syncs());
+        mSync.requestNow(mCallback);
+        assertEquals(2, syncs());
+
+        // the first sync calling back now is ignored, and doesn't complete the second
+        callSyncCallback(lateCallback, null);
+        mScheduler.advanceBy(0);
+        assertEquals(3, mResults.size());
+        completeSync(null);
+        assertEquals(4, mResults.size());
+        assertTrue(mSync.describe(), mSync.describe().startsWith("requests 4, syncs 2, merged 1, throttled 1, failed 1, timed out 1"));
+    }
+
+    // The sync in flight has completed at a backoff of backoffMillis. Checks requests are answered
+    // with its result until then, and that the first request after it syncs again
+    private void assertThrottledFor(long backoffMillis, int syncs, @Nullable Throwable error) throws Exception {
+        mScheduler.advanceBy(backoffMillis - 1);
+        mResults.clear();
+        mSync.request(mCallback);
+        mScheduler.advanceBy(0);
+        assertEquals("backoff " + backoffMillis, syncs, syncs());
+        assertEquals(Collections.singletonList(error), mResults);
+
+        mScheduler.advanceBy(1);
+        mSync.request(mCallback);
+        assertEquals("backoff " + backoffMillis, syncs + 1, syncs());
+    }
+
+    private int syncs() {
+        int syncs = 0;
+        for (String call : mMobileAccess.getCalls()) {
+            if (call.startsWith("syncCredentialItemUpdates(")) {
+                syncs++;
+            }
+        }
+        return syncs;
+    }
+
+    // Completes the last sync started, the way the SDK would
+    private void completeSync(@Nullable Throwable error) throws Exception {
+        callSyncCallback(syncCallback(), error);
+        mScheduler.advanceBy(0); // CredentialSync posts the result to the main thread
+    }
+
+    @NonNull
+    private Object syncCallback() {
+        return mMobileAccess.getLastArguments("syncCredentialItemUpdates")[0];
+    }
+
+    // The callback is a lambda for the SDK's callback interface; call its one method
+    private static void callSyncCallback(@NonNull Object callback, @Nullable Throwable error) throws Exception {
+        for (Method method : callback.getClass().getInterfaces()[0].getMethods()) {
+            if (Modifier.isAbstract(method.getModifiers())) {
+                method.invoke(callback, error);
+                return;
+            }
+        }
+        throw new AssertionError("no method to call on " + callback);
+    }
+}
@@ -0,0 +1,75 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+
+// *********************************************************************************
+// A Scheduler and clock for tests. Nothing runs until the test advances time; then
+// tasks run in deadline order (posting order for equal deadlines), with the clock
+// set to each task's deadline as it runs.
+// *********************************************************************************
+class FakeScheduler implements Scheduler {
+
+    private static final class Task {
+        final Runnable Runnable;
+        final long RunAt;
+        final long Sequence;
+
+        Task(Runnable runnable, long runAt, long sequence) {
+            Runnable = runnable;
+            RunAt = runAt;
+            Sequence = sequence;
+        }
+    }
+
+    private final ArrayList<Task> mTasks = new ArrayList<>();
+    private long mNow;
+    private long mNextSequence = 0;
+
+    FakeScheduler(long now) {
+        mNow = now;
+    }
+
+    long now() {
+        return mNow;
+    }
+
+    int getPendingCount() {
+        return mTasks.size();
+    }
+
+    @Override
+    public void postDelayed(@NonNull Runnable task, long delayMillis) {
+        mTasks.add(new Task(task, mNow + Math.max(0, delayMillis), mNextSequence++));
+    }
+
+    @Override
+    public void removeCallbacks(@NonNull Runnable task) {
+        mTasks.removeIf(t -> t.Runnable == task);
+    }
+
+    // Runs everything due up to now + millis, including tasks those tasks post
+    void advanceBy(long millis) {
+        long until = mNow + millis;
+        while (true) {
+            Task next = null;
+            for (Task task : mTasks) {
+                if (task.RunAt <= until && (next == null || task.RunAt < next.RunAt
+                        || (task.RunAt == next.RunAt && task.Sequence < next.Sequence))) {
+                    next = task;
+                }
+            }
+            if (next == null) {
+                break;
+            }
+            mTasks.remove(next);
+            mNow = Math.max(mNow, next.RunAt);
+            next.Runnable.run();
+        }
+        mNow = until;
+    }
+}
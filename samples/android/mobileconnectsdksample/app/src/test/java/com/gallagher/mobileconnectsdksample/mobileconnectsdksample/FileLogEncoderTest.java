@@ -0,0 +1,174 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+import ch.qos.logback.core.encoder.Encoder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FileLogEncoderTest {
+
+    // what the log file used PatternLayoutEncoder with before FileLogEncoder
+    private static final String OLD_PATTERN = "%d{dd:MM:yy HH:mm:ss.SSS} [%thread] %-5level %logger{36} - %msg%n";
+
+    private static final int WARM_UP_EVENTS = 20_000;
+    private static final int EVENTS = 50_000;
+    // FileLogEncoder only allocates the array it returns; PatternLayoutEncoder builds several Strings on top
+    private static final double MAX_ALLOCATION_RATIO = 0.5;
+
+    private LoggerContext mContext;
+    private PatternLayoutEncoder mPatternEncoder;
+    private FileLogEncoder mEncoder;
+
+    @Before
+    public void setUp() {
+        mContext = new LoggerContext();
+
+        mPatternEncoder = new PatternLayoutEncoder();
+        mPatternEncoder.setContext(mContext);
+        mPatternEncoder.setPattern(OLD_PATTERN);
+        // it used the default charset, which is always UTF-8 on Android but not necessarily on the build machine
+        mPatternEncoder.setCharset(StandardCharsets.UTF_8);
+        mPatternEncoder.start();
+
+        mEncoder = new FileLogEncoder();
+        mEncoder.setContext(mContext);
+        mEncoder.start();
+    }
+
+    @After
+    public void tearDown() {
+        mContext.stop();
+    }
+
+    @Test
+    public void matchesPatternLayoutForEveryLevel() {
+        long timestamp = 1_718_000_000_123L;
+        for (Level level : new Level[] { Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR }) {
+            assertSameBytes(event("ReadersFragment", level, "Reader {} is {}", "Front Door", "NEAR", timestamp, "main", null));
+        }
+    }
+
+    @Test
+    public void matchesPatternLayoutAcrossSecondsAndMillis() {
+        // the encoder caches the formatted second, so walk over second boundaries in both directions
+        long[] timestamps = { 0, 1, 999, 1000, 1001, 59_999, 60_000, 1_718_000_000_000L, 1_718_000_000_999L,
+                1_718_000_001_000L, 1_718_000_000_500L, -1, -999, -1000, -1001, 4_102_444_800_007L };
+        for (long timestamp : timestamps) {
+            assertSameBytes(event("SdkEventHub", Level.DEBUG, "tick {}", timestamp, null, timestamp, "SdkEventLoop", null));
+        }
+    }
+
+    @Test
+    public void matchesPatternLayoutForLoggerNames() {
+        String[] names = {
+                Logger.ROOT_LOGGER_NAME,
+                "short",
+                "com.gallagher.mobileconnectsdksample.mobileconnectsdksample.ReadersFragment",
+                "com.gallagher.mobileconnectsdksample.mobileconnectsdksample.CredentialSync$SyncListener",
+                "com.gallagher.security.mobileaccess.internal.bluetooth.ReaderConnection",
+                "a.b.c.d.e.f.g.h.i.j.k.l.m.n.o.p.q.r.s.t.u.v.w.x.y.z.ThisNameIsLongerThanTheTarget",
+                "no.dots.but.exactly.thirtysix.chars",
+                "Ünïcødé.Lögger",
+        };
+        for (String name : names) {
+            assertSameBytes(event(name, Level.INFO, "hello", null, null, 1_718_000_000_042L, "main", null));
+        }
+    }
+
+    @Test
+    public void matchesPatternLayoutForTextThatIsntAscii() {
+        String[] messages = {
+                "",
+                "plain ascii",
+                "Café – naïve façade",
+                "日本語のメッセージ",
+                "emoji 🔑🚪 and more",
+                "unpaired high \uD83D surrogate",
+                "unpaired low \uDC00 surrogate",
+                "ends with a high surrogate \uD83D",
+                "tab\tand\r\nnewlines",
+                "\u0000 nul and \u007F del",
+        };
+        for (String message : messages) {
+            assertSameBytes(event("Unicode", Level.INFO, message, null, null, 1_718_000_000_042L, "ブルートゥース", null));
+        }
+        assertSameBytes(event("Unicode", Level.INFO, "{} and {}", "Ä", "🔒", 1_718_000_000_042L, "binder:1234_5", null));
+    }
+
+    @Test
+    public void matchesPatternLayoutWithAnException() {
+        IllegalStateException cause = new IllegalStateException("the reader went away");
+        RuntimeException error = new RuntimeException("Access failed", cause);
+        assertSameBytes(event("AccessScheduler", Level.ERROR, "Access to {} failed", "Front Door", null, 1_718_000_000_042L, "main", error));
+    }
+
+    @Test
+    public void allocatesLessThanPatternLayoutPerEvent() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        ArrayList<ILoggingEvent> events = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            ILoggingEvent event = event("com.gallagher.mobileconnectsdksample.mobileconnectsdksample.ReadersFragment", Level.DEBUG,
+                    "Reader {} updated: rssi {}", "Front Door", -60 - i % 30, 1_718_000_000_000L + i * 7L, "main", null);
+            event.prepareForDeferredProcessing(); // the async appender formats the message before the encoder sees it
+            events.add(event);
+        }
+
+        long patternBytes = allocatedPerEvent(threads, mPatternEncoder, events);
+        long encoderBytes = allocatedPerEvent(threads, mEncoder, events);
+        assertTrue("Allocated per event: PatternLayoutEncoder " + patternBytes + " bytes, FileLogEncoder " + encoderBytes + " bytes",
+                encoderBytes <= patternBytes * MAX_ALLOCATION_RATIO);
+    }
+
+    private static long allocatedPerEvent(@NonNull com.sun.management.ThreadMXBean threads,
+                                          @NonNull Encoder<ILoggingEvent> encoder, @NonNull ArrayList<ILoggingEvent> events) {
+        long id = Thread.currentThread().getId();
+        long sink = 0;
+        for (int i = 0; i < WARM_UP_EVENTS; i++) {
+            sink += encoder.encode(events.get(i % events.size())).length;
+        }
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < EVENTS; i++) {
+            sink += encoder.encode(events.get(i % events.size())).length;
+        }
+        long after = threads.getThreadAllocatedBytes(id);
+        assertTrue(sink > 0);
+        return (after - before) / EVENTS;
+    }
+
+    private void assertSameBytes(@NonNull ILoggingEvent event) {
+        byte[] expected = mPatternEncoder.encode(event);
+        byte[] actual = mEncoder.encode(event);
+        assertArrayEquals("for " + new String(expected, StandardCharsets.UTF_8), expected, actual);
+    }
+
+    @NonNull
+    private LoggingEvent event(@NonNull String loggerName, @NonNull Level level, @NonNull String message,
+                               @Nullable Object arg1, @Nullable Object arg2, long timestamp,
+                               @NonNull String threadName, @Nullable Throwable throwable) {
+        LoggingEvent event = new LoggingEvent(Logger.class.getName(), mContext.getLogger(loggerName), level, message,
+                throwable, new Object[] { arg1, arg2 });
+        event.setTimeStamp(timestamp);
+        event.setThreadName(threadName);
+        return event;
+    }
+}
@@ -0,0 +1,181 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+
+import com.gallagher.security.mobileaccess.BluetoothScanMode;
+import com.gallagher.security.mobileaccess.MobileAccessState;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+
+import static com.gallagher.mobileconnectsdksample.mobileconnectsdksample.ScanModeGovernor.ACTIVE_WINDOW_MILLIS;
+import static com.gallagher.mobileconnectsdksample.mobileconnectsdksample.ScanModeGovernor.DOWNGRADE_DELAY_MILLIS;
+import static com.gallagher.mobileconnectsdksample.mobileconnectsdksample.ScanModeGovernor.NEARBY_WINDOW_MILLIS;
+import static com.gallagher.mobileconnectsdksample.mobileconnectsdksample.ScanModeGovernor.RECENT_FOREGROUND_MILLIS;
+import static com.gallagher.mobileconnectsdksample.mobileconnectsdksample.ScanModeGovernor.TICK_MILLIS;
+import static org.junit.Assert.assertEquals;
+
+public class ScanModeGovernorTest {
+
+    private FakeScheduler mScheduler;
+    private StubMobileAccess mMobileAccess;
+
+    @Before
+    public void setUp() {
+        mScheduler = new FakeScheduler(1_000_000);
+        mMobileAccess = new StubMobileAccess();
+    }
+
+    @NonNull
+    private ScanModeGovernor newGovernor(@NonNull BluetoothScanMode initialMode) {
+        mMobileAccess.setResult("getBluetoothBackgroundScanMode", initialMode);
+        ScanModeGovernor governor = new ScanModeGovernor(mScheduler::now, mScheduler, mMobileAccess.get());
+        mMobileAccess.clearCalls();
+        return governor;
+    }
+
+    // *********************************************************************************
+    // desiredMode
+    // *********************************************************************************
+
+    @Test
+    public void desiredModeIsLowPowerWithNothingGoingOn() {
+        ScanModeGovernor governor = newGovernor(BluetoothScanMode.BACKGROUND_LOW_POWER);
+        assertEquals(BluetoothScanMode.BACKGROUND_LOW_POWER, governor.desiredMode(mScheduler.now()));
+    }
+
+    @Test
+    public void desiredModeFollowsHowLongAgoAReaderWasSeen() {
+        ScanModeGovernor governor = newGovernor(BluetoothScanMode.BACKGROUND_LOW_LATENCY);
+        long seen = mScheduler.now();
+        governor.onReaderSeen();
+
+        assertEquals(BluetoothScanMode.BACKGROUND_LOW_LATENCY, governor.desiredMode(seen));
+        assertEquals(BluetoothScanMode.BACKGROUND_LOW_LATENCY, governor.desiredMode(seen + ACTIVE_WINDOW_MILLIS - 1));
+        assertEquals(BluetoothScanMode.BACKGROUND_BALANCED, governor.desiredMode(seen + ACTIVE_WINDOW_MILLIS));
+        assertEquals(BluetoothScanMode.BACKGROUND_BALANCED, governor.desiredMode(seen + NEARBY_WINDOW_MILLIS - 1));
+        assertEquals(BluetoothScanMode.BACKGROUND_LOW_POWER, governor.desiredMode(seen + NEARBY_WINDOW_MILLIS));
+    }
+
+    @Test
+    public void desiredModeIsBalancedInAndJustAfterTheForeground() {
+        ScanModeGovernor governor = newGovernor(BluetoothScanMode.BACKGROUND_LOW_POWER);
+        governor.onForegroundChanged(true);
+        assertEquals(BluetoothScanMode.BACKGROUND_BALANCED, governor.desiredMode(mScheduler.now() + 10 * RECENT_FOREGROUND_MILLIS));
+
+        long background = mScheduler.now();
+        governor.onForegroundChanged(false);
+        assertEquals(BluetoothScanMode.BACKGROUND_BALANCED, governor.desiredMode(background + RECENT_FOREGROUND_MILLIS - 1));
+        assertEquals(BluetoothScanMode.BACKGROUND_LOW_POWER, governor.desiredMode(background + RECENT_FOREGROUND_MILLIS));
+    }
+
+    @Test
+    public void desiredModeIsForegroundOnlyWithoutCredentials() {
+        ScanModeGovernor governor = newGovernor(BluetoothScanMode.BACKGROUND_LOW_LATENCY);
+        governor.onReaderSeen();
+        governor.onForegroundChanged(true);
+        governor.onStateChanged(EnumSet.of(MobileAccessState.ERROR_NO_CREDENTIALS));
+        assertEquals(BluetoothScanMode.FOREGROUND_ONLY, governor.desiredMode(mScheduler.now()));
+
+        governor.onStateChanged(Collections.emptySet());
+        assertEquals(BluetoothScanMode.BACKGROUND_LOW_LATENCY, governor.desiredMode(mScheduler.now()));
+    }
+
+    // *********************************************************************************
+    // evaluate
+    // *********************************************************************************
+
+    @Test
+    public void upgradesAsSoonAsAReaderIsSeen() {
+        ScanModeGovernor governor = newGovernor(BluetoothScanMode.BACKGROUND_LOW_POWER);
+        governor.start();
+        assertEquals(Collections.emptyList(), mMobileAccess.getCalls());
+
+        governor.onReaderSeen();
+        mScheduler.advanceBy(0); // the posted evaluate, not the next tick
+        assertEquals(BluetoothScanMode.BACKGROUND_LOW_LATENCY, governor.getMode());
+        assertEquals(Collections.singletonList("setBluetoothBackgroundScanMode(BACKGROUND_LOW_LATENCY)"), mMobileAccess.getCalls());
+    }
+
+    @Test
+    public void readersSeenInLowLatencyDontPostAnything() {
+        ScanModeGovernor governor = newGovernor(BluetoothScanMode.BACKGROUND_LOW_LATENCY);
+        for (int i = 0; i < 100; i++) {
+            governor.onReaderSeen();
+        }
+        assertEquals(0, mScheduler.getPendingCount());
+    }
+
+    @Test
+    public void downgradesOnlyOnceTheLowerModeHasBeenRightForTheDelay() {
+        ScanModeGovernor governor = newGovernor(BluetoothScanMode.BACKGROUND_LOW_LATENCY);
+        long seen = mScheduler.now();
+        governor.onReaderSeen();
+        governor.start();
+
+        // BALANCED is wanted from the first tick at or after the active window ends
+        long firstTickWantingBalanced = seen + (ACTIVE_WINDOW_MILLIS + TICK_MILLIS - 1) / TICK_MILLIS * TICK_MILLIS;
+        mScheduler.advanceBy(firstTickWantingBalanced + DOWNGRADE_DELAY_MILLIS - 1 - mScheduler.now());
+        assertEquals(BluetoothScanMode.BACKGROUND_LOW_LATENCY, governor.getMode());
+        assertEquals(Collections.emptyList(), mMobileAccess.getCalls());
+
+        mScheduler.advanceBy(TICK_MILLIS);
+        assertEquals(BluetoothScanMode.BACKGROUND_BALANCED, governor.getMode());
+        assertEquals(Collections.singletonList("setBluetoothBackgroundScanMode(BACKGROUND_BALANCED)"), mMobileAccess.getCalls());
+    }
+
+    @Test
+    public void aReaderDuringTheDelayCancelsTheDowngrade() {
+        ScanModeGovernor governor = newGovernor(BluetoothScanMode.BACKGROUND_LOW_LATENCY);
+        governor.onReaderSeen();
+        mScheduler.advanceBy(ACTIVE_WINDOW_MILLIS);
+        governor.evaluate(); // starts the downgrade clock
+
+        // back in range just before the downgrade was due, then out of range again
+        mScheduler.advanceBy(DOWNGRADE_DELAY_MILLIS - 1);
+        governor.onReaderSeen();
+        governor.evaluate();
+        mScheduler.advanceBy(ACTIVE_WINDOW_MILLIS);
+        governor.evaluate();
+
+        // the delay starts again from when the lower mode was next wanted
+        mScheduler.advanceBy(DOWNGRADE_DELAY_MILLIS - 1);
+        governor.evaluate();
+        assertEquals(BluetoothScanMode.BACKGROUND_LOW_LATENCY, governor.getMode());
+
+        mScheduler.advanceBy(1);
+        governor.evaluate();
+        assertEquals(BluetoothScanMode.BACKGROUND_BALANCED, governor.getMode());
+    }
+
+    @Test
+    public void walksDownTheLadderOneDelayAtATime() {
+        ScanModeGovernor governor = newGovernor(BluetoothScanMode.BACKGROUND_LOW_LATENCY);
+        governor.onReaderSeen();
+        governor.start();
+
+        mScheduler.advanceBy(NEARBY_WINDOW_MILLIS + 2 * DOWNGRADE_DELAY_MILLIS + 2 * TICK_MILLIS);
+        assertEquals(BluetoothScanMode.BACKGROUND_LOW_POWER, governor.getMode());
+        assertEquals(Arrays.asList("setBluetoothBackgroundScanMode(BACKGROUND_BALANCED)",
+                "setBluetoothBackgroundScanMode(BACKGROUND_LOW_POWER)"), mMobileAccess.getCalls());
+    }
+
+    @Test
+    public void stopCancelsTheTick() {
+        ScanModeGovernor governor = newGovernor(BluetoothScanMode.BACKGROUND_LOW_LATENCY);
+        governor.start();
+        assertEquals(1, mScheduler.getPendingCount());
+
+        governor.stop();
+        assertEquals(0, mScheduler.getPendingCount());
+        mScheduler.advanceBy(NEARBY_WINDOW_MILLIS * 2);
+        assertEquals(BluetoothScanMode.BACKGROUND_LOW_LATENCY, governor.getMode());
+    }
+}
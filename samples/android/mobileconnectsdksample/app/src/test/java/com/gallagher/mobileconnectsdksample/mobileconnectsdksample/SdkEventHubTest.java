@@ -0,0 +1,140 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+
+import com.gallagher.security.mobileaccess.MobileAccessState;
+import com.gallagher.security.mobileaccess.SdkStateListener;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// *********************************************************************************
+// Delivery order on the SDK state channel; every channel shares the same Channel code.
+// The test thread plays the main thread, and a second thread the SDK's
+// *********************************************************************************
+public class SdkEventHubTest {
+
+    private static final Collection<MobileAccessState> NONE = EnumSet.noneOf(MobileAccessState.class);
+    private static final Collection<MobileAccessState> NO_CREDENTIALS = EnumSet.of(MobileAccessState.ERROR_NO_CREDENTIALS);
+
+    private SdkEventHub mHub;
+    private SdkStateListener mSdk; // what the hub registered with MobileAccess
+
+    // Records "isScanning states" for each callback
+    private static class Recorder implements SdkStateListener {
+        final List<String> Events = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void onStateChanged(boolean isScanning, @NonNull Collection<MobileAccessState> states) {
+            Events.add(isScanning + " " + states);
+        }
+    }
+
+    // Blocks the thread delivering to it when it's told it's scanning, until released
+    private static final class BlockingRecorder extends Recorder {
+        final CountDownLatch Blocked = new CountDownLatch(1);
+        final CountDownLatch Release = new CountDownLatch(1);
+
+        @Override
+        public void onStateChanged(boolean isScanning, @NonNull Collection<MobileAccessState> states) {
+            super.onStateChanged(isScanning, states);
+            if (isScanning && Blocked.getCount() > 0) {
+                Blocked.countDown();
+                try {
+                    assertTrue(Release.await(5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        }
+    }
+
+    @Before
+    public void setUp() {
+        StubMobileAccess mobileAccess = new StubMobileAccess();
+        mobileAccess.setResult("getSdkFeatureStates", Collections.emptySet());
+        mHub = new SdkEventHub();
+        mHub.start(mobileAccess.get());
+        mSdk = (SdkStateListener) mobileAccess.getLastArguments("addSdkStateListener")[0];
+    }
+
+    @Test
+    public void aSubscriberGetsTheLatestStateThenEachChange() {
+        Recorder early = new Recorder();
+        mHub.getSdkStates().subscribe("early", early);
+        assertEquals(Collections.emptyList(), early.Events); // nothing to replay yet
+
+        mSdk.onStateChanged(false, NONE);
+        mSdk.onStateChanged(true, NONE);
+        Recorder late = new Recorder();
+        mHub.getSdkStates().subscribe("late", late);
+        mSdk.onStateChanged(true, NO_CREDENTIALS);
+        mHub.getSdkStates().unsubscribe(late);
+        mSdk.onStateChanged(false, NO_CREDENTIALS);
+
+        assertEquals(Arrays.asList("false []", "true []", "true [ERROR_NO_CREDENTIALS]", "false [ERROR_NO_CREDENTIALS]"), early.Events);
+        assertEquals(Arrays.asList("true []", "true [ERROR_NO_CREDENTIALS]"), late.Events);
+    }
+
+    @Test
+    public void aReplayKeepsItsPlaceWhileAnotherThreadIsDelivering() throws Exception {
+        mSdk.onStateChanged(false, NONE);
+        BlockingRecorder slow = new BlockingRecorder();
+        mHub.getSdkStates().subscribe("slow", slow);
+
+        Thread sdkThread = new Thread(() -> mSdk.onStateChanged(true, NONE));
+        sdkThread.start();
+        assertTrue(slow.Blocked.await(5, TimeUnit.SECONDS));
+
+        // the SDK thread is still delivering "true []", so the replay waits its turn behind it...
+        Recorder subscriber = new Recorder();
+        mHub.getSdkStates().subscribe("subscriber", subscriber);
+        assertEquals(Collections.emptyList(), subscriber.Events);
+        // ...and so does what changes next, so it can't overtake the replay
+        mSdk.onStateChanged(true, NO_CREDENTIALS);
+        assertEquals(Collections.emptyList(), subscriber.Events);
+
+        slow.Release.countDown();
+        sdkThread.join(5000);
+
+        assertEquals(Arrays.asList("false []", "true []", "true [ERROR_NO_CREDENTIALS]"), slow.Events);
+        assertEquals(Arrays.asList("true []", "true [ERROR_NO_CREDENTIALS]"), subscriber.Events);
+    }
+
+    @Test
+    public void anUnsubscribedListenerGetsNothingThatWasStillQueuedForIt() throws Exception {
+        mSdk.onStateChanged(false, NONE);
+        BlockingRecorder slow = new BlockingRecorder();
+        mHub.getSdkStates().subscribe("slow", slow);
+
+        Thread sdkThread = new Thread(() -> mSdk.onStateChanged(true, NONE));
+        sdkThread.start();
+        assertTrue(slow.Blocked.await(5, TimeUnit.SECONDS));
+
+        Recorder subscriber = new Recorder();
+        mHub.getSdkStates().subscribe("subscriber", subscriber);
+        mSdk.onStateChanged(true, NO_CREDENTIALS);
+        mHub.getSdkStates().unsubscribe(subscriber);
+
+        slow.Release.countDown();
+        sdkThread.join(5000);
+
+        assertEquals(Collections.emptyList(), subscriber.Events);
+        assertEquals(Arrays.asList("false []", "true []", "true [ERROR_NO_CREDENTIALS]"), slow.Events);
+    }
+}
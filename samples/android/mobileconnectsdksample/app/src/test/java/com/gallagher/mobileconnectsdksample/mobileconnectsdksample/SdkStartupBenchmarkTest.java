@@ -0,0 +1,213 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+
+import com.gallagher.security.mobileaccess.BluetoothScanMode;
+import com.gallagher.security.mobileaccess.MobileAccess;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import ch.qos.logback.classic.LoggerContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+// *********************************************************************************
+// Runs AppStartup, the phases Application.onCreate runs, against a stub SDK, and times
+// how long it keeps the main thread busy: first onCreate itself, then the app's own
+// SDK setup that SdkStartup holds until onCreate has returned. Logging is configured for
+// real, into a temporary directory. The test thread plays the main thread.
+// *********************************************************************************
+public class SdkStartupBenchmarkTest {
+
+    // generous; what they're guarding against is something slow (disk, the network, a sleep)
+    // finding its way into startup. The times of a run are in the failure message
+    private static final long MAX_ON_CREATE_MILLIS = 50;
+    private static final long MAX_QUEUED_CALLS_MILLIS = 20;
+    private static final int WARM_UP_RUNS = 5;
+    private static final int RUNS = 15;
+
+    private File mDir;
+    private int mRuns = 0;
+
+    @Before
+    public void setUp() throws Exception {
+        mDir = Files.createTempDirectory("startup-benchmark").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        delete(mDir);
+    }
+
+    private static final class MainThread implements Scheduler {
+        final ArrayDeque<Runnable> Tasks = new ArrayDeque<>();
+
+        @Override
+        public void postDelayed(@NonNull Runnable task, long delayMillis) {
+            Tasks.add(task);
+        }
+
+        @Override
+        public void removeCallbacks(@NonNull Runnable task) {
+            Tasks.remove(task);
+        }
+    }
+
+    private static final class TestHost implements AppStartup.Host {
+        final MobileAccess Sdk;
+        int ChannelsConfigured;
+        int SdkConfigured;
+
+        TestHost(MobileAccess sdk) {
+            Sdk = sdk;
+        }
+
+        @Override
+        public void configureNotificationChannels() {
+            ChannelsConfigured++;
+        }
+
+        @NonNull
+        @Override
+        public MobileAccess configureSdk() {
+            SdkConfigured++;
+            return Sdk;
+        }
+    }
+
+    private static final class Run {
+        final StubMobileAccess Sdk = new StubMobileAccess();
+        final TestHost Host = new TestHost(Sdk.get());
+        final MainThread Main = new MainThread();
+        final SdkStartup Startup = new SdkStartup(Main);
+        final LoggerContext Logging = new LoggerContext();
+        File LogFilesDir;
+        List<String> CallsDuringOnCreate;
+        long OnCreateNanos;
+        long QueuedCallsNanos;
+    }
+
+    @Test
+    public void startupKeepsTheMainThreadBusyForNoLongerThanItShould() throws Exception {
+        for (int i = 0; i < WARM_UP_RUNS; i++) {
+            runStartup();
+        }
+
+        long[] onCreateNanos = new long[RUNS];
+        long[] queuedCallsNanos = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            Run run = runStartup();
+            onCreateNanos[i] = run.OnCreateNanos;
+            queuedCallsNanos[i] = run.QueuedCallsNanos;
+        }
+        Arrays.sort(onCreateNanos);
+        Arrays.sort(queuedCallsNanos);
+        long onCreateMicros = onCreateNanos[RUNS / 2] / 1000;
+        long queuedCallsMicros = queuedCallsNanos[RUNS / 2] / 1000;
+        String times = "median of " + RUNS + ": onCreate " + onCreateMicros + "us, queued calls " + queuedCallsMicros + "us";
+
+        assertTrue(times, onCreateMicros < MAX_ON_CREATE_MILLIS * 1000);
+        assertTrue(times, queuedCallsMicros < MAX_QUEUED_CALLS_MILLIS * 1000);
+    }
+
+    @Test
+    public void onCreateOnlyConfiguresTheSdkAndTheRestWaitsForTheMainThread() throws Exception {
+        Run run = runStartup();
+
+        assertEquals(1, run.Host.ChannelsConfigured);
+        assertEquals(1, run.Host.SdkConfigured);
+        assertEquals(Collections.emptyList(), run.CallsDuringOnCreate);
+        assertEquals(Arrays.asList(
+                "setBluetoothBackgroundScanMode(BACKGROUND_LOW_LATENCY)",
+                "setIsNfcPreferred(true)",
+                "setAutomaticAccessEnabled(true)",
+                "setScanning(true)",
+                "setIsBluetoothEnabledInApp(true)",
+                "addAutomaticAccessListener", // AccessLatencyStats
+                // SdkEventHub
+                "addSdkStateListener",
+                "getSdkFeatureStates()",
+                "addSdkFeatureStateListener",
+                "addReaderUpdateListener",
+                "addSaltoUpdateListener",
+                "addDigitalIdListener",
+                "addAutomaticAccessListener", // FlightRecorder
+                "setBluetoothConnectionSensitivity(NORMAL)",
+                "addAutomaticAccessListener", // SensitivityTuner
+                "getBluetoothBackgroundScanMode()" // ScanModeGovernor
+        ), withoutListeners(run.Sdk.getCalls()));
+        assertSame(run.Sdk.get(), run.Startup.getIfReady());
+    }
+
+    @Test
+    public void loggingGoesToTheLogFile() throws Exception {
+        Run run = runStartup();
+
+        String log = new String(Files.readAllBytes(new File(run.LogFilesDir, "MobileConnectSampleApp.log").toPath()), StandardCharsets.UTF_8);
+        assertTrue(log, log.contains("----- Application onCreate -----"));
+    }
+
+    @NonNull
+    private Run runStartup() throws Exception {
+        Run run = new Run();
+        run.Sdk.setResult("getSdkFeatureStates", Collections.emptySet());
+        run.Sdk.setResult("getBluetoothBackgroundScanMode", BluetoothScanMode.BACKGROUND_LOW_LATENCY);
+        File runDir = new File(mDir, "run" + mRuns++);
+        run.LogFilesDir = new File(runDir, "logs");
+        assertTrue(run.LogFilesDir.mkdirs());
+        File tunerFile = new File(runDir, "connection_sensitivity.bin");
+        AppStartup startup = new AppStartup(run.Host, run.Logging, run.LogFilesDir, run.Startup, new SdkEventHub(),
+                () -> new SensitivityTuner(tunerFile, 0), () -> 0, run.Main);
+
+        // Application.onCreate
+        long start = System.nanoTime();
+        startup.run();
+        run.OnCreateNanos = System.nanoTime() - start;
+        run.CallsDuringOnCreate = run.Sdk.getCalls();
+
+        // then the main looper, until the queued calls have run. The scan mode governor's
+        // first tick is posted last; that's for later
+        start = System.nanoTime();
+        while (!run.Startup.getReady().isDone()) {
+            run.Main.Tasks.remove().run();
+        }
+        run.QueuedCallsNanos = System.nanoTime() - start;
+
+        run.Logging.stop(); // flushes and closes the log file
+        return run;
+    }
+
+    // listeners are lambdas, with names that change from build to build
+    @NonNull
+    private static List<String> withoutListeners(@NonNull List<String> calls) {
+        ArrayList<String> result = new ArrayList<>(calls.size());
+        for (String call : calls) {
+            result.add(call.contains("Listener(") ? call.substring(0, call.indexOf('(')) : call);
+        }
+        return result;
+    }
+
+    private static void delete(@NonNull File file) {
+        File[] files = file.listFiles();
+        for (int i = 0; files != null && i < files.length; i++) {
+            delete(files[i]);
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,247 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+
+import com.gallagher.security.mobileaccess.BluetoothConnectionSensitivity;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static com.gallagher.mobileconnectsdksample.mobileconnectsdksample.SensitivityTuner.BAND_WIDTH_DB;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+// *********************************************************************************
+// Replays traces of automatic access attempts through SensitivityTuner.
+//
+// A trace records, for each attempt, the margin the phone would have connected at on
+// NORMAL sensitivity, and a roll that decides whether a connection at a given margin
+// fails: it fails if the roll is under the phone's failure rate at that margin. Each
+// level below NORMAL moves the connection point in by one band, as the SDK's
+// sensitivity levels do, so the same trace can be replayed at whatever level the tuner
+// picks and compared with staying on NORMAL. Traces are generated from a fixed seed, so
+// every run sees the same attempts.
+// *********************************************************************************
+public class SensitivityTunerTest {
+
+    private static final List<BluetoothConnectionSensitivity> LEVELS = Arrays.asList(
+            BluetoothConnectionSensitivity.NORMAL, BluetoothConnectionSensitivity.LOW, BluetoothConnectionSensitivity.VERY_LOW);
+    private static final int MODEL_HASH = "Pixel 8".hashCode();
+    private static final String READER_ID = "front-door";
+
+    interface Phone {
+        // chance that a connection started this far (in dB) inside the auto connect path loss fails
+        double failureRate(double margin);
+    }
+
+    // connects too early: a third of attempts at the very edge of range fail
+    private static final Phone FLAKY_EDGE = margin -> margin < BAND_WIDTH_DB ? 0.35 : margin < 2 * BAND_WIDTH_DB ? 0.06 : 0.03;
+    // fine everywhere
+    private static final Phone HEALTHY = margin -> 0.03;
+
+    private static final class Attempt {
+        final double Margin; // at NORMAL
+        final double Roll;
+
+        Attempt(double margin, double roll) {
+            Margin = margin;
+            Roll = roll;
+        }
+    }
+
+    private static final class Replay {
+        int Attempts;
+        int Failures;
+        int[] AttemptsAtLevel = new int[LEVELS.size()];
+        ArrayList<BluetoothConnectionSensitivity> Changes = new ArrayList<>();
+    }
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("connection_sensitivity", ".bin");
+        assertTrue(mFile.delete()); // the tuner creates it
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    // *********************************************************************************
+    // Replays
+    // *********************************************************************************
+
+    @Test
+    public void stepsDownAndFailsLessOnAPhoneThatConnectsTooEarly() {
+        List<Attempt> trace = trace(2000, 1);
+
+        Replay fixed = replay(null, FLAKY_EDGE, trace);
+        SensitivityTuner tuner = newTuner();
+        Replay tuned = replay(tuner, FLAKY_EDGE, trace);
+        String figures = fixed.Failures + " failures on NORMAL, " + tuned.Failures + " tuned; attempts per level "
+                + Arrays.toString(tuned.AttemptsAtLevel) + "; " + tuner.describe();
+
+        assertEquals(figures, BluetoothConnectionSensitivity.LOW, tuned.Changes.get(0));
+        // most attempts are made below NORMAL, and a third fewer fail
+        assertTrue(figures, tuned.AttemptsAtLevel[0] < trace.size() / 2);
+        assertTrue(figures, tuned.Failures < fixed.Failures * 2 / 3);
+    }
+
+    @Test
+    public void staysOnNormalOnAHealthyPhone() {
+        List<Attempt> trace = trace(2000, 2);
+
+        Replay fixed = replay(null, HEALTHY, trace);
+        Replay tuned = replay(newTuner(), HEALTHY, trace);
+
+        assertEquals(new ArrayList<BluetoothConnectionSensitivity>(), tuned.Changes);
+        assertEquals(fixed.Failures, tuned.Failures);
+    }
+
+    @Test
+    public void goesBackToNormalOnceTheEdgeIsFixed() {
+        // learn that the edge is bad...
+        SensitivityTuner tuner = newTuner();
+        replay(tuner, FLAKY_EDGE, trace(300, 3));
+        assertTrue(tuner.getSensitivity() != BluetoothConnectionSensitivity.NORMAL);
+
+        // ...then, say, a firmware update fixes it. Below NORMAL the phone hardly tries the edge any more,
+        // so what we knew about it decays below MIN_EVIDENCE, and the tuner goes back to find out
+        Replay afterFix = replay(tuner, HEALTHY, trace(1000, 4));
+        assertEquals(BluetoothConnectionSensitivity.NORMAL, afterFix.Changes.get(afterFix.Changes.size() - 1));
+        // and with a healthy edge it stays there, so every attempt below NORMAL came before it went back
+        int belowNormal = afterFix.Attempts - afterFix.AttemptsAtLevel[0];
+        assertTrue("took " + belowNormal + " attempts to go back to NORMAL", belowNormal < 400);
+        assertEquals(BluetoothConnectionSensitivity.NORMAL, tuner.getSensitivity());
+    }
+
+    @Test
+    public void keepsCheckingTheEdgeWhileItStaysBad() {
+        // exploring costs a few failures now and then, but the tuner keeps coming back down
+        SensitivityTuner tuner = newTuner();
+        Replay replay = replay(tuner, FLAKY_EDGE, trace(5000, 5));
+
+        int backToNormal = 0;
+        for (BluetoothConnectionSensitivity change : replay.Changes) {
+            if (change == BluetoothConnectionSensitivity.NORMAL) {
+                backToNormal++;
+            }
+        }
+        assertTrue("went back to NORMAL " + backToNormal + " times", backToNormal >= 1);
+        assertTrue(replay.AttemptsAtLevel[0] < replay.Attempts / 4);
+    }
+
+    // *********************************************************************************
+    // The model
+    // *********************************************************************************
+
+    @Test
+    public void bandsAreBandWidthWideFromTheEdgeIn() {
+        assertEquals(0, SensitivityTuner.bandOf(-3));
+        assertEquals(0, SensitivityTuner.bandOf(0));
+        assertEquals(0, SensitivityTuner.bandOf(BAND_WIDTH_DB - 0.01));
+        assertEquals(1, SensitivityTuner.bandOf(BAND_WIDTH_DB));
+        assertEquals(1, SensitivityTuner.bandOf(2 * BAND_WIDTH_DB - 0.01));
+        assertEquals(2, SensitivityTuner.bandOf(2 * BAND_WIDTH_DB));
+        assertEquals(2, SensitivityTuner.bandOf(30));
+    }
+
+    @Test
+    public void waitsForEvidenceAndSpacesOutChanges() {
+        SensitivityTuner tuner = newTuner();
+        // every edge attempt fails, every deep one succeeds
+        int changedAt = -1;
+        for (int i = 0; i < 40 && changedAt < 0; i++) {
+            boolean edge = i % 2 == 0;
+            tuner.accessStarted(READER_ID, edge ? 0.5 : 3 * BAND_WIDTH_DB);
+            if (tuner.accessCompleted(READER_ID, edge) != null) {
+                changedAt = i;
+            }
+        }
+        // band 0 needs MIN_EVIDENCE (3) attempts before it counts against NORMAL, and a change needs 8 attempts
+        assertEquals(7, changedAt);
+        assertEquals(BluetoothConnectionSensitivity.LOW, tuner.getSensitivity());
+    }
+
+    @Test
+    public void attemptsThatNeverStartedAreIgnored() {
+        SensitivityTuner tuner = newTuner();
+        for (int i = 0; i < 50; i++) {
+            assertNull(tuner.accessCompleted(READER_ID, true));
+        }
+        assertTrue(tuner.describe(), tuner.describe().startsWith("NORMAL, 0 attempts"));
+    }
+
+    @Test
+    public void remembersTheModelAcrossRestartsOnTheSamePhoneOnly() {
+        SensitivityTuner tuner = newTuner();
+        replay(tuner, FLAKY_EDGE, trace(300, 6));
+        BluetoothConnectionSensitivity learned = tuner.getSensitivity();
+        assertTrue(learned != BluetoothConnectionSensitivity.NORMAL);
+
+        SensitivityTuner restarted = new SensitivityTuner(mFile, MODEL_HASH);
+        assertEquals(learned, restarted.getSensitivity());
+        assertEquals(tuner.describe(), restarted.describe());
+
+        SensitivityTuner restored = new SensitivityTuner(mFile, "Galaxy S24".hashCode());
+        assertEquals(BluetoothConnectionSensitivity.NORMAL, restored.getSensitivity());
+    }
+
+    // *********************************************************************************
+    // Helpers
+    // *********************************************************************************
+
+    @NonNull
+    private SensitivityTuner newTuner() {
+        return new SensitivityTuner(mFile, MODEL_HASH);
+    }
+
+    // Margins at NORMAL are spread over the first 10dB inside the threshold, a little outside it included
+    @NonNull
+    private static List<Attempt> trace(int attempts, long seed) {
+        Random random = new Random(seed);
+        ArrayList<Attempt> trace = new ArrayList<>(attempts);
+        for (int i = 0; i < attempts; i++) {
+            trace.add(new Attempt(-1 + 10 * random.nextDouble(), random.nextDouble()));
+        }
+        return trace;
+    }
+
+    // Replays the trace at the level tuner picks as it goes, or on NORMAL throughout if tuner is null
+    @NonNull
+    private static Replay replay(SensitivityTuner tuner, @NonNull Phone phone, @NonNull List<Attempt> trace) {
+        Replay replay = new Replay();
+        for (Attempt attempt : trace) {
+            int level = tuner != null ? LEVELS.indexOf(tuner.getSensitivity()) : 0;
+            double margin = attempt.Margin + level * BAND_WIDTH_DB;
+            boolean failed = attempt.Roll < phone.failureRate(margin);
+
+            replay.Attempts++;
+            replay.AttemptsAtLevel[level]++;
+            if (failed) {
+                replay.Failures++;
+            }
+            if (tuner != null) {
+                tuner.accessStarted(READER_ID, margin);
+                BluetoothConnectionSensitivity changed = tuner.accessCompleted(READER_ID, failed);
+                if (changed != null) {
+                    replay.Changes.add(changed);
+                }
+            }
+        }
+        return replay;
+    }
+}
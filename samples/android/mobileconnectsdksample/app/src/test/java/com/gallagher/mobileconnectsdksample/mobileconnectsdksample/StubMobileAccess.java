@@ -0,0 +1,92 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.gallagher.security.mobileaccess.MobileAccess;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+// *********************************************************************************
+// A MobileAccess for tests. Every call is recorded as "methodName(arg, arg)"; methods
+// return whatever was set with setResult, or null / zero / false. The arguments of the
+// last call to each method are kept too, for callbacks the test needs to call.
+// Calls may come from any thread.
+// *********************************************************************************
+class StubMobileAccess {
+
+    private final ArrayList<String> mCalls = new ArrayList<>();
+    private final HashMap<String, Object> mResults = new HashMap<>();
+    private final HashMap<String, Object[]> mLastArguments = new HashMap<>();
+    @NonNull private final MobileAccess mMobileAccess;
+
+    StubMobileAccess() {
+        mMobileAccess = (MobileAccess) Proxy.newProxyInstance(MobileAccess.class.getClassLoader(),
+                new Class<?>[] { MobileAccess.class }, (proxy, method, args) -> invoke(method, args));
+    }
+
+    @NonNull
+    MobileAccess get() {
+        return mMobileAccess;
+    }
+
+    synchronized void setResult(@NonNull String methodName, @Nullable Object result) {
+        mResults.put(methodName, result);
+    }
+
+    @NonNull
+    synchronized List<String> getCalls() {
+        return new ArrayList<>(mCalls);
+    }
+
+    synchronized void clearCalls() {
+        mCalls.clear();
+    }
+
+    // null if methodName hasn't been called
+    @Nullable
+    synchronized Object[] getLastArguments(@NonNull String methodName) {
+        return mLastArguments.get(methodName);
+    }
+
+    private synchronized Object invoke(@NonNull Method method, @Nullable Object[] args) {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals": return mMobileAccess == args[0];
+                case "hashCode": return System.identityHashCode(mMobileAccess);
+                default: return "StubMobileAccess";
+            }
+        }
+
+        StringBuilder call = new StringBuilder(method.getName()).append('(');
+        for (int i = 0; args != null && i < args.length; i++) {
+            call.append(i > 0 ? ", " : "").append(args[i]);
+        }
+        mCalls.add(call.append(')').toString());
+        mLastArguments.put(method.getName(), args != null ? args : new Object[0]);
+
+        if (mResults.containsKey(method.getName())) {
+            return mResults.get(method.getName());
+        }
+        Class<?> type = method.getReturnType();
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0f;
+        } else if (type == double.class) {
+            return 0d;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,163 @@
+//
+// Copyright Gallagher Group Ltd 2024 All Rights Reserved
+//
+package com.gallagher.mobileconnectsdksample.mobileconnectsdksample;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimerWheelTest {
+
+    private static final long TICK_MILLIS = 100;
+    private static final int SLOTS = 8;
+
+    private FakeScheduler mScheduler;
+    private ArrayList<String> mExpired;
+    private ArrayList<Long> mExpiredAt;
+    private TimerWheel<String> mWheel;
+
+    @Before
+    public void setUp() {
+        mScheduler = new FakeScheduler(10_000);
+        mExpired = new ArrayList<>();
+        mExpiredAt = new ArrayList<>();
+        mWheel = new TimerWheel<>(TICK_MILLIS, SLOTS, mScheduler::now, mScheduler, key -> {
+            mExpired.add(key);
+            mExpiredAt.add(mScheduler.now());
+        });
+    }
+
+    @Test
+    public void firesAtOrJustAfterTheDeadline() {
+        mWheel.schedule("a", 1000);
+
+        mScheduler.advanceBy(999);
+        assertEquals(Collections.emptyList(), mExpired);
+
+        mScheduler.advanceBy(TICK_MILLIS);
+        assertEquals(Collections.singletonList("a"), mExpired);
+        long late = mExpiredAt.get(0) - 11_000;
+        assertTrue("fired " + late + "ms late", late >= 0 && late < TICK_MILLIS);
+        assertEquals(0, mWheel.getPendingCount());
+    }
+
+    @Test
+    public void neverFiresEarlyForDelaysOffTheTickBoundary() {
+        mScheduler.advanceBy(37);
+        mWheel.schedule("a", 250);
+        long deadline = mScheduler.now() + 250;
+
+        mScheduler.advanceBy(1000);
+        assertEquals(Collections.singletonList("a"), mExpired);
+        assertTrue(mExpiredAt.get(0) >= deadline);
+    }
+
+    @Test
+    public void schedulingAgainReplacesTheOldTimeout() {
+        mWheel.schedule("a", 200);
+        mScheduler.advanceBy(150);
+        mWheel.schedule("a", 1000);
+
+        mScheduler.advanceBy(500);
+        assertEquals(Collections.emptyList(), mExpired);
+
+        mScheduler.advanceBy(600);
+        assertEquals(Collections.singletonList("a"), mExpired);
+    }
+
+    @Test
+    public void cancelledTimeoutsDontFire() {
+        mWheel.schedule("a", 300);
+        mWheel.schedule("b", 300);
+        mWheel.cancel("a");
+
+        mScheduler.advanceBy(1000);
+        assertEquals(Collections.singletonList("b"), mExpired);
+    }
+
+    @Test
+    public void cancelAllStopsTheTick() {
+        mWheel.schedule("a", 300);
+        mWheel.schedule("b", 500);
+        mWheel.cancelAll();
+
+        assertEquals(0, mScheduler.getPendingCount());
+        mScheduler.advanceBy(1000);
+        assertEquals(Collections.emptyList(), mExpired);
+    }
+
+    @Test
+    public void timeoutsLongerThanOneRevolutionGoAroundAgain() {
+        long revolution = TICK_MILLIS * SLOTS;
+        mWheel.schedule("long", 3 * revolution + 50);
+        mWheel.schedule("short", 50);
+
+        mScheduler.advanceBy(revolution);
+        assertEquals(Collections.singletonList("short"), mExpired);
+
+        mScheduler.advanceBy(2 * revolution);
+        assertEquals(Collections.singletonList("short"), mExpired);
+
+        mScheduler.advanceBy(TICK_MILLIS + 50);
+        assertEquals(Arrays.asList("short", "long"), mExpired);
+    }
+
+    @Test
+    public void catchesUpAfterFallingBehind() {
+        // a clock that moves on without the scheduler running anything, as when the thread is busy
+        long[] now = { 10_000 };
+        TimerWheel<String> wheel = new TimerWheel<>(TICK_MILLIS, SLOTS, () -> now[0], new FakeScheduler(now[0]), mExpired::add);
+        wheel.schedule("a", 100);
+        wheel.schedule("b", 5000);
+        wheel.schedule("c", 20_000);
+
+        // many revolutions later, one tick fires everything that's due
+        now[0] += 10_000;
+        wheel.tick();
+        assertEquals(Arrays.asList("a", "b"), sorted(mExpired));
+        assertEquals(1, wheel.getPendingCount());
+    }
+
+    @Test
+    public void onlyTicksWhileSomethingIsPending() {
+        assertEquals(0, mScheduler.getPendingCount());
+
+        mWheel.schedule("a", 100);
+        mWheel.schedule("b", 150);
+        mWheel.schedule("c", 700);
+        assertEquals(1, mScheduler.getPendingCount()); // one tick, however many timeouts
+
+        mScheduler.advanceBy(1000);
+        assertEquals(Arrays.asList("a", "b", "c"), mExpired);
+        assertEquals(0, mScheduler.getPendingCount());
+    }
+
+    @Test
+    public void listenersCanScheduleFromTheCallback() {
+        AtomicReference<TimerWheel<String>> wheel = new AtomicReference<>();
+        wheel.set(new TimerWheel<>(TICK_MILLIS, SLOTS, mScheduler::now, mScheduler, key -> {
+            mExpired.add(key);
+            if (key.equals("first")) {
+                wheel.get().schedule("second", 300);
+            }
+        }));
+        wheel.get().schedule("first", 100);
+
+        mScheduler.advanceBy(1000);
+        assertEquals(Arrays.asList("first", "second"), mExpired);
+    }
+
+    private static ArrayList<String> sorted(ArrayList<String> keys) {
+        ArrayList<String> result = new ArrayList<>(keys);
+        Collections.sort(result);
+        return result;
+    }
+}